@@ -0,0 +1,108 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.CustomWatcher;
+import com.orjrs.zk.client.serializer.Serializers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CustomWatcher 增删改查基准测试
+ * <p>
+ * 线程数通过 -t 指定，例如：java -jar target/benchmarks.jar CustomWatcherBenchmark -t 8 -prof gc
+ *
+ * @author orjrs
+ * @create 2020-08-29 10:30
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomWatcherBenchmark {
+
+    private static final String PATH = "/orjrs_bench";
+
+    /** 流水线读取时同时在途的请求数 */
+    private static final int PIPELINE = 100;
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private EmbeddedZkServer server;
+
+    private CustomWatcher customWatcher;
+
+    private byte[] payload;
+
+    private final AtomicLong seq = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        customWatcher = new CustomWatcher();
+        customWatcher.createConnection(server.getConnectString(), 10000);
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'a');
+        customWatcher.createPath(PATH, payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        customWatcher.releaseConnection();
+        server.close();
+    }
+
+    @Benchmark
+    public byte[] readPath() {
+        return customWatcher.readBytes(PATH);
+    }
+
+    @Benchmark
+    public void writePath() {
+        customWatcher.writePath(PATH, payload);
+    }
+
+    @Benchmark
+    public void createAndDeletePath() {
+        String path = PATH + "/node" + seq.incrementAndGet();
+        customWatcher.createPath(path, payload);
+        customWatcher.deletePath(path);
+    }
+
+    @Benchmark
+    public byte[] readPathAsync() throws Exception {
+        return customWatcher.readPathAsync(PATH, Serializers.BYTES).get();
+    }
+
+    /**
+     * 每次调用在同一会话上同时发出 {@value #PIPELINE} 个异步读取，与 readPath 对比同步每次阻塞一个 RTT 的差距
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void readPathAsyncPipelined() throws Exception {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[PIPELINE];
+        for (int i = 0; i < PIPELINE; i++) {
+            futures[i] = customWatcher.readPathAsync(PATH, Serializers.BYTES);
+        }
+        CompletableFuture.allOf(futures).get();
+    }
+}
@@ -0,0 +1,87 @@
+package com.orjrs.zk.benchmark;
+
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+
+/**
+ * 进程内的单机ZK服务，监听 localhost 的随机端口
+ *
+ * @author orjrs
+ * @create 2020-08-29 10:00
+ * @since 1.0.0
+ */
+public class EmbeddedZkServer implements AutoCloseable {
+
+    /** tickTime */
+    private static final int TICK_TIME = 2000;
+
+    /** 最大连接数 */
+    private static final int MAX_CONNECTIONS = 1000;
+
+    private final File dataDir;
+
+    private final ZooKeeperServer server;
+
+    private final ServerCnxnFactory factory;
+
+    private final int port;
+
+    public EmbeddedZkServer() throws IOException, InterruptedException {
+        this.dataDir = Files.createTempDirectory("orjrs-zk-bench").toFile();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            this.port = socket.getLocalPort();
+        }
+        this.server = new ZooKeeperServer(this.dataDir, this.dataDir, TICK_TIME);
+        this.factory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", this.port), MAX_CONNECTIONS);
+        this.factory.startup(this.server);
+    }
+
+    /**
+     * 连接地址
+     *
+     * @return host:port
+     */
+    public String getConnectString() {
+        return "127.0.0.1:" + this.port;
+    }
+
+    /**
+     * 服务端收到的请求数（含心跳），用于衡量服务端负载
+     *
+     * @return 请求数
+     */
+    public long getPacketsReceived() {
+        return this.server.serverStats().getPacketsReceived();
+    }
+
+    /**
+     * 服务端监听表中的监听数，同一会话在同一路径上的多个监听只算一个
+     *
+     * @return 监听数
+     */
+    public int getWatchCount() {
+        return this.server.getZKDatabase().getDataTree().getWatchCount();
+    }
+
+    @Override
+    public void close() {
+        this.factory.shutdown();
+        delete(this.dataDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,115 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkAuthWatcher;
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Id;
+import org.apache.zookeeper.server.auth.DigestAuthenticationProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZkAuthWatcher 授权读写基准测试：默认密钥走主会话，其他密钥走授权会话池
+ * <p>
+ * 节点的 ACL 额外授予其他密钥全部权限，两组方法都测量成功的读写，而不是被缓存的无权限结果。
+ *
+ * @author orjrs
+ * @create 2020-08-29 11:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZkAuthWatcherBenchmark {
+
+    private static final String PATH = "/orjrs_auth_bench";
+
+    /** 与 ZkAuthWatcher 中的正确密钥一致，用于修改节点 ACL */
+    private static final String DEFAULT_KEY = "123456";
+
+    /** 另一个有效密钥，与 ZkAuthWatcher 中的错误密钥不同 */
+    private static final String OTHER_KEY = "orjrs:bench";
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    private EmbeddedZkServer server;
+
+    private ZkAuthWatcher zkAuthWatcher;
+
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        zkAuthWatcher = new ZkAuthWatcher();
+        zkAuthWatcher.createConnection(server.getConnectString(), 10000);
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'a');
+        payload = new String(chars);
+        zkAuthWatcher.createPath(PATH, payload);
+        grant(OTHER_KEY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        zkAuthWatcher.closeConnection();
+        server.close();
+    }
+
+    /**
+     * 以默认密钥登录，把密钥对应的 digest 身份加入节点 ACL
+     */
+    private void grant(String key) throws Exception {
+        try (ZkConnectionManager manager = new ZkConnectionManager(server.getConnectString(), 10000, null)) {
+            manager.addAuthInfo("digest", DEFAULT_KEY.getBytes());
+            ZooKeeper zk = manager.connect(10, TimeUnit.SECONDS).get().getZooKeeper();
+            List<ACL> acl = zk.getACL(PATH, null);
+            acl.add(new ACL(ZooDefs.Perms.ALL, new Id("digest", DigestAuthenticationProvider.generateDigest(key))));
+            zk.setACL(PATH, acl, -1);
+        }
+        if (null == zkAuthWatcher.readPathByAuth(PATH, key)) {
+            throw new IllegalStateException("密钥 " + key + " 授权失败");
+        }
+    }
+
+    @Benchmark
+    public String readPathByDefaultKey() {
+        return zkAuthWatcher.readPathByAuth(PATH, null);
+    }
+
+    @Benchmark
+    public String readPathByOtherKey() {
+        return zkAuthWatcher.readPathByAuth(PATH, OTHER_KEY);
+    }
+
+    @Benchmark
+    public void writePathByDefaultKey() {
+        zkAuthWatcher.writePathByAuth(PATH, payload, null);
+    }
+
+    @Benchmark
+    public void writePathByOtherKey() {
+        zkAuthWatcher.writePathByAuth(PATH, payload, OTHER_KEY);
+    }
+}
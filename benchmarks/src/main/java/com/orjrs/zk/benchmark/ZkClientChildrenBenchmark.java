@@ -0,0 +1,84 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkBulkReader;
+import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.ZkConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZkClientTest 中读取所有子节点的流程：逐个 readData 与 ZkBulkReader 流水线读取对比
+ *
+ * @author orjrs
+ * @create 2020-08-29 11:30
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZkClientChildrenBenchmark {
+
+    private static final String PARENT = "/orjrs";
+
+    private static final String PREFIX = "/orjrs/";
+
+    @Param({"100", "1000"})
+    public int childCount;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnection connection;
+
+    private ZkClient zkClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        connection = new ZkConnection(server.getConnectString(), 10000);
+        zkClient = new ZkClient(connection);
+        zkClient.createPersistent(PARENT, true);
+        for (int i = 0; i < childCount; i++) {
+            zkClient.createPersistent(PREFIX + "child" + i, "data" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        zkClient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> readChildrenOneByOne() {
+        List<String> children = zkClient.getChildren(PARENT);
+        Map<String, Object> result = new HashMap<>(children.size() * 4 / 3 + 1);
+        for (String child : children) {
+            result.put(child, zkClient.readData(PREFIX + child));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, byte[]> readChildrenBulk() throws Exception {
+        return new ZkBulkReader(connection.getZookeeper()).readChildren(PARENT);
+    }
+}
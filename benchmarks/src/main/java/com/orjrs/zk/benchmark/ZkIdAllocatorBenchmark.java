@@ -0,0 +1,81 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.recipes.ZkIdAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ZkIdAllocator 吞吐随号段大小的变化，号段大小为 1 相当于每个 ID 一次按版本号的 setData
+ * <p>
+ * 结束时打印每个 ID 服务端收到的请求数。
+ *
+ * @author orjrs
+ * @create 2020-10-18 12:20
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ZkIdAllocatorBenchmark {
+
+    private static final String PATH = "/orjrs_id_bench";
+
+    @Param({"1", "1000", "100000"})
+    public int rangeSize;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager manager;
+
+    private ZkIdAllocator allocator;
+
+    /** 分配的 ID 数 */
+    private final LongAdder allocated = new LongAdder();
+
+    private long startPackets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        manager = new ZkConnectionManager(server.getConnectString(), 10000, null);
+        manager.connect(10, TimeUnit.SECONDS).get();
+        allocator = new ZkIdAllocator(manager, PATH, rangeSize);
+        startPackets = server.getPacketsReceived();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long packets = server.getPacketsReceived() - startPackets;
+        System.out.printf("%n号段大小 %d：分配 %d 个 ID，服务端请求 %d 个，每个 ID %.6f 个请求%n",
+                rangeSize, allocated.sum(), packets, (double) packets / Math.max(1L, allocated.sum()));
+        allocator.close();
+        manager.close();
+        server.close();
+    }
+
+    @Benchmark
+    public long next() throws Exception {
+        allocated.increment();
+        return allocator.next();
+    }
+}
@@ -0,0 +1,149 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.limiter.ZkOverloadException;
+import com.orjrs.zk.client.metrics.LatencyHistogram;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 重启风暴下客户端并发限制的效果
+ * <p>
+ * 每次操作持续 {@value #MILLIS}ms：readers 个线程（分布在最多 8 个会话上）像 ZkWatcher.getChildrenNode
+ * 一样不停列出 {@value #CHILDREN} 个子节点，被限流丢弃后等 10ms 重试；同时一个写线程每 5ms 修改一次数据。
+ * 输出读吞吐、读延迟、写延迟和丢弃数。limiter 为 false 时不限制。
+ *
+ * @author orjrs
+ * @create 2020-11-02 17:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ZkLimiterBenchmark {
+
+    private static final String PATH = "/orjrs_limiter_bench";
+
+    private static final int CHILDREN = 500;
+
+    private static final long MILLIS = 3000;
+
+    private static final int MAX_SESSIONS = 8;
+
+    @Param({"16", "256"})
+    public int readers;
+
+    @Param({"false", "true"})
+    public boolean limiter;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager[] managers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        managers = new ZkConnectionManager[Math.min(readers, MAX_SESSIONS) + 1];
+        for (int i = 0; i < managers.length; i++) {
+            managers[i] = new ZkConnectionManager(server.getConnectString(), 30000, null);
+            managers[i].connect(10, TimeUnit.SECONDS).get();
+        }
+        ZooKeeper zk = managers[0].getZooKeeper();
+        zk.create(PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        for (int i = 0; i < CHILDREN; i++) {
+            zk.create(PATH + "/child-" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+        ZkLimiter.get().setEnabled(limiter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ZkLimiter.get().setEnabled(false);
+        for (ZkConnectionManager manager : managers) {
+            manager.close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public void storm() throws Exception {
+        long shedBefore = ZkLimiter.get().getShed(ZkLimiter.Lane.READ) + ZkLimiter.get().getShed(ZkLimiter.Lane.WRITE);
+        LatencyHistogram reads = new LatencyHistogram();
+        LatencyHistogram writes = new LatencyHistogram();
+        LongAdder shedReads = new LongAdder();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MILLIS);
+        Thread[] threads = new Thread[readers + 1];
+        for (int i = 0; i < readers; i++) {
+            ZkConnectionManager manager = managers[1 + i % (managers.length - 1)];
+            threads[i] = new Thread(() -> {
+                try {
+                    ZooKeeper zk = manager.getZooKeeper();
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, PATH, () -> zk.getChildren(PATH, false));
+                            reads.record(System.nanoTime() - start);
+                        } catch (ZkOverloadException e) {
+                            shedReads.increment();
+                            Thread.sleep(10);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }, "storm-reader-" + i);
+        }
+        threads[readers] = new Thread(() -> {
+            try {
+                ZooKeeper zk = managers[0].getZooKeeper();
+                byte[] data = new byte[64];
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    ZkLimiter.get().call(ZkMetrics.SET_DATA, PATH, () -> zk.setData(PATH, data, -1));
+                    writes.record(System.nanoTime() - start);
+                    Thread.sleep(5);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "storm-writer");
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (null != failure.get()) {
+            throw new IllegalStateException(failure.get());
+        }
+        long shed = ZkLimiter.get().getShed(ZkLimiter.Lane.READ) + ZkLimiter.get().getShed(ZkLimiter.Lane.WRITE) - shedBefore;
+        System.out.printf("%n限流%s，%d 个读线程：读 %.0f 次/秒，读 p50 %.1fms p99 %.1fms，写 p50 %.1fms p99 %.1fms，丢弃 %d 次，并发上限 %d%n",
+                limiter ? "开" : "关", readers, reads.getCount() * 1000.0 / MILLIS,
+                reads.getPercentile(50) / 1e6, reads.getPercentile(99) / 1e6,
+                writes.getPercentile(50) / 1e6, writes.getPercentile(99) / 1e6, shed, ZkLimiter.get().getLimit());
+    }
+}
@@ -0,0 +1,130 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkLinearizableReader;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线性一致读在不同并发调用方数量下的耗时和 sync 次数
+ * <p>
+ * 每次操作由 readers 个线程在同一会话上各做 {@value #READS} 次线性一致读。
+ * direct 为每次读取先 sync 再 getData；coalesced 为 {@link ZkLinearizableReader}，并发调用方共用 sync。
+ *
+ * @author orjrs
+ * @create 2020-11-01 16:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ZkLinearizableReaderBenchmark {
+
+    private static final String PATH = "/orjrs_sync_bench";
+
+    /** 每个线程的读取次数 */
+    private static final int READS = 200;
+
+    @Param({"1", "16", "256"})
+    public int readers;
+
+    @Param({"direct", "coalesced"})
+    public String mode;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager manager;
+
+    private ZkLinearizableReader reader;
+
+    /** direct 方式的 sync 次数 */
+    private final LongAdder directSyncs = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        manager = new ZkConnectionManager(server.getConnectString(), 30000, null);
+        manager.connect(10, TimeUnit.SECONDS).get().getZooKeeper()
+                .create(PATH, new byte[64], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        reader = new ZkLinearizableReader(manager);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void read() throws Exception {
+        long syncsBefore = directSyncs.sum() + reader.getSyncs();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[readers];
+        long start = System.nanoTime();
+        for (int i = 0; i < readers; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int n = 0; n < READS; n++) {
+                        if ("direct".equals(mode)) {
+                            syncAndRead(manager.getZooKeeper());
+                            directSyncs.increment();
+                        } else {
+                            reader.read(PATH);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }, "sync-reader-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (null != failure.get()) {
+            throw new IllegalStateException(failure.get());
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        long syncs = directSyncs.sum() + reader.getSyncs() - syncsBefore;
+        System.out.printf("%n%s，%d 个线程：读取 %d 次，sync %d 次，%.0f ms%n", mode, readers, readers * READS, syncs, millis);
+    }
+
+    private static void syncAndRead(ZooKeeper zk) throws Exception {
+        CompletableFuture<Void> synced = new CompletableFuture<>();
+        zk.sync(PATH, (rc, path, ctx) -> synced.complete(null), null);
+        try {
+            synced.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        try {
+            zk.getData(PATH, false, null);
+        } catch (KeeperException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.recipes.ZkLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ZkLock 在不同等待者数量下的加锁延迟和服务端负载
+ * <p>
+ * 后台 waiters - 1 个线程不停地加锁、释放，测量线程排在它们中间加锁、释放，
+ * 得到的是锁竞争下单次加锁的延迟分布。结束时打印每次加锁服务端收到的请求数，
+ * 不产生惊群时该值与等待者数量无关。
+ *
+ * @author orjrs
+ * @create 2020-10-17 19:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ZkLockBenchmark {
+
+    private static final String PATH = "/orjrs_lock_bench";
+
+    /** 会话数，等待者按线程轮流分配 */
+    private static final int SESSIONS = 8;
+
+    @Param({"10", "100", "1000"})
+    public int waiters;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager[] managers;
+
+    private ZkLock[] locks;
+
+    private List<Thread> contenders;
+
+    private volatile boolean running;
+
+    /** 加锁次数 */
+    private final AtomicLong acquired = new AtomicLong();
+
+    private long startPackets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        managers = new ZkConnectionManager[SESSIONS];
+        locks = new ZkLock[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            managers[i] = new ZkConnectionManager(server.getConnectString(), 30000, null);
+            managers[i].connect(10, TimeUnit.SECONDS).get();
+            locks[i] = new ZkLock(managers[i], PATH);
+        }
+        running = true;
+        contenders = new ArrayList<>(waiters - 1);
+        for (int i = 1; i < waiters; i++) {
+            ZkLock lock = locks[i % SESSIONS];
+            Thread thread = new Thread(() -> {
+                try {
+                    while (running) {
+                        lock.acquire();
+                        lock.release();
+                        acquired.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    if (running) {
+                        e.printStackTrace();
+                    }
+                }
+            }, "lock-contender-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            contenders.add(thread);
+        }
+        startPackets = server.getPacketsReceived();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        long packets = server.getPacketsReceived() - startPackets;
+        System.out.printf("%n等待者 %d：加锁 %d 次，服务端请求 %d 个，每次加锁 %.2f 个请求%n",
+                waiters, acquired.get(), packets, (double) packets / Math.max(1L, acquired.get()));
+        running = false;
+        // 排队中的线程在等待前一个节点，直接中断
+        for (Thread thread : contenders) {
+            thread.interrupt();
+        }
+        for (Thread thread : contenders) {
+            thread.join(1000);
+        }
+        for (ZkConnectionManager manager : managers) {
+            manager.close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public void acquireRelease() throws Exception {
+        locks[0].acquire();
+        locks[0].release();
+        acquired.incrementAndGet();
+    }
+}
@@ -0,0 +1,140 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.recipes.ZkQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ZkQueue 在不同生产者、消费者数量和批量下的吞吐
+ * <p>
+ * 每次操作由 clients 个生产者线程共入队 {@value #ITEMS} 个元素，clients 个消费者线程同时取完。
+ * 线程分布在最多 8 个会话上，每个会话一个生产者实例和一个消费者实例（模拟一个进程），
+ * 同一会话上的线程共用实例。
+ * batch 为 1 时逐个入队、逐个取；否则 offerAll 和 take(batch) 批量进行。
+ *
+ * @author orjrs
+ * @create 2020-10-25 17:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ZkQueueBenchmark {
+
+    private static final String PATH = "/orjrs_queue_bench";
+
+    /** 每次操作的元素数 */
+    private static final int ITEMS = 10000;
+
+    private static final int MAX_SESSIONS = 8;
+
+    @Param({"1", "8", "64"})
+    public int clients;
+
+    @Param({"1", "32"})
+    public int batch;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager[] managers;
+
+    private int run;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        managers = new ZkConnectionManager[Math.min(clients, MAX_SESSIONS)];
+        for (int i = 0; i < managers.length; i++) {
+            managers[i] = new ZkConnectionManager(server.getConnectString(), 30000, null);
+            managers[i].connect(10, TimeUnit.SECONDS).get();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (ZkConnectionManager manager : managers) {
+            manager.close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public void produceAndConsume() throws Exception {
+        String path = PATH + "/run-" + run++;
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>(clients * 2);
+        ZkQueue[] producers = new ZkQueue[managers.length];
+        ZkQueue[] consumers = new ZkQueue[managers.length];
+        for (int i = 0; i < managers.length; i++) {
+            producers[i] = new ZkQueue(managers[i], path);
+            consumers[i] = new ZkQueue(managers[i], path);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            ZkQueue producer = producers[i % managers.length];
+            int count = ITEMS / clients + (i < ITEMS % clients ? 1 : 0);
+            threads.add(new Thread(() -> {
+                try {
+                    byte[] data = new byte[64];
+                    List<byte[]> items = new ArrayList<>(batch);
+                    for (int n = 0; n < count; n++) {
+                        if (1 == batch) {
+                            producer.offer(data);
+                            continue;
+                        }
+                        items.add(data);
+                        if (items.size() == batch || n == count - 1) {
+                            producer.offerAll(items);
+                            items.clear();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }, "queue-producer-" + i));
+            ZkQueue consumer = consumers[i % managers.length];
+            threads.add(new Thread(() -> {
+                try {
+                    while (consumed.get() < ITEMS) {
+                        consumed.addAndGet(consumer.take(batch, 100, TimeUnit.MILLISECONDS).size());
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }, "queue-consumer-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (null != failure.get()) {
+            throw new IllegalStateException(failure.get());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%n生产者、消费者各 %d 个，批量 %d：%.0f 个/秒%n", clients, batch, ITEMS / seconds);
+    }
+}
@@ -0,0 +1,78 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkReadCache;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZkReadCache 命中时的读取耗时，多个线程读取 {@value #KEYS} 个热点路径
+ *
+ * @author orjrs
+ * @create 2020-11-03 10:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Threads(4)
+@Fork(1)
+public class ZkReadCacheBenchmark {
+
+    private static final String PATH = "/orjrs_cache_bench";
+
+    private static final int KEYS = 1000;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager manager;
+
+    private ZkReadCache cache;
+
+    private String[] paths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        manager = new ZkConnectionManager(server.getConnectString(), 30000, null);
+        ZooKeeper zk = manager.connect(10, TimeUnit.SECONDS).get().getZooKeeper();
+        zk.create(PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        cache = new ZkReadCache(zk, 2 * KEYS);
+        paths = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            paths[i] = PATH + "/n" + i;
+            zk.create(paths[i], new byte[64], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            cache.getData(paths[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.close();
+        server.close();
+    }
+
+    @Benchmark
+    public byte[] hit() throws Exception {
+        return cache.getData(paths[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+}
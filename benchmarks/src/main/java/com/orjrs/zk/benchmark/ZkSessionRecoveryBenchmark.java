@@ -0,0 +1,110 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkSessionRecovery;
+import com.orjrs.zk.client.jdkapi.ZkWatchRegistry;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话过期后重建临时节点和监听的耗时
+ * <p>
+ * 会话上有 nodes 个临时节点和 nodes 个路径的监听，每次操作使会话过期并等待恢复完成。
+ * 结束时打印 ZkSessionRecovery 记录的恢复耗时（含重建会话的退避）和重放耗时，
+ * 并与在同一服务端上逐个同步创建同样多临时节点的耗时对比。
+ *
+ * @author orjrs
+ * @create 2020-10-31 17:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZkSessionRecoveryBenchmark {
+
+    private static final String ROOT = "/orjrs_recovery_bench";
+
+    @Param({"100", "1000"})
+    public int nodes;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager manager;
+
+    private ZkSessionRecovery recovery;
+
+    private long replayMillis;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        manager = new ZkConnectionManager(server.getConnectString(), 30000, null);
+        ZooKeeper zk = manager.connect(10, TimeUnit.SECONDS).get().getZooKeeper();
+        zk.create(ROOT, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        ZkWatchRegistry watches = new ZkWatchRegistry(manager);
+        recovery = new ZkSessionRecovery(manager, watches);
+        for (int i = 0; i < nodes; i++) {
+            String path = ROOT + "/member-" + i;
+            recovery.createEphemeral(path, new byte[64], CreateMode.EPHEMERAL);
+            watches.watch(path, ZkWatchRegistry.WatchType.DATA, event -> {
+            });
+        }
+
+        // 对比：逐个同步创建
+        long start = System.nanoTime();
+        for (int i = 0; i < nodes; i++) {
+            zk.create(ROOT + "/sequential-" + i, new byte[64], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+        }
+        System.out.printf("%n逐个创建 %d 个临时节点：%d ms%n", nodes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        for (int i = 0; i < nodes; i++) {
+            zk.delete(ROOT + "/sequential-" + i, -1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s，平均重放 %d ms%n", recovery, replayMillis / Math.max(1L, recovery.getRecoveries()));
+        recovery.close();
+        manager.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void expireAndRecover() throws Exception {
+        long recovered = recovery.getRecoveries();
+        ZooKeeper zk = manager.getZooKeeper();
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper other = new ZooKeeper(server.getConnectString(), 30000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }, zk.getSessionId(), zk.getSessionPasswd());
+        connected.await();
+        other.close();
+        while (recovery.getRecoveries() == recovered) {
+            Thread.sleep(1);
+        }
+        replayMillis += recovery.getLastReplayMillis();
+    }
+}
@@ -0,0 +1,85 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkShardedClient;
+import org.apache.zookeeper.CreateMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZkShardedClient 吞吐随会话数的变化
+ * <p>
+ * 默认 16 个线程，可用 -t 调整，例如：java -jar target/benchmarks.jar ZkShardedClientBenchmark -t 32
+ *
+ * @author orjrs
+ * @create 2020-10-03 16:40
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ZkShardedClientBenchmark {
+
+    private static final String PATH = "/orjrs_sharded_bench";
+
+    private static final int NODES = 1024;
+
+    @Param({"1", "2", "4", "8"})
+    public int sessions;
+
+    private EmbeddedZkServer server;
+
+    private ZkShardedClient client;
+
+    private String[] paths;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        client = new ZkShardedClient(server.getConnectString(), 10000, sessions);
+        client.connect(10, TimeUnit.SECONDS).get();
+        payload = new byte[128];
+        client.create(PATH, new byte[0], CreateMode.PERSISTENT);
+        paths = new String[NODES];
+        for (int i = 0; i < NODES; i++) {
+            paths[i] = PATH + "/n" + i;
+            client.create(paths[i], payload, CreateMode.PERSISTENT);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public byte[] getData() throws Exception {
+        return client.getData(paths[ThreadLocalRandom.current().nextInt(NODES)], null);
+    }
+
+    @Benchmark
+    public Object setData() throws Exception {
+        return client.setData(paths[ThreadLocalRandom.current().nextInt(NODES)], payload, -1);
+    }
+}
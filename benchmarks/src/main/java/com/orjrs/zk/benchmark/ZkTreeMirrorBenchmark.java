@@ -0,0 +1,102 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkBatch;
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkTreeMirror;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZkTreeMirror 单次更新的耗时随树大小的变化
+ * <p>
+ * 镜像 {@value #PARENTS} 个父节点下共 nodes 个节点，每次修改一个随机节点并等待镜像通知 UPDATED，
+ * 包含一次 setData 往返和镜像在事件线程中应用、发布更新的时间。
+ *
+ * @author orjrs
+ * @create 2020-11-04 10:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ZkTreeMirrorBenchmark {
+
+    private static final String PATH = "/orjrs_mirror_bench";
+
+    private static final int PARENTS = 100;
+
+    @Param({"1000", "100000"})
+    public int nodes;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager manager;
+
+    private ZooKeeper zk;
+
+    private ZkTreeMirror mirror;
+
+    private String[] paths;
+
+    private final Semaphore updated = new Semaphore(0);
+
+    private final byte[] data = new byte[64];
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        manager = new ZkConnectionManager(server.getConnectString(), 30000, null);
+        zk = manager.connect(10, TimeUnit.SECONDS).get().getZooKeeper();
+        ZkBatch batch = new ZkBatch(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+        batch.create(PATH, "");
+        paths = new String[nodes];
+        for (int p = 0; p < PARENTS; p++) {
+            batch.create(PATH + "/p" + p, "");
+        }
+        for (int i = 0; i < nodes; i++) {
+            paths[i] = PATH + "/p" + (i % PARENTS) + "/n" + i;
+            batch.create(paths[i], "");
+        }
+        batch.flush();
+        mirror = new ZkTreeMirror(zk, PATH);
+        mirror.addListener((type, node) -> {
+            if (ZkTreeMirror.EventType.UPDATED == type) {
+                updated.release();
+            }
+        });
+        mirror.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mirror.close();
+        manager.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void update() throws Exception {
+        zk.setData(paths[ThreadLocalRandom.current().nextInt(nodes)], data, -1);
+        updated.acquire();
+    }
+}
@@ -0,0 +1,143 @@
+package com.orjrs.zk.benchmark;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkWatchRegistry;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 10000 个组件监听 500 个路径：各自注册监听与通过 ZkWatchRegistry 复用监听的对比
+ * <p>
+ * direct 模式下组件分布在 8 个会话上，各自以 exists 注册监听，触发后各自重新注册；
+ * registry 模式下所有组件通过一个会话上的注册表监听。每次操作修改一个路径并等待该路径的
+ * 20 个组件都收到通知。结束时打印服务端监听数和每次修改服务端收到的请求数。
+ *
+ * @author orjrs
+ * @create 2020-10-24 17:00
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ZkWatchRegistryBenchmark {
+
+    private static final String ROOT = "/orjrs_watch_bench";
+
+    private static final int PATHS = 500;
+
+    private static final int COMPONENTS = 10000;
+
+    /** direct 模式的会话数 */
+    private static final int SESSIONS = 8;
+
+    @Param({"direct", "registry"})
+    public String mode;
+
+    private EmbeddedZkServer server;
+
+    private ZkConnectionManager[] managers;
+
+    private ZooKeeper writer;
+
+    private String[] paths;
+
+    private volatile CountDownLatch notified;
+
+    private int next;
+
+    /** 修改次数 */
+    private final AtomicLong changes = new AtomicLong();
+
+    private long startPackets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedZkServer();
+        int sessions = "direct".equals(mode) ? SESSIONS : 1;
+        managers = new ZkConnectionManager[sessions + 1];
+        for (int i = 0; i < managers.length; i++) {
+            managers[i] = new ZkConnectionManager(server.getConnectString(), 30000, null);
+            managers[i].connect(10, TimeUnit.SECONDS).get();
+        }
+        writer = managers[sessions].getZooKeeper();
+        writer.create(ROOT, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = writer.create(ROOT + "/config-" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+        ZkWatchRegistry registry = "registry".equals(mode) ? new ZkWatchRegistry(managers[0]) : null;
+        for (int i = 0; i < COMPONENTS; i++) {
+            String path = paths[i % PATHS];
+            if (null == registry) {
+                ZooKeeper zk = managers[i / PATHS % sessions].getZooKeeper();
+                Watcher component = new Watcher() {
+                    @Override
+                    public void process(WatchedEvent event) {
+                        if (Event.EventType.NodeDataChanged == event.getType()) {
+                            zk.exists(path, this, (rc, p, ctx, stat) -> {
+                            }, null);
+                            notified.countDown();
+                        }
+                    }
+                };
+                zk.exists(path, component);
+            } else {
+                registry.watch(path, ZkWatchRegistry.WatchType.DATA, event -> {
+                    if (Watcher.Event.EventType.NodeDataChanged == event.getType()) {
+                        notified.countDown();
+                    }
+                });
+            }
+        }
+        // 等待注册完成
+        for (ZkConnectionManager manager : managers) {
+            manager.getZooKeeper().exists(ROOT, false);
+        }
+        System.out.printf("%n%s：服务端监听 %d 个%s%n", mode, server.getWatchCount(),
+                null == registry ? "" : "，" + registry);
+        startPackets = server.getPacketsReceived();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        long packets = server.getPacketsReceived() - startPackets;
+        System.out.printf("%n%s：修改 %d 次，服务端请求 %d 个，每次修改 %.2f 个请求，服务端监听 %d 个%n",
+                mode, changes.get(), packets, (double) packets / Math.max(1L, changes.get()), server.getWatchCount());
+        for (ZkConnectionManager manager : managers) {
+            manager.close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public void changeAndNotify() throws Exception {
+        String path = paths[next++ % PATHS];
+        notified = new CountDownLatch(COMPONENTS / PATHS);
+        writer.setData(path, new byte[0], -1);
+        notified.await();
+        changes.incrementAndGet();
+    }
+}
@@ -0,0 +1,48 @@
+package com.orjrs.zk.client.compress;
+
+/**
+ * 压缩算法
+ * <p>
+ * 扩展实现（如 LZ4、Zstd）通过 {@code META-INF/services/com.orjrs.zk.client.compress.Codec} 注册，
+ * 或调用 {@link Codecs#register(Codec)}。编号写入节点数据的头字节，一经使用不能更改。
+ * 实现必须线程安全。
+ *
+ * @author orjrs
+ * @create 2020-10-17 10:10
+ * @since 1.0.0
+ */
+public interface Codec {
+
+    /**
+     * 编号，取值 1 ~ 7，内置 deflate 为 1
+     *
+     * @return 编号
+     */
+    int id();
+
+    /**
+     * 名称
+     *
+     * @return 名称
+     */
+    String name();
+
+    /**
+     * 压缩
+     *
+     * @param data 原始数据
+     * @return 压缩后的数据
+     */
+    byte[] compress(byte[] data);
+
+    /**
+     * 解压
+     *
+     * @param data           压缩数据所在数组
+     * @param offset         起始位置
+     * @param length         长度
+     * @param originalLength 原始数据长度
+     * @return 原始数据
+     */
+    byte[] decompress(byte[] data, int offset, int length, int originalLength);
+}
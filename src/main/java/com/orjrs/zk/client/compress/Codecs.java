@@ -0,0 +1,59 @@
+package com.orjrs.zk.client.compress;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ServiceLoader;
+
+/**
+ * 压缩算法注册表：内置 deflate，启动时通过 ServiceLoader 加载扩展实现
+ *
+ * @author orjrs
+ * @create 2020-10-17 10:30
+ * @since 1.0.0
+ */
+@Slf4j
+public final class Codecs {
+
+    /** deflate */
+    public static final Codec DEFLATE = new DeflateCodec();
+
+    /** 编号 -> 实现 */
+    private static final Codec[] CODECS = new Codec[8];
+
+    static {
+        register(DEFLATE);
+        for (Codec codec : ServiceLoader.load(Codec.class)) {
+            register(codec);
+            log.info("加载压缩算法：{}（{}）", codec.name(), codec.id());
+        }
+    }
+
+    private Codecs() {
+    }
+
+    /**
+     * 注册压缩算法，相同编号的会被替换
+     *
+     * @param codec 压缩算法
+     */
+    public static synchronized void register(Codec codec) {
+        if (codec.id() < 1 || codec.id() >= CODECS.length) {
+            throw new IllegalArgumentException("压缩算法编号超出范围：" + codec.id());
+        }
+        CODECS[codec.id()] = codec;
+    }
+
+    /**
+     * 按编号查找
+     *
+     * @param id 编号
+     * @return 压缩算法，未注册时抛出 IllegalArgumentException
+     */
+    public static Codec get(int id) {
+        Codec codec = id > 0 && id < CODECS.length ? CODECS[id] : null;
+        if (null == codec) {
+            throw new IllegalArgumentException("未注册的压缩算法：" + id);
+        }
+        return codec;
+    }
+}
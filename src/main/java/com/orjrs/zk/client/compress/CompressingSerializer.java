@@ -0,0 +1,112 @@
+package com.orjrs.zk.client.compress;
+
+import com.orjrs.zk.client.serializer.Serializer;
+
+import java.util.Arrays;
+
+/**
+ * 压缩：在其他序列化方式之上按需压缩
+ * <p>
+ * 压缩后的数据以一个头字节开始：0xF8 | 压缩算法编号，接着是原始长度（变长整数）和压缩数据。
+ * 0xF8 ~ 0xFF 不会出现在 UTF-8 文本中，所以未压缩的文本节点原样保存，读取时按首字节区分，
+ * 新旧节点可以共存。小于阈值或压缩后没有变小的数据不压缩；恰好以 0xF8 ~ 0xFF 开头的
+ * 未压缩数据前面补一个 0xF8 头字节。
+ *
+ * @param <T> 数据类型
+ * @author orjrs
+ * @create 2020-10-17 10:40
+ * @since 1.0.0
+ */
+public class CompressingSerializer<T> implements Serializer<T> {
+
+    /** 头字节标识 */
+    static final int HEADER = 0xF8;
+
+    /** 默认压缩阈值 */
+    public static final int DEFAULT_MIN_BYTES = 256;
+
+    /** 实际的序列化方式 */
+    private final Serializer<T> delegate;
+
+    /** 压缩算法 */
+    private final Codec codec;
+
+    /** 压缩阈值 */
+    private final int minBytes;
+
+    public CompressingSerializer(Serializer<T> delegate) {
+        this(delegate, Codecs.DEFLATE, DEFAULT_MIN_BYTES);
+    }
+
+    public CompressingSerializer(Serializer<T> delegate, Codec codec, int minBytes) {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.minBytes = minBytes;
+    }
+
+    @Override
+    public byte[] serialize(T value) {
+        byte[] raw = this.delegate.serialize(value);
+        if (null == raw) {
+            return null;
+        }
+        if (raw.length >= this.minBytes) {
+            byte[] compressed = this.codec.compress(raw);
+            int lengthBytes = varIntSize(raw.length);
+            if (1 + lengthBytes + compressed.length < raw.length) {
+                byte[] result = new byte[1 + lengthBytes + compressed.length];
+                result[0] = (byte) (HEADER | this.codec.id());
+                int pos = writeVarInt(result, 1, raw.length);
+                System.arraycopy(compressed, 0, result, pos, compressed.length);
+                return result;
+            }
+        }
+        if (raw.length > 0 && (raw[0] & 0xFF) >= HEADER) {
+            byte[] result = new byte[raw.length + 1];
+            result[0] = (byte) HEADER;
+            System.arraycopy(raw, 0, result, 1, raw.length);
+            return result;
+        }
+        return raw;
+    }
+
+    @Override
+    public T deserialize(byte[] data) {
+        if (null == data || 0 == data.length || (data[0] & 0xFF) < HEADER) {
+            return this.delegate.deserialize(data);
+        }
+        int id = data[0] & 0x07;
+        if (0 == id) {
+            return this.delegate.deserialize(Arrays.copyOfRange(data, 1, data.length));
+        }
+        // 读取原始长度
+        int originalLength = 0;
+        int shift = 0;
+        int pos = 1;
+        byte b;
+        do {
+            b = data[pos++];
+            originalLength |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return this.delegate.deserialize(Codecs.get(id).decompress(data, pos, data.length - pos, originalLength));
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarInt(byte[] buf, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+}
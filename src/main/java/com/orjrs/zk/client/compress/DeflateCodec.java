@@ -0,0 +1,101 @@
+package com.orjrs.zk.client.compress;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * deflate 压缩，JDK 内置
+ * <p>
+ * Deflater/Inflater 持有堆外内存，创建和回收开销大，按线程复用，用完 reset。
+ *
+ * @author orjrs
+ * @create 2020-10-17 10:20
+ * @since 1.0.0
+ */
+public class DeflateCodec implements Codec {
+
+    public static final int ID = 1;
+
+    /** 输出缓冲区初始大小 */
+    private static final int INITIAL_SIZE = 1024;
+
+    /** 超过该大小的缓冲区用完后不保留 */
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    /** 压缩级别 */
+    private final int level;
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[INITIAL_SIZE]);
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DeflateCodec(int level) {
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.level, true));
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = this.deflaters.get();
+        byte[] buf = this.buffers.get();
+        int size = 0;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (size == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                size += deflater.deflate(buf, size, buf.length - size);
+            }
+        } finally {
+            deflater.reset();
+        }
+        byte[] result = Arrays.copyOf(buf, size);
+        this.buffers.set(buf.length > MAX_RETAINED_SIZE ? new byte[INITIAL_SIZE] : buf);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length, int originalLength) {
+        Inflater inflater = this.inflaters.get();
+        byte[] result = new byte[originalLength];
+        try {
+            inflater.setInput(data, offset, length);
+            int size = 0;
+            while (size < originalLength) {
+                int n = inflater.inflate(result, size, originalLength - size);
+                if (0 == n && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                size += n;
+            }
+            if (size != originalLength) {
+                throw new IllegalArgumentException("解压后长度" + size + "与原始长度" + originalLength + "不一致");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("deflate 数据格式错误：" + e.getMessage(), e);
+        } finally {
+            inflater.reset();
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package com.orjrs.zk.client.jdkapi;
 
-import lombok.extern.log4j.Log4j;
+import com.orjrs.zk.client.compress.Codec;
+import com.orjrs.zk.client.compress.CompressingSerializer;
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import com.orjrs.zk.client.recipes.ZkIdAllocator;
+import com.orjrs.zk.client.recipes.ZkLock;
+import com.orjrs.zk.client.recipes.ZkQueue;
+import com.orjrs.zk.client.recipes.ZkReadWriteLock;
+import com.orjrs.zk.client.serializer.Serializer;
+import com.orjrs.zk.client.serializer.Serializers;
 import lombok.extern.log4j.Log4j2;
 import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
 
-import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * 自定义实现Watcher
@@ -23,19 +36,31 @@ public class CustomWatcher implements Watcher {
     /** ZK会话超时时间 */
     private static final int SESSION_TIMEOUT = 10000;
 
-    /** 同步器 */
-    private CountDownLatch countDownLatch = new CountDownLatch(1);
+    /** 连接管理 */
+    private ZkConnectionManager connectionManager = null;
 
-    /** zk 会话 */
-    private ZooKeeper zk = null;
+    /** zk 会话，会话过期重建后替换 */
+    private volatile ZooKeeper zk = null;
+
+    /** 乐观更新，随连接创建 */
+    private ZkUpdater updater = null;
+
+    /** 监听复用，随连接创建 */
+    private ZkWatchRegistry watchRegistry = null;
+
+    /** 线性一致读，随连接创建 */
+    private ZkLinearizableReader linearizableReader = null;
+
+    /** 会话过期恢复，随连接创建 */
+    private ZkSessionRecovery recovery = null;
+
+    /** 字符串数据的序列化方式，开启压缩后替换 */
+    private Serializer<String> stringSerializer = Serializers.UTF8;
 
     @Override
     public void process(WatchedEvent event) {
         log.info("收到事件通知：{}", event.getState());
-
-        if (Event.KeeperState.SyncConnected == event.getState()) {
-            countDownLatch.countDown();
-        }
+        ZkMetrics.get().recordState(event.getState());
     }
 
     /**
@@ -46,13 +71,24 @@ public class CustomWatcher implements Watcher {
      */
     public void createConnection(String host, long timeOut) {
         releaseConnection();
+        this.connectionManager = new ZkConnectionManager(host, (int) timeOut, this);
+        this.updater = new ZkUpdater(this.connectionManager);
+        this.watchRegistry = new ZkWatchRegistry(this.connectionManager);
+        this.recovery = new ZkSessionRecovery(this.connectionManager, this.watchRegistry);
+        this.linearizableReader = new ZkLinearizableReader(this.connectionManager);
+        this.connectionManager.addStateListener((state, session) -> {
+            if (ZkConnectionManager.State.CONNECTED == state) {
+                this.zk = session.getZooKeeper();
+            }
+        });
         try {
-            zk = new ZooKeeper(SERVER_ADDR, SESSION_TIMEOUT, this);
-            countDownLatch.await();
+            this.zk = this.connectionManager.connect(timeOut, TimeUnit.MILLISECONDS).get().getZooKeeper();
         } catch (InterruptedException e) {
             log.info("连接创建失败，发生 InterruptedException={}", e.getMessage());
-        } catch (IOException e) {
-            log.info("连接创建失败，发生 IOException={}", e.getMessage());
+        } catch (ExecutionException e) {
+            // 超时后会话在后台继续连接，期间的调用以 ConnectionLoss 失败
+            log.info("连接创建失败，发生 {}={}", e.getCause().getClass().getSimpleName(), e.getCause().getMessage());
+            this.zk = this.connectionManager.getZooKeeper();
         }
     }
 
@@ -60,16 +96,25 @@ public class CustomWatcher implements Watcher {
      * 关闭ZK连接
      */
     public void releaseConnection() {
-        if (null != this.zk) {
-            try {
-                this.zk.close();
-            } catch (InterruptedException e) {
-                // ignore
-                log.info("关闭ZK连接，发生 InterruptedException={}", e.getMessage());
-            }
+        if (null != this.recovery) {
+            this.recovery.close();
+            this.recovery = null;
+        }
+        if (null != this.connectionManager) {
+            this.connectionManager.close();
+            this.connectionManager = null;
         }
     }
 
+    /**
+     * 连接状态
+     *
+     * @return 未创建连接时为 LATENT
+     */
+    public ZkConnectionManager.State getConnectionState() {
+        return null == this.connectionManager ? ZkConnectionManager.State.LATENT : this.connectionManager.getState();
+    }
+
     /**
      * 创建连接 -默认
      */
@@ -84,8 +129,29 @@ public class CustomWatcher implements Watcher {
      * @param data 数据
      */
     public String createPath(String path, String data) {
+        return createPath(path, this.stringSerializer.serialize(data));
+    }
+
+    /**
+     * 创建节点
+     *
+     * @param path       路径
+     * @param value      数据
+     * @param serializer 序列化方式
+     */
+    public <T> String createPath(String path, T value, Serializer<T> serializer) {
+        return createPath(path, serializer.serialize(value));
+    }
+
+    /**
+     * 创建节点
+     *
+     * @param path 路径
+     * @param data 数据
+     */
+    public String createPath(String path, byte[] data) {
         try {
-            String result = this.zk.create(path, data.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            String result = ZkLimiter.get().call(ZkMetrics.CREATE, path, () -> this.zk.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
             log.info("读取节点信息成功:{}={}", path, result);
             return result;
         } catch (KeeperException e) {
@@ -96,16 +162,75 @@ public class CustomWatcher implements Watcher {
         return null;
     }
 
+    /**
+     * 创建临时节点，会话过期重建后自动重新创建
+     *
+     * @param path 路径
+     * @param data 数据
+     */
+    public String createEphemeral(String path, String data) {
+        try {
+            String result = this.recovery.createEphemeral(path, this.stringSerializer.serialize(data), CreateMode.EPHEMERAL);
+            log.info("创建临时节点成功:{}", result);
+            return result;
+        } catch (KeeperException e) {
+            log.info("创建{}临时节点KeeperException：{}", path, e.getMessage());
+        } catch (InterruptedException e) {
+            log.info("创建{}临时节点InterruptedException：{}", path, e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * 读取节点信息
      *
      * @param path 路径
      */
     public String readPath(String path) {
-        try {
-            String result = new String(this.zk.getData(path, false, null));
+        String result = readPath(path, this.stringSerializer);
+        if (null != result) {
             log.info("读取节点信息成功:{}={}", path, result);
+        }
+        return result;
+    }
+
+    /**
+     * 读取节点信息
+     *
+     * @param path       路径
+     * @param serializer 序列化方式
+     */
+    public <T> T readPath(String path, Serializer<T> serializer) {
+        return serializer.deserialize(readBytes(path));
+    }
+
+    /**
+     * 线性一致地读取节点信息：能读到调用前其他客户端已完成的写入，并发调用共用一次 sync
+     *
+     * @param path 路径
+     */
+    public String linearizableRead(String path) {
+        try {
+            byte[] data = this.linearizableReader.read(path);
+            String result = this.stringSerializer.deserialize(data);
+            log.info("线性一致读取节点信息成功:{}={}", path, result);
             return result;
+        } catch (KeeperException e) {
+            log.info("线性一致读取{}节点信息KeeperException：{}", path, e.getMessage());
+        } catch (InterruptedException e) {
+            log.info("线性一致读取{}节点信息InterruptedException：{}", path, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 读取节点原始数据
+     *
+     * @param path 路径
+     */
+    public byte[] readBytes(String path) {
+        try {
+            return ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> this.zk.getData(path, false, null));
         } catch (KeeperException e) {
             log.info("读取{}节点信息KeeperException：{}", path, e.getMessage());
         } catch (InterruptedException e) {
@@ -121,7 +246,8 @@ public class CustomWatcher implements Watcher {
      */
     public void deletePath(String path) {
         try {
-            this.zk.delete(path, -1);
+            ZkLimiter.get().callVoid(ZkMetrics.DELETE, path, () -> this.zk.delete(path, -1));
+            this.recovery.forget(path);
             log.info("删除节点信息成功:{}", path);
         } catch (KeeperException e) {
             log.info("删除{}节点信息KeeperException：{}", path, e.getMessage());
@@ -130,6 +256,75 @@ public class CustomWatcher implements Watcher {
         }
     }
 
+    /**
+     * 开启字符串数据压缩，超过阈值的数据压缩后写入，读取时自动识别压缩和未压缩的节点
+     *
+     * @param codec    压缩算法，见 {@link com.orjrs.zk.client.compress.Codecs}
+     * @param minBytes 压缩阈值（字节）
+     */
+    public void enableCompression(Codec codec, int minBytes) {
+        this.stringSerializer = new CompressingSerializer<>(Serializers.UTF8, codec, minBytes);
+    }
+
+    /**
+     * 创建批量事务，create/setData/delete 通过 multi 合并提交
+     *
+     * @return 批量事务
+     */
+    public ZkBatch batch() {
+        return new ZkBatch(this.zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+    }
+
+    /**
+     * 分块存储，用于超过 jute.maxbuffer 的大数据
+     *
+     * @return 分块存储
+     */
+    public ZkChunkedValue chunked() {
+        return new ZkChunkedValue(this.zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+    }
+
+    /**
+     * 分布式锁
+     *
+     * @param path 锁路径
+     * @return 可重入的分布式锁
+     */
+    public ZkLock lock(String path) {
+        return new ZkLock(this.connectionManager, path);
+    }
+
+    /**
+     * 分布式读写锁
+     *
+     * @param path 锁路径
+     * @return 读写锁
+     */
+    public ZkReadWriteLock readWriteLock(String path) {
+        return new ZkReadWriteLock(this.connectionManager, path);
+    }
+
+    /**
+     * 号段 ID 分配器
+     *
+     * @param path      计数器路径
+     * @param rangeSize 每次租用的号段大小
+     * @return ID 分配器，用完后关闭
+     */
+    public ZkIdAllocator idAllocator(String path, int rangeSize) {
+        return new ZkIdAllocator(this.connectionManager, path, rangeSize);
+    }
+
+    /**
+     * 分布式队列
+     *
+     * @param path 队列路径
+     * @return 队列
+     */
+    public ZkQueue queue(String path) {
+        return new ZkQueue(this.connectionManager, path);
+    }
+
     /**
      * 修改节点信息
      *
@@ -137,13 +332,216 @@ public class CustomWatcher implements Watcher {
      * @param data 数据
      */
     public void writePath(String path, String data) {
+        writePath(path, this.stringSerializer.serialize(data));
+    }
+
+    /**
+     * 修改节点信息
+     *
+     * @param path       路径
+     * @param value      数据
+     * @param serializer 序列化方式
+     */
+    public <T> void writePath(String path, T value, Serializer<T> serializer) {
+        writePath(path, serializer.serialize(value));
+    }
+
+    /**
+     * 修改节点信息，堆内且覆盖整个数组的 ByteBuffer 不复制
+     *
+     * @param path 路径
+     * @param data 数据
+     */
+    public void writePath(String path, ByteBuffer data) {
+        writePath(path, Serializers.toBytes(data));
+    }
+
+    /**
+     * 修改节点信息
+     *
+     * @param path 路径
+     * @param data 数据
+     */
+    public void writePath(String path, byte[] data) {
         try {
-            this.zk.setData(path, data.getBytes(), -1);
-            log.info("修改节点信息成功:{}={}", path, data);
+            ZkLimiter.get().call(ZkMetrics.SET_DATA, path, () -> this.zk.setData(path, data, -1));
+            log.info("修改节点信息成功:{}，{}字节", path, null == data ? 0 : data.length);
         } catch (KeeperException e) {
             log.info("修改{}节点信息KeeperException：{}", path, e.getMessage());
         } catch (InterruptedException e) {
             log.info("修改{}节点信息InterruptedException：{}", path, e.getMessage());
         }
     }
+
+    /**
+     * 读取-修改-按版本号写入，冲突时重试，并发修改不会丢失
+     *
+     * @param path     路径
+     * @param function 更新函数，参数为当前数据，返回新数据；冲突时会被再次调用，不能有副作用
+     * @return 写入的数据，失败时为 null
+     */
+    public byte[] update(String path, Function<byte[], byte[]> function) {
+        try {
+            byte[] result = this.updater.update(path, function);
+            log.info("更新节点信息成功:{}，{}字节", path, null == result ? 0 : result.length);
+            return result;
+        } catch (KeeperException e) {
+            log.info("更新{}节点信息KeeperException：{}", path, e.getMessage());
+        } catch (InterruptedException e) {
+            log.info("更新{}节点信息InterruptedException：{}", path, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 乐观更新，可查看重试和冲突次数
+     *
+     * @return 乐观更新，未创建连接时为空
+     */
+    public ZkUpdater updater() {
+        return this.updater;
+    }
+
+    /**
+     * 监听复用，多个组件监听同一路径时共用一个服务端监听
+     *
+     * @return 监听注册表，未创建连接时为空
+     */
+    public ZkWatchRegistry watches() {
+        return this.watchRegistry;
+    }
+
+    /**
+     * 会话过期恢复，可查看恢复耗时
+     *
+     * @return 会话过期恢复，未创建连接时为空
+     */
+    public ZkSessionRecovery recovery() {
+        return this.recovery;
+    }
+
+    /**
+     * 异步创建节点，结果在ZK事件线程中回调完成
+     *
+     * @param path 路径
+     * @param data 数据
+     * @return 实际创建的路径，失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<String> createPathAsync(String path, String data) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (notConnected(future)) {
+            return future;
+        }
+        long start = ZkMetrics.get().start();
+        this.zk.create(path, this.stringSerializer.serialize(data), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT,
+                (rc, p, ctx, name) -> {
+                    ZkMetrics.get().record(ZkMetrics.CREATE, p, start, rc);
+                    if (KeeperException.Code.OK.intValue() == rc) {
+                        future.complete(name);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+                    }
+                }, null);
+        return future;
+    }
+
+    /**
+     * 异步读取节点信息
+     *
+     * @param path 路径
+     * @return 节点数据，失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<String> readPathAsync(String path) {
+        return readPathAsync(path, this.stringSerializer);
+    }
+
+    /**
+     * 异步读取节点信息
+     *
+     * @param path       路径
+     * @param serializer 序列化方式
+     * @return 节点数据，失败时以 {@link KeeperException} 异常结束，反序列化失败时以其抛出的异常结束
+     */
+    public <T> CompletableFuture<T> readPathAsync(String path, Serializer<T> serializer) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (notConnected(future)) {
+            return future;
+        }
+        long start = ZkMetrics.get().start();
+        this.zk.getData(path, false, (rc, p, ctx, data, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.GET_DATA, p, start, rc);
+            if (KeeperException.Code.OK.intValue() == rc) {
+                // 反序列化失败（如压缩头不合法）也要结束 future，且不能抛到 ZK 事件线程
+                try {
+                    future.complete(serializer.deserialize(data));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            } else {
+                future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * 异步删除节点信息
+     *
+     * @param path 路径
+     * @return 删除结果，失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<Void> deletePathAsync(String path) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (notConnected(future)) {
+            return future;
+        }
+        long start = ZkMetrics.get().start();
+        this.zk.delete(path, -1, (rc, p, ctx) -> {
+            ZkMetrics.get().record(ZkMetrics.DELETE, p, start, rc);
+            if (KeeperException.Code.OK.intValue() == rc) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * 异步修改节点信息
+     *
+     * @param path 路径
+     * @param data 数据
+     * @return 修改后的节点状态，失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<Stat> writePathAsync(String path, String data) {
+        CompletableFuture<Stat> future = new CompletableFuture<>();
+        if (notConnected(future)) {
+            return future;
+        }
+        long start = ZkMetrics.get().start();
+        this.zk.setData(path, this.stringSerializer.serialize(data), -1, (rc, p, ctx, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.SET_DATA, p, start, rc);
+            if (KeeperException.Code.OK.intValue() == rc) {
+                future.complete(stat);
+            } else {
+                future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * 未建立连接时直接以异常结束
+     *
+     * @param future 异步结果
+     * @return 是否未连接
+     */
+    private boolean notConnected(CompletableFuture<?> future) {
+        if (null == this.zk) {
+            future.completeExceptionally(new IllegalStateException("ZK连接尚未创建"));
+            return true;
+        }
+        return false;
+    }
 }
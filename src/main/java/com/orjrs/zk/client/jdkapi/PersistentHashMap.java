@@ -0,0 +1,386 @@
+package com.orjrs.zk.client.jdkapi;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 不可变的哈希映射（哈希数组映射字典树，HAMT）
+ * <p>
+ * {@link #plus}、{@link #minus} 返回新的映射，只复制从根到被修改位置的一条路径（每层最多 32 个槽位），
+ * 其余节点与原映射共享，单次修改的代价为 O(log32 n)，与映射大小基本无关。原映射不受影响，可直接作为快照。
+ * 标准 Map 的修改方法抛出 {@link UnsupportedOperationException}。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author orjrs
+ * @create 2020-09-19 11:30
+ * @since 1.0.0
+ */
+final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    /** 每层使用的哈希位数 */
+    private static final int BITS = 5;
+
+    /** 最深层的位移，再往下只能是哈希完全相同的冲突节点 */
+    private static final int MAX_SHIFT = 30;
+
+    /** 最大层数：7 层位图节点加 1 层冲突节点 */
+    private static final int MAX_DEPTH = MAX_SHIFT / BITS + 2;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(new BitmapNode(0, new Object[0]), 0);
+
+    private final Trie root;
+
+    private final int size;
+
+    private PersistentHashMap(Trie root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * 加入或替换一个键
+     *
+     * @param key   键，不能为 null
+     * @param value 值
+     * @return 新映射，值未变化时返回自身
+     */
+    PersistentHashMap<K, V> plus(K key, V value) {
+        boolean[] added = new boolean[1];
+        Trie newRoot = this.root.plus(new Leaf(hash(key), key, value), 0, added);
+        return newRoot == this.root ? this : new PersistentHashMap<>(newRoot, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * 移除一个键
+     *
+     * @param key 键
+     * @return 新映射，键不存在时返回自身
+     */
+    PersistentHashMap<K, V> minus(Object key) {
+        Trie newRoot = this.root.minus(hash(key), key, 0);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return null == newRoot ? empty() : new PersistentHashMap<>(newRoot, this.size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = null == key ? null : this.root.find(hash(key), key, 0);
+        return null == leaf ? null : (V) leaf.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return null != key && null != this.root.find(hash(key), key, 0);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        // 高位参与低层索引，避免 String 等哈希低位相近时集中在同一分支
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 字典树节点，槽位为 {@link Leaf} 或下一层节点，节点创建后不再修改
+     */
+    private abstract static class Trie {
+
+        final Object[] slots;
+
+        Trie(Object[] slots) {
+            this.slots = slots;
+        }
+
+        abstract Leaf find(int hash, Object key, int shift);
+
+        /**
+         * @return 新节点，未变化时返回自身
+         */
+        abstract Trie plus(Leaf leaf, int shift, boolean[] added);
+
+        /**
+         * @return 新节点，未找到时返回自身，变为空时返回 null
+         */
+        abstract Trie minus(int hash, Object key, int shift);
+    }
+
+    /**
+     * 按哈希的 5 位索引的节点，只为存在的槽位分配空间
+     */
+    private static final class BitmapNode extends Trie {
+
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            super(slots);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        Leaf find(int hash, Object key, int shift) {
+            int bit = bit(hash, shift);
+            if (0 == (this.bitmap & bit)) {
+                return null;
+            }
+            Object slot = this.slots[index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.matches(hash, key) ? leaf : null;
+            }
+            return ((Trie) slot).find(hash, key, shift + BITS);
+        }
+
+        @Override
+        Trie plus(Leaf leaf, int shift, boolean[] added) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(bit);
+            if (0 == (this.bitmap & bit)) {
+                added[0] = true;
+                Object[] slots = new Object[this.slots.length + 1];
+                System.arraycopy(this.slots, 0, slots, 0, index);
+                slots[index] = leaf;
+                System.arraycopy(this.slots, index, slots, index + 1, this.slots.length - index);
+                return new BitmapNode(this.bitmap | bit, slots);
+            }
+            Object slot = this.slots[index];
+            Object replaced;
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                if (existing.matches(leaf.hash, leaf.getKey())) {
+                    if (existing.getValue() == leaf.getValue()) {
+                        return this;
+                    }
+                    replaced = leaf;
+                } else {
+                    added[0] = true;
+                    replaced = merge(existing, leaf, shift + BITS);
+                }
+            } else {
+                replaced = ((Trie) slot).plus(leaf, shift + BITS, added);
+                if (replaced == slot) {
+                    return this;
+                }
+            }
+            Object[] slots = this.slots.clone();
+            slots[index] = replaced;
+            return new BitmapNode(this.bitmap, slots);
+        }
+
+        @Override
+        Trie minus(int hash, Object key, int shift) {
+            int bit = bit(hash, shift);
+            if (0 == (this.bitmap & bit)) {
+                return this;
+            }
+            int index = index(bit);
+            Object slot = this.slots[index];
+            Object replaced;
+            if (slot instanceof Leaf) {
+                if (!((Leaf) slot).matches(hash, key)) {
+                    return this;
+                }
+                replaced = null;
+            } else {
+                replaced = ((Trie) slot).minus(hash, key, shift + BITS);
+                if (replaced == slot) {
+                    return this;
+                }
+            }
+            if (null != replaced) {
+                Object[] slots = this.slots.clone();
+                slots[index] = replaced;
+                return new BitmapNode(this.bitmap, slots);
+            }
+            if (1 == this.slots.length) {
+                return null;
+            }
+            Object[] slots = new Object[this.slots.length - 1];
+            System.arraycopy(this.slots, 0, slots, 0, index);
+            System.arraycopy(this.slots, index + 1, slots, index, slots.length - index);
+            return new BitmapNode(this.bitmap & ~bit, slots);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private static Object merge(Leaf a, Leaf b, int shift) {
+            if (shift > MAX_SHIFT) {
+                return new CollisionNode(a.hash, new Object[]{a, b});
+            }
+            boolean[] ignored = new boolean[1];
+            return new BitmapNode(0, new Object[0]).plus(a, shift, ignored).plus(b, shift, ignored);
+        }
+    }
+
+    /**
+     * 哈希完全相同的键，线性查找
+     */
+    private static final class CollisionNode extends Trie {
+
+        private final int hash;
+
+        CollisionNode(int hash, Object[] slots) {
+            super(slots);
+            this.hash = hash;
+        }
+
+        @Override
+        Leaf find(int hash, Object key, int shift) {
+            int index = indexOf(hash, key);
+            return index < 0 ? null : (Leaf) this.slots[index];
+        }
+
+        @Override
+        Trie plus(Leaf leaf, int shift, boolean[] added) {
+            int index = indexOf(leaf.hash, leaf.getKey());
+            Object[] slots;
+            if (index < 0) {
+                added[0] = true;
+                slots = new Object[this.slots.length + 1];
+                System.arraycopy(this.slots, 0, slots, 0, this.slots.length);
+                slots[this.slots.length] = leaf;
+            } else {
+                if (((Leaf) this.slots[index]).getValue() == leaf.getValue()) {
+                    return this;
+                }
+                slots = this.slots.clone();
+                slots[index] = leaf;
+            }
+            return new CollisionNode(this.hash, slots);
+        }
+
+        @Override
+        Trie minus(int hash, Object key, int shift) {
+            int index = indexOf(hash, key);
+            if (index < 0) {
+                return this;
+            }
+            if (1 == this.slots.length) {
+                return null;
+            }
+            Object[] slots = new Object[this.slots.length - 1];
+            System.arraycopy(this.slots, 0, slots, 0, index);
+            System.arraycopy(this.slots, index + 1, slots, index, slots.length - index);
+            return new CollisionNode(this.hash, slots);
+        }
+
+        private int indexOf(int hash, Object key) {
+            for (int i = 0; i < this.slots.length; i++) {
+                if (((Leaf) this.slots[i]).matches(hash, key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * 一个键值对
+     */
+    private static final class Leaf extends SimpleImmutableEntry<Object, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int hash;
+
+        Leaf(int hash, Object key, Object value) {
+            super(key, value);
+            this.hash = hash;
+        }
+
+        boolean matches(int hash, Object key) {
+            return this.hash == hash && getKey().equals(key);
+        }
+    }
+
+    /**
+     * 深度优先遍历，按层记录当前槽位
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Object[][] stack = new Object[MAX_DEPTH][];
+
+        private final int[] positions = new int[MAX_DEPTH];
+
+        private int depth;
+
+        private Leaf next;
+
+        EntryIterator() {
+            this.stack[0] = root.slots;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != this.next;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (null == this.next) {
+                throw new NoSuchElementException();
+            }
+            Leaf leaf = this.next;
+            advance();
+            return (Entry<K, V>) (Map.Entry<?, ?>) leaf;
+        }
+
+        private void advance() {
+            this.next = null;
+            while (this.depth >= 0) {
+                Object[] slots = this.stack[this.depth];
+                if (this.positions[this.depth] >= slots.length) {
+                    this.depth--;
+                    continue;
+                }
+                Object slot = slots[this.positions[this.depth]++];
+                if (slot instanceof Leaf) {
+                    this.next = (Leaf) slot;
+                    return;
+                }
+                this.depth++;
+                this.stack[this.depth] = ((Trie) slot).slots;
+                this.positions[this.depth] = 0;
+            }
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package com.orjrs.zk.client.jdkapi;
 
+import com.orjrs.zk.client.compress.Codec;
+import com.orjrs.zk.client.compress.CompressingSerializer;
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import com.orjrs.zk.client.serializer.Serializer;
+import com.orjrs.zk.client.serializer.Serializers;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.util.Strings;
 import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
 
-import java.io.IOException;
 import java.util.Arrays;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -29,9 +34,6 @@ public class ZkAuthWatcher implements Watcher {
     /** ZK会话超时时间 */
     private static final int VERSION = -1;
 
-    /** 同步器 */
-    private CountDownLatch countDownLatch = new CountDownLatch(1);
-
     /** 计时器 */
     AtomicInteger seq = new AtomicInteger();
 
@@ -43,8 +45,14 @@ public class ZkAuthWatcher implements Watcher {
     /** 路径 */
     private static final String PATH_DEL = "/orjrs_auth/deleteNode";
 
-    /** zk 会话 */
-    private ZooKeeper zk = null;
+    /** 连接管理 */
+    private ZkConnectionManager connectionManager = null;
+
+    /** zk 会话，会话过期重建后替换 */
+    private volatile ZooKeeper zk = null;
+
+    /** 字符串数据的序列化方式，开启压缩后替换 */
+    private Serializer<String> stringSerializer = Serializers.UTF8;
 
     /** 认证类型 */
     final static String AUTH_TYPE = "digest";
@@ -55,6 +63,30 @@ public class ZkAuthWatcher implements Watcher {
     /** 认证错误密钥 */
     final static String BAD_AUTH_KEY = "654321";
 
+    /** 授权会话池最大会话数 */
+    private static final int POOL_MAX_SIZE = 16;
+
+    /** 授权会话池空闲超时时间 */
+    private static final long POOL_IDLE_MILLIS = 60000L;
+
+    /** 非默认密钥的授权会话池 */
+    private ZkSessionPool sessionPool = null;
+
+    /** 事件队列容量 */
+    private static final int EVENT_QUEUE_CAPACITY = 1024;
+
+    /** 无权限结果的缓存时间 */
+    private static final long NO_AUTH_TTL_MILLIS = 2000L;
+
+    /** 无权限结果的最大缓存数 */
+    private static final int NO_AUTH_MAX_ENTRIES = 10000;
+
+    /** 按（密钥，路径，权限）缓存的无权限结果 */
+    private final ZkNoAuthCache noAuthCache = new ZkNoAuthCache(NO_AUTH_TTL_MILLIS, NO_AUTH_MAX_ENTRIES);
+
+    /** 事件分发器，process 在分发器的工作线程中执行 */
+    private ZkEventDispatcher dispatcher = null;
+
     @Override
     public void process(WatchedEvent event) {
         if (event == null) {
@@ -62,6 +94,9 @@ public class ZkAuthWatcher implements Watcher {
         }
         Event.KeeperState state = event.getState();
         Event.EventType type = event.getType();
+        if (Event.EventType.None == type) {
+            ZkMetrics.get().recordState(state);
+        }
 
         String logPrefix = "【Watcher-" + this.seq.incrementAndGet() + "】";
         log.info("{}收到事件通知：{}", logPrefix, state);
@@ -70,7 +105,6 @@ public class ZkAuthWatcher implements Watcher {
         log.info("{}事件类型：{}", logPrefix, type.toString());
         if (Event.KeeperState.SyncConnected == state) {
             log.info("{}成功连接上ZK服务器", logPrefix);
-            countDownLatch.countDown();
         } else if (Event.KeeperState.Disconnected == state) {
             log.info("{}与ZK服务器断开连接", logPrefix);
         } else if (Event.KeeperState.AuthFailed == state) {
@@ -89,16 +123,25 @@ public class ZkAuthWatcher implements Watcher {
      */
     public void createConnection(String host, long timeOut) {
         closeConnection();
+        dispatcher = new ZkEventDispatcher(this, 1, EVENT_QUEUE_CAPACITY);
+        sessionPool = new ZkSessionPool(host, (int) timeOut, POOL_MAX_SIZE, POOL_IDLE_MILLIS);
+        connectionManager = new ZkConnectionManager(host, (int) timeOut, dispatcher);
+        //添加节点授权，会话过期重建后自动重新添加
+        connectionManager.addAuthInfo(AUTH_TYPE, CORRECT_AUTH_KEY.getBytes());
+        connectionManager.addStateListener((state, session) -> {
+            if (ZkConnectionManager.State.CONNECTED == state) {
+                this.zk = session.getZooKeeper();
+            }
+        });
+        log.info("{}开始连接ZK服务器", LOG_PREFIX_OF_MAIN);
         try {
-            zk = new ZooKeeper(SERVER_ADDR, SESSION_TIMEOUT, this);
-            //添加节点授权
-            zk.addAuthInfo(AUTH_TYPE, CORRECT_AUTH_KEY.getBytes());
-            countDownLatch.await();
-            log.info("{}开始连接ZK服务器", LOG_PREFIX_OF_MAIN);
+            zk = connectionManager.connect(timeOut, TimeUnit.MILLISECONDS).get().getZooKeeper();
         } catch (InterruptedException e) {
             log.info("{}连接创建失败，发生 InterruptedException={}", LOG_PREFIX_OF_MAIN, e.getMessage());
-        } catch (IOException e) {
-            log.info("{}连接创建失败，发生 IOException={}", LOG_PREFIX_OF_MAIN, e.getMessage());
+        } catch (ExecutionException e) {
+            // 超时后会话在后台继续连接，期间的调用以 ConnectionLoss 失败
+            log.info("{}连接创建失败，发生 {}={}", LOG_PREFIX_OF_MAIN, e.getCause().getClass().getSimpleName(), e.getCause().getMessage());
+            zk = connectionManager.getZooKeeper();
         }
     }
 
@@ -106,13 +149,16 @@ public class ZkAuthWatcher implements Watcher {
      * 关闭ZK连接
      */
     public void closeConnection() {
-        if (null != this.zk) {
-            try {
-                this.zk.close();
-            } catch (InterruptedException e) {
-                // ignore
-                log.info("{}关闭ZK连接，发生 InterruptedException={}", LOG_PREFIX_OF_MAIN, e.getMessage());
-            }
+        if (null != this.sessionPool) {
+            this.sessionPool.close();
+            this.sessionPool = null;
+        }
+        if (null != this.connectionManager) {
+            this.connectionManager.close();
+            this.connectionManager = null;
+        }
+        if (null != this.dispatcher) {
+            this.dispatcher.close();
         }
     }
 
@@ -131,7 +177,7 @@ public class ZkAuthWatcher implements Watcher {
      */
     public String createPath(String path, String data) {
         try {
-            String result = this.zk.create(path, data.getBytes(), ZooDefs.Ids.CREATOR_ALL_ACL, CreateMode.PERSISTENT);
+            String result = ZkLimiter.get().call(ZkMetrics.CREATE, path, () -> this.zk.create(path, this.stringSerializer.serialize(data), ZooDefs.Ids.CREATOR_ALL_ACL, CreateMode.PERSISTENT));
             log.info("使用授权key：{},创建节点:{}，初始内容是：{}", CORRECT_AUTH_KEY, path, data);
 
             return result;
@@ -152,26 +198,27 @@ public class ZkAuthWatcher implements Watcher {
      */
     public String readPathByAuth(String path, String key) {
         String result = null;
+        String credential = Strings.isNotBlank(key) ? key : CORRECT_AUTH_KEY;
+        if (this.noAuthCache.isDenied(credential, path, ZooDefs.Perms.READ)) {
+            log.info("key={}, 读取{}节点信息无权限（缓存）", key, path);
+            return null;
+        }
         try {
             if (Strings.isNotBlank(key) && !CORRECT_AUTH_KEY.equals(key)) {
-                // 重新创建个连接
-                ZooKeeper newZk = null;
-                try {
-                    newZk = new ZooKeeper(SERVER_ADDR, SESSION_TIMEOUT, this);
-                    // 授权
-                    newZk.addAuthInfo(AUTH_TYPE, key.getBytes());
-                    Thread.sleep(1000);
-                    result = new String(newZk.getData(path, false, null));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                // 使用会话池中该密钥对应的会话
+                byte[] data = sessionPool.withSession(AUTH_TYPE, key, newZk ->
+                        ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> newZk.getData(path, false, null)));
+                result = this.stringSerializer.deserialize(data);
             } else {
                 // 默认的
-                result = new String(this.zk.getData(path, false, null));
+                result = this.stringSerializer.deserialize(ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> this.zk.getData(path, false, null)));
                 key = CORRECT_AUTH_KEY;
             }
             log.info("使用授权key={}, 读取节点信息成功:{}={}", key, path, result);
             return result;
+        } catch (KeeperException.NoAuthException e) {
+            this.noAuthCache.deny(credential, path, ZooDefs.Perms.READ);
+            log.info("key={}, 读取{}节点信息KeeperException：{}", key, path, e.getMessage());
         } catch (KeeperException e) {
             log.info("key={}, 读取{}节点信息KeeperException：{}", key, path, e.getMessage());
         } catch (InterruptedException e) {
@@ -187,7 +234,7 @@ public class ZkAuthWatcher implements Watcher {
      */
     public void deletePath(String path) {
         try {
-            this.zk.delete(path, VERSION);
+            ZkLimiter.get().callVoid(ZkMetrics.DELETE, path, () -> this.zk.delete(path, VERSION));
             log.info("删除节点信息成功:{}", path);
         } catch (KeeperException e) {
             log.info("删除{}节点信息KeeperException：{}", path, e.getMessage());
@@ -203,33 +250,30 @@ public class ZkAuthWatcher implements Watcher {
      * @param key  密钥
      */
     public void deletePathByAuth(String path, String key) {
+        String credential = Strings.isNotBlank(key) ? key : CORRECT_AUTH_KEY;
+        if (this.noAuthCache.isDenied(credential, path, ZooDefs.Perms.DELETE)) {
+            log.info("key={}, 删除{}节点信息无权限（缓存）", key, path);
+            return;
+        }
         try {
+            // 直接删除，节点不存在时以 NoNode 结束，一次往返
             if (Strings.isNotBlank(key) && !CORRECT_AUTH_KEY.equals(key)) {
-                // 重新创建个连接
-                ZooKeeper newZk = null;
-                try {
-                    newZk = new ZooKeeper(SERVER_ADDR, SESSION_TIMEOUT, this);
-                    // 授权
-                    newZk.addAuthInfo(AUTH_TYPE, key.getBytes());
-                    Thread.sleep(1000);
-                    Stat stat = newZk.exists(path, false);
-                    if (stat != null) {
-                        newZk.delete(path, VERSION);
-                        log.info("使用授权key={},删除节点信息成功:{}", key, path);
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                // 使用会话池中该密钥对应的会话
+                sessionPool.withSession(AUTH_TYPE, key, newZk -> {
+                    ZkLimiter.get().callVoid(ZkMetrics.DELETE, path, () -> newZk.delete(path, VERSION));
+                    return null;
+                });
             } else {
                 // 默认的
-                Stat stat = this.zk.exists(path, false);
-                if (stat != null) {
-                    this.zk.delete(path, VERSION);
-                    key = CORRECT_AUTH_KEY;
-                    log.info("使用授权key={},删除节点信息成功:{}", key, path);
-                }
+                ZkLimiter.get().callVoid(ZkMetrics.DELETE, path, () -> this.zk.delete(path, VERSION));
+                key = CORRECT_AUTH_KEY;
             }
-
+            log.info("使用授权key={},删除节点信息成功:{}", key, path);
+        } catch (KeeperException.NoNodeException e) {
+            log.info("key={}, 删除{}节点信息：节点不存在", key, path);
+        } catch (KeeperException.NoAuthException e) {
+            this.noAuthCache.deny(credential, path, ZooDefs.Perms.DELETE);
+            log.info("key={}, 删除{}节点信息KeeperException：{}", key, path, e.getMessage());
         } catch (KeeperException e) {
             log.info("key={}, 删除{}节点信息KeeperException：{}", key, path, e.getMessage());
         } catch (InterruptedException e) {
@@ -237,6 +281,34 @@ public class ZkAuthWatcher implements Watcher {
         }
     }
 
+    /**
+     * 开启字符串数据压缩，超过阈值的数据压缩后写入，读取时自动识别压缩和未压缩的节点
+     *
+     * @param codec    压缩算法，见 {@link com.orjrs.zk.client.compress.Codecs}
+     * @param minBytes 压缩阈值（字节）
+     */
+    public void enableCompression(Codec codec, int minBytes) {
+        this.stringSerializer = new CompressingSerializer<>(Serializers.UTF8, codec, minBytes);
+    }
+
+    /**
+     * 无权限结果缓存，可查看命中次数，修改 ACL 后清除对应路径
+     *
+     * @return 无权限结果缓存
+     */
+    public ZkNoAuthCache getNoAuthCache() {
+        return this.noAuthCache;
+    }
+
+    /**
+     * 创建批量事务，create/setData/delete 通过 multi 合并提交
+     *
+     * @return 批量事务
+     */
+    public ZkBatch batch() {
+        return new ZkBatch(this.zk, ZooDefs.Ids.CREATOR_ALL_ACL);
+    }
+
     /**
      * 修改节点信息
      *
@@ -245,7 +317,7 @@ public class ZkAuthWatcher implements Watcher {
      */
     public void writePath(String path, String data) {
         try {
-            this.zk.setData(path, data.getBytes(), VERSION);
+            ZkLimiter.get().call(ZkMetrics.SET_DATA, path, () -> this.zk.setData(path, this.stringSerializer.serialize(data), VERSION));
             log.info("修改节点信息成功:{}={}", path, data);
         } catch (KeeperException e) {
             log.info("修改{}节点信息KeeperException：{}", path, e.getMessage());
@@ -262,32 +334,28 @@ public class ZkAuthWatcher implements Watcher {
      * @param key  密钥
      */
     public void writePathByAuth(String path, String data, String key) {
+        String credential = Strings.isNotBlank(key) ? key : CORRECT_AUTH_KEY;
+        if (this.noAuthCache.isDenied(credential, path, ZooDefs.Perms.WRITE)) {
+            log.info("key={},修改{}节点信息无权限（缓存）", key, path);
+            return;
+        }
         try {
+            // 直接修改，节点不存在时以 NoNode 结束，一次往返
             if (Strings.isNotBlank(key) && !CORRECT_AUTH_KEY.equals(key)) {
-                // 重新创建个连接
-                ZooKeeper newZk = null;
-                try {
-                    newZk = new ZooKeeper(SERVER_ADDR, SESSION_TIMEOUT, this);
-                    // 授权
-                    newZk.addAuthInfo(AUTH_TYPE, key.getBytes());
-                    Thread.sleep(1000);
-                    Stat stat = newZk.exists(path, false);
-                    if (stat != null) {
-                        newZk.setData(path, data.getBytes(), VERSION);
-                        log.info("使用授权key={},data={},修改节点信息成功:{}", key, data, path);
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                // 使用会话池中该密钥对应的会话
+                sessionPool.withSession(AUTH_TYPE, key, newZk ->
+                        ZkLimiter.get().call(ZkMetrics.SET_DATA, path, () -> newZk.setData(path, this.stringSerializer.serialize(data), VERSION)));
             } else {
                 // 默认的
-                Stat stat = this.zk.exists(path, false);
-                if (stat != null) {
-                    this.zk.setData(path, data.getBytes(), VERSION);
-                    key = CORRECT_AUTH_KEY;
-                    log.info("使用授权key={},data={},修改节点信息成功:{}", key, data, path);
-                }
+                ZkLimiter.get().call(ZkMetrics.SET_DATA, path, () -> this.zk.setData(path, this.stringSerializer.serialize(data), VERSION));
+                key = CORRECT_AUTH_KEY;
             }
+            log.info("使用授权key={},data={},修改节点信息成功:{}", key, data, path);
+        } catch (KeeperException.NoNodeException e) {
+            log.info("key={},修改{}节点信息：节点不存在", key, path);
+        } catch (KeeperException.NoAuthException e) {
+            this.noAuthCache.deny(credential, path, ZooDefs.Perms.WRITE);
+            log.info("key={},修改{}节点信息KeeperException：{}", key, path, e.getMessage());
         } catch (KeeperException e) {
             log.info("key={},修改{}节点信息KeeperException：{}", key, path, e.getMessage());
         } catch (InterruptedException e) {
@@ -0,0 +1,337 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import com.orjrs.zk.client.serializer.Serializers;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jute.Record;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.proto.SetDataRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 批量事务：将多个 create/setData/delete/check 合并为 {@link ZooKeeper#multi} 调用
+ * <p>
+ * 超过请求大小上限（jute.maxbuffer）时自动拆分为多个 multi，每个 multi 内部原子执行，
+ * 多个 multi 之间在同一会话上按提交顺序流水线发送。
+ *
+ * @author orjrs
+ * @create 2020-07-12 10:20
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkBatch implements AutoCloseable {
+
+    /** 默认请求大小上限，与服务端 jute.maxbuffer 一致 */
+    private static final int MAX_BUFFER = Integer.getInteger("jute.maxbuffer", 0xfffff);
+
+    /** 为请求头等预留的空间 */
+    private static final int RESERVED_BYTES = 1024;
+
+    /** 单个操作的固定开销估算（类型、长度前缀、版本、flags） */
+    private static final int OP_OVERHEAD = 32;
+
+    /** 单个ACL的开销估算 */
+    private static final int ACL_OVERHEAD = 64;
+
+    /** zk 会话 */
+    private final ZooKeeper zk;
+
+    /** 创建节点使用的ACL */
+    private final List<ACL> acl;
+
+    /** 待提交的操作 */
+    private List<Op> pending = new ArrayList<>();
+
+    /** 单次 multi 的字节上限 */
+    private int maxBytes = MAX_BUFFER - RESERVED_BYTES;
+
+    /** 自动提交：操作数阈值，0 表示不启用 */
+    private int flushCount;
+
+    /** 自动提交的结果回调 */
+    private Consumer<List<OpOutcome>> flushListener;
+
+    /** 自动提交定时器 */
+    private ScheduledExecutorService scheduler;
+
+    /** 定时任务 */
+    private ScheduledFuture<?> flushTask;
+
+    public ZkBatch(ZooKeeper zk, List<ACL> acl) {
+        this.zk = zk;
+        this.acl = acl;
+    }
+
+    /**
+     * 设置单次 multi 的字节上限
+     *
+     * @param maxBytes 字节数
+     * @return this
+     */
+    public ZkBatch maxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * 开启自动提交：攒够 count 个操作或每隔 window 时间提交一次
+     *
+     * @param count    操作数阈值，0 表示只按时间提交
+     * @param window   时间窗口，0 表示只按数量提交
+     * @param unit     时间单位
+     * @param listener 自动提交的结果回调
+     * @return this
+     */
+    public synchronized ZkBatch autoFlush(int count, long window, TimeUnit unit, Consumer<List<OpOutcome>> listener) {
+        this.flushCount = count;
+        this.flushListener = listener;
+        if (null == this.scheduler) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "zk-batch-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (window > 0 && null == this.flushTask) {
+            this.flushTask = this.scheduler.scheduleWithFixedDelay(this::autoFlushNow, window, window, unit);
+        }
+        return this;
+    }
+
+    public ZkBatch create(String path, String data) {
+        return create(path, Serializers.UTF8.serialize(data), CreateMode.PERSISTENT);
+    }
+
+    public ZkBatch create(String path, byte[] data, CreateMode mode) {
+        return add(Op.create(path, data, this.acl, mode));
+    }
+
+    public ZkBatch setData(String path, String data) {
+        return setData(path, Serializers.UTF8.serialize(data), -1);
+    }
+
+    public ZkBatch setData(String path, byte[] data, int version) {
+        return add(Op.setData(path, data, version));
+    }
+
+    public ZkBatch delete(String path) {
+        return delete(path, -1);
+    }
+
+    public ZkBatch delete(String path, int version) {
+        return add(Op.delete(path, version));
+    }
+
+    public ZkBatch check(String path, int version) {
+        return add(Op.check(path, version));
+    }
+
+    /**
+     * 添加操作，达到数量阈值时交给自动提交线程异步提交
+     *
+     * @param op 操作
+     * @return this
+     */
+    public synchronized ZkBatch add(Op op) {
+        this.pending.add(op);
+        if (this.flushCount > 0 && this.pending.size() % this.flushCount == 0) {
+            this.scheduler.execute(this::autoFlushNow);
+        }
+        return this;
+    }
+
+    /**
+     * 当前待提交的操作数
+     *
+     * @return 操作数
+     */
+    public synchronized int size() {
+        return this.pending.size();
+    }
+
+    /**
+     * 提交所有待提交的操作
+     *
+     * @return 每个操作的结果，顺序与添加顺序一致
+     * @throws InterruptedException 等待结果时被中断
+     */
+    public List<OpOutcome> flush() throws InterruptedException {
+        List<Op> ready;
+        synchronized (this) {
+            ready = this.pending;
+            this.pending = new ArrayList<>();
+        }
+        return submit(ready);
+    }
+
+    /**
+     * 停止自动提交并提交剩余的操作，等待结果时被中断则保留中断标记，剩余操作的结果不再通知
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (null != this.flushTask) {
+                this.flushTask.cancel(false);
+            }
+            if (null != this.scheduler) {
+                this.scheduler.shutdown();
+            }
+        }
+        try {
+            notifyListener(flush());
+        } catch (InterruptedException e) {
+            log.info("关闭批量事务时提交被中断：{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void autoFlushNow() {
+        try {
+            notifyListener(flush());
+        } catch (InterruptedException e) {
+            log.info("批量事务自动提交被中断：{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void notifyListener(List<OpOutcome> outcomes) {
+        if (null != this.flushListener && !outcomes.isEmpty()) {
+            this.flushListener.accept(outcomes);
+        }
+    }
+
+    /**
+     * 按字节上限拆分后流水线提交，等待全部 multi 返回
+     */
+    private List<OpOutcome> submit(List<Op> ops) throws InterruptedException {
+        if (ops.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<Op>> chunks = split(ops);
+        CountDownLatch latch = new CountDownLatch(chunks.size());
+        List<List<OpOutcome>> chunkResults = new ArrayList<>(chunks.size());
+        for (List<Op> chunk : chunks) {
+            List<OpOutcome> outcomes = new ArrayList<>(chunk.size());
+            chunkResults.add(outcomes);
+            long start = ZkMetrics.get().start();
+            this.zk.multi(chunk, (rc, path, ctx, results) -> {
+                ZkMetrics.get().record(ZkMetrics.MULTI, null, start, rc);
+                for (int i = 0; i < chunk.size(); i++) {
+                    OpResult result = null != results && i < results.size() ? results.get(i) : null;
+                    outcomes.add(new OpOutcome(chunk.get(i), result, rc));
+                }
+                latch.countDown();
+            }, null);
+        }
+        latch.await();
+        List<OpOutcome> all = new ArrayList<>(ops.size());
+        for (List<OpOutcome> outcomes : chunkResults) {
+            all.addAll(outcomes);
+        }
+        log.info("批量事务提交完成：{}个操作，{}次multi", ops.size(), chunks.size());
+        return all;
+    }
+
+    private List<List<Op>> split(List<Op> ops) {
+        List<List<Op>> chunks = new ArrayList<>();
+        List<Op> current = new ArrayList<>();
+        int bytes = 0;
+        for (Op op : ops) {
+            int size = estimate(op);
+            if (!current.isEmpty() && bytes + size > this.maxBytes) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                bytes = 0;
+            }
+            current.add(op);
+            bytes += size;
+        }
+        chunks.add(current);
+        return chunks;
+    }
+
+    /**
+     * 估算操作序列化后的大小
+     */
+    private int estimate(Op op) {
+        int size = OP_OVERHEAD + op.getPath().length() * 3;
+        Record record = op.toRequestRecord();
+        if (record instanceof CreateRequest) {
+            CreateRequest request = (CreateRequest) record;
+            size += length(request.getData()) + request.getAcl().size() * ACL_OVERHEAD;
+        } else if (record instanceof SetDataRequest) {
+            size += length(((SetDataRequest) record).getData());
+        }
+        return size;
+    }
+
+    private static int length(byte[] data) {
+        return null == data ? 0 : data.length;
+    }
+
+    /**
+     * 单个操作的执行结果
+     */
+    public static class OpOutcome {
+
+        /** 操作 */
+        private final Op op;
+
+        /** 服务端返回结果，整个 multi 因连接问题失败时为空 */
+        private final OpResult result;
+
+        /** 结果码 */
+        private final KeeperException.Code code;
+
+        OpOutcome(Op op, OpResult result, int multiRc) {
+            this.op = op;
+            this.result = result;
+            if (result instanceof OpResult.ErrorResult) {
+                int err = ((OpResult.ErrorResult) result).getErr();
+                // 同一 multi 中其他操作失败导致回滚的，服务端返回 OK，这里统一视为未执行
+                this.code = KeeperException.Code.OK.intValue() == err
+                        ? KeeperException.Code.RUNTIMEINCONSISTENCY : KeeperException.Code.get(err);
+            } else if (null == result) {
+                this.code = KeeperException.Code.get(multiRc);
+            } else {
+                this.code = KeeperException.Code.OK;
+            }
+        }
+
+        public Op getOp() {
+            return op;
+        }
+
+        public OpResult getResult() {
+            return result;
+        }
+
+        public KeeperException.Code getCode() {
+            return code;
+        }
+
+        public boolean isOk() {
+            return KeeperException.Code.OK == code;
+        }
+
+        @Override
+        public String toString() {
+            return op.getPath() + "=" + code;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 批量读取子节点：先 getChildren，再以有界窗口流水线发送异步 getData
+ * <p>
+ * 读取 N 个子节点的耗时约为一个 RTT 加传输时间，而不是 N 个 RTT。
+ * 在途请求与尚未被调用方取走的结果合计不超过窗口，流式读取时内存随窗口而不是子节点数增长。
+ * 列出子节点后被删除的节点（NoNode）会被跳过，不影响其他节点的读取。
+ *
+ * @author orjrs
+ * @create 2020-07-18 16:40
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkBulkReader {
+
+    /** 默认最大在途请求数 */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    /** zk 会话 */
+    private final ZooKeeper zk;
+
+    /** 最大在途请求数 */
+    private final int maxInFlight;
+
+    public ZkBulkReader(ZooKeeper zk) {
+        this(zk, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public ZkBulkReader(ZooKeeper zk, int maxInFlight) {
+        this.zk = zk;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 读取所有子节点数据
+     *
+     * @param parent 父节点路径
+     * @return 子节点名称 -> 数据，按子节点名称排序
+     * @throws KeeperException      父节点不存在或读取子节点出现除 NoNode 以外的错误
+     * @throws InterruptedException 等待结果时被中断
+     */
+    public Map<String, byte[]> readChildren(String parent) throws KeeperException, InterruptedException {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Node> entry : readChildrenWithStat(parent).entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getData());
+        }
+        return result;
+    }
+
+    /**
+     * 读取所有子节点数据及状态
+     *
+     * @param parent 父节点路径
+     * @return 子节点名称 -> 节点，按子节点名称排序
+     * @throws KeeperException      父节点不存在或读取子节点出现除 NoNode 以外的错误
+     * @throws InterruptedException 等待结果时被中断
+     */
+    public Map<String, Node> readChildrenWithStat(String parent) throws KeeperException, InterruptedException {
+        List<String> children = ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, parent, () -> this.zk.getChildren(parent, false));
+        Collections.sort(children);
+        Map<String, Node> nodes = new HashMap<>(children.size() * 4 / 3 + 1);
+        Iterator<Node> iterator = read(parent, children);
+        try {
+            while (iterator.hasNext()) {
+                Node node = iterator.next();
+                nodes.put(node.getName(), node);
+            }
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof KeeperException) {
+                throw (KeeperException) e.getCause();
+            }
+            if (e.getCause() instanceof InterruptedException) {
+                // 迭代器已恢复中断标记，以 InterruptedException 抛出时按约定清除
+                Thread.interrupted();
+                throw (InterruptedException) e.getCause();
+            }
+            throw e;
+        }
+        // 按子节点名称排序输出
+        Map<String, Node> sorted = new LinkedHashMap<>(nodes.size() * 4 / 3 + 1);
+        for (String child : children) {
+            Node node = nodes.get(child);
+            if (null != node) {
+                sorted.put(child, node);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * 流式读取子节点，按返回顺序逐个消费，已删除的子节点不会出现
+     *
+     * @param parent 父节点路径
+     * @return 节点迭代器，出现除 NoNode 以外的错误时 next() 抛出 {@link IllegalStateException}；
+     * 调用方每取走一个结果才发出下一个请求，不再消费时停止发送
+     * @throws KeeperException      父节点不存在
+     * @throws InterruptedException 列出子节点时被中断
+     */
+    public Iterator<Node> streamChildren(String parent) throws KeeperException, InterruptedException {
+        return read(parent, ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, parent, () -> this.zk.getChildren(parent, false)));
+    }
+
+    private Iterator<Node> read(String parent, List<String> children) {
+        return new NodeIterator(parent, children);
+    }
+
+    /**
+     * 按窗口发送请求并取出结果的迭代器
+     * <p>
+     * 先发出 maxInFlight 个请求，之后调用方每取走一个结果再发出一个，在途请求与未取走的结果合计不超过窗口；
+     * 调用方不再消费或出现错误后不再发送。请求在调用方线程中异步发出，不需要额外的线程。
+     */
+    private class NodeIterator implements Iterator<Node> {
+
+        /** 子节点路径前缀 */
+        private final String prefix;
+
+        private final List<String> children;
+
+        /** 回调放入的结果 */
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+        /** 已发出的请求数 */
+        private int sent;
+
+        /** 剩余未返回的请求数 */
+        private int remaining;
+
+        private Node next;
+
+        NodeIterator(String parent, List<String> children) {
+            this.prefix = "/".equals(parent) ? parent : parent + "/";
+            this.children = children;
+            this.remaining = children.size();
+            while (this.sent < Math.min(maxInFlight, children.size())) {
+                send();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (null == this.next && this.remaining > 0) {
+                Object item;
+                try {
+                    item = this.queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待子节点数据时被中断", e);
+                }
+                this.remaining--;
+                if (item instanceof KeeperException) {
+                    // 不再发送剩余请求
+                    this.remaining = 0;
+                    throw new IllegalStateException(((KeeperException) item).getMessage(), (Throwable) item);
+                }
+                // 取走一个结果，窗口空出一个位置
+                if (this.sent < this.children.size()) {
+                    send();
+                }
+                if (item instanceof Node) {
+                    this.next = (Node) item;
+                }
+            }
+            return null != this.next;
+        }
+
+        @Override
+        public Node next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = this.next;
+            this.next = null;
+            return node;
+        }
+
+        private void send() {
+            String child = this.children.get(this.sent++);
+            long start = ZkMetrics.get().start();
+            zk.getData(this.prefix + child, false, (rc, path, ctx, data, stat) -> {
+                ZkMetrics.get().record(ZkMetrics.GET_DATA, path, start, rc);
+                KeeperException.Code code = KeeperException.Code.get(rc);
+                if (KeeperException.Code.OK == code) {
+                    this.queue.add(new Node(child, data, stat));
+                } else if (KeeperException.Code.NONODE == code) {
+                    log.info("子节点{}已被删除，跳过", path);
+                    this.queue.add(Skipped.INSTANCE);
+                } else {
+                    this.queue.add(KeeperException.create(code, path));
+                }
+            }, null);
+        }
+    }
+
+    /**
+     * 已删除节点的占位
+     */
+    private enum Skipped {
+        INSTANCE
+    }
+
+    /**
+     * 子节点数据及状态
+     */
+    public static class Node {
+
+        /** 子节点名称 */
+        private final String name;
+
+        /** 数据 */
+        private final byte[] data;
+
+        /** 状态 */
+        private final Stat stat;
+
+        Node(String name, byte[] data, Stat stat) {
+            this.name = name;
+            this.data = data;
+            this.stat = stat;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public Stat getStat() {
+            return stat;
+        }
+    }
+}
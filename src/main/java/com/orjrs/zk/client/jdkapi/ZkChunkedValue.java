@@ -0,0 +1,323 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * 大数据分块存储：突破 jute.maxbuffer（约 1MB）的单节点大小限制
+ * <p>
+ * 节点本身保存清单（版本、长度、分块大小、分块数、CRC32、分块名前缀），数据按固定大小切分为子节点
+ * {@code chunk-<版本>-<随机标识>-<序号>}。写入时先通过 {@link ZkBatch} 以多个 multi 流水线写入新版本的分块，
+ * 再用一个 multi 按版本号原子替换清单并删除旧分块；并发写入时只有一个能替换成功，其余删除自己的分块后
+ * 以 BadVersion 失败。读取时先读清单，再流水线并行读取所有分块并校验 CRC32；读取期间清单被替换
+ * （旧分块 NoNode）时重新读取，因此不会读到混合版本。
+ *
+ * @author orjrs
+ * @create 2020-10-10 10:30
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkChunkedValue {
+
+    /** 默认分块大小 */
+    private static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+    /** 清单标识 "ZKCH" */
+    private static final int MAGIC = 0x5a4b4348;
+
+    /** 分块名前缀 */
+    private static final String CHUNK_PREFIX = "chunk-";
+
+    /** 读取时清单被替换的最大重试次数 */
+    private static final int MAX_READ_RETRIES = 5;
+
+    /** 替换清单时旧分块已被清理（NoNode）的最大重试次数 */
+    private static final int MAX_SWAP_RETRIES = 3;
+
+    /** zk 会话 */
+    private final ZooKeeper zk;
+
+    /** 创建节点使用的ACL */
+    private final List<ACL> acl;
+
+    /** 分块大小 */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    public ZkChunkedValue(ZooKeeper zk, List<ACL> acl) {
+        this.zk = zk;
+        this.acl = acl;
+    }
+
+    /**
+     * 设置分块大小，需小于 jute.maxbuffer
+     *
+     * @param chunkSize 字节数
+     * @return this
+     */
+    public ZkChunkedValue chunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 写入数据，节点不存在时创建
+     *
+     * @param path 路径
+     * @param data 数据
+     * @return 新版本号
+     * @throws KeeperException      写入失败；并发写入时以 BadVersion 失败
+     * @throws InterruptedException 中断
+     */
+    public long write(String path, byte[] data) throws KeeperException, InterruptedException {
+        Stat stat = new Stat();
+        Manifest old = readManifest(path, stat);
+        if (null == old) {
+            try {
+                ZkLimiter.get().call(ZkMetrics.CREATE, path,
+                        () -> this.zk.create(path, Manifest.EMPTY.encode(), this.acl, CreateMode.PERSISTENT));
+            } catch (KeeperException.NodeExistsException e) {
+                // 并发创建
+            }
+            old = readManifest(path, stat);
+            if (null == old) {
+                throw new KeeperException.NoNodeException(path);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        int count = (data.length + this.chunkSize - 1) / this.chunkSize;
+        String prefix = CHUNK_PREFIX + (old.version + 1) + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt()) + "-";
+        Manifest manifest = new Manifest(old.version + 1, data.length, this.chunkSize, count, crc.getValue(), prefix);
+
+        // 分块多个 multi 流水线写入
+        ZkBatch batch = new ZkBatch(this.zk, this.acl);
+        for (int i = 0; i < count; i++) {
+            int from = i * this.chunkSize;
+            int to = Math.min(from + this.chunkSize, data.length);
+            byte[] chunk = new byte[to - from];
+            System.arraycopy(data, from, chunk, 0, chunk.length);
+            batch.create(manifest.chunkPath(path, i), chunk, CreateMode.PERSISTENT);
+        }
+        for (ZkBatch.OpOutcome outcome : batch.flush()) {
+            if (!outcome.isOk()) {
+                deleteChunks(path, manifest);
+                throw KeeperException.create(outcome.getCode(), outcome.getOp().getPath());
+            }
+        }
+
+        // 按版本号替换清单并删除旧分块，任何失败都删除本次写入的分块
+        List<String> stale = new ArrayList<>(old.count);
+        for (int i = 0; i < old.count; i++) {
+            stale.add(old.chunkPath(path, i));
+        }
+        try {
+            for (int attempt = 0; ; attempt++) {
+                List<Op> ops = new ArrayList<>(stale.size() + 1);
+                ops.add(Op.setData(path, manifest.encode(), stat.getVersion()));
+                for (String chunk : stale) {
+                    ops.add(Op.delete(chunk, -1));
+                }
+                try {
+                    ZkLimiter.get().call(ZkMetrics.MULTI, path, () -> this.zk.multi(ops));
+                    break;
+                } catch (KeeperException.NoNodeException e) {
+                    if (attempt >= MAX_SWAP_RETRIES) {
+                        throw e;
+                    }
+                    // 部分旧分块已被清理，只删除仍存在的，清单版本仍由 setData 校验
+                    stale = existingChunks(path, stale);
+                }
+            }
+        } catch (KeeperException e) {
+            deleteChunks(path, manifest);
+            throw e;
+        }
+        log.info("分块写入{}完成：版本{}，{}字节，{}个分块", path, manifest.version, data.length, count);
+        return manifest.version;
+    }
+
+    /**
+     * 读取数据
+     *
+     * @param path 路径
+     * @return 数据
+     * @throws KeeperException      节点不存在（NoNode）或读取失败
+     * @throws InterruptedException 中断
+     */
+    public byte[] read(String path) throws KeeperException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            Manifest manifest = readManifest(path, null);
+            if (null == manifest || 0 == manifest.version) {
+                throw new KeeperException.NoNodeException(path);
+            }
+            byte[] data = readChunks(path, manifest);
+            if (null != data) {
+                return data;
+            }
+            if (attempt >= MAX_READ_RETRIES) {
+                throw KeeperException.create(KeeperException.Code.RUNTIMEINCONSISTENCY, path);
+            }
+            log.info("读取{}期间版本{}已被替换，重新读取", path, manifest.version);
+        }
+    }
+
+    /**
+     * 删除节点及所有分块
+     *
+     * @param path 路径
+     * @throws KeeperException      删除失败
+     * @throws InterruptedException 中断
+     */
+    public void delete(String path) throws KeeperException, InterruptedException {
+        new ZkTreeDeleter(this.zk).deleteRecursive(path);
+    }
+
+    /**
+     * 读取所有分块，清单被替换（分块 NoNode）或校验失败时返回 null
+     */
+    private byte[] readChunks(String path, Manifest manifest) throws KeeperException, InterruptedException {
+        byte[] data = new byte[(int) manifest.length];
+        CountDownLatch latch = new CountDownLatch(manifest.count);
+        AtomicInteger error = new AtomicInteger(KeeperException.Code.OK.intValue());
+        for (int i = 0; i < manifest.count; i++) {
+            int offset = i * manifest.chunkSize;
+            long start = ZkMetrics.get().start();
+            this.zk.getData(manifest.chunkPath(path, i), false, (rc, p, ctx, chunk, stat) -> {
+                ZkMetrics.get().record(ZkMetrics.GET_DATA, p, start, rc);
+                if (KeeperException.Code.OK.intValue() == rc && offset + chunk.length <= data.length) {
+                    System.arraycopy(chunk, 0, data, offset, chunk.length);
+                } else {
+                    error.compareAndSet(KeeperException.Code.OK.intValue(), rc);
+                }
+                latch.countDown();
+            }, null);
+        }
+        latch.await();
+        KeeperException.Code code = KeeperException.Code.get(error.get());
+        if (KeeperException.Code.NONODE == code) {
+            return null;
+        }
+        if (KeeperException.Code.OK != code) {
+            throw KeeperException.create(code, path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (crc.getValue() != manifest.crc) {
+            log.info("{}版本{}校验失败", path, manifest.version);
+            return null;
+        }
+        return data;
+    }
+
+    private Manifest readManifest(String path, Stat stat) throws KeeperException, InterruptedException {
+        try {
+            byte[] bytes = ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> this.zk.getData(path, false, stat));
+            return Manifest.decode(path, bytes);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 仍存在的分块，节点本身不存在时抛出 NoNode
+     */
+    private List<String> existingChunks(String path, List<String> chunks) throws KeeperException, InterruptedException {
+        List<String> children = ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, path, () -> this.zk.getChildren(path, false));
+        Set<String> names = new HashSet<>(children);
+        List<String> existing = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) {
+            if (names.contains(chunk.substring(path.length() + 1))) {
+                existing.add(chunk);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 写入失败时删除本次写入的分块
+     */
+    private void deleteChunks(String path, Manifest manifest) throws InterruptedException {
+        ZkBatch batch = new ZkBatch(this.zk, this.acl);
+        for (int i = 0; i < manifest.count; i++) {
+            batch.delete(manifest.chunkPath(path, i));
+        }
+        // 各分块单独删除，不存在的跳过
+        batch.maxBytes(0);
+        batch.flush();
+    }
+
+    /**
+     * 清单
+     */
+    private static final class Manifest {
+
+        private static final Manifest EMPTY = new Manifest(0L, 0L, 0, 0, 0L, "");
+
+        private final long version;
+
+        private final long length;
+
+        private final int chunkSize;
+
+        private final int count;
+
+        private final long crc;
+
+        private final String prefix;
+
+        Manifest(long version, long length, int chunkSize, int count, long crc, String prefix) {
+            this.version = version;
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.count = count;
+            this.crc = crc;
+            this.prefix = prefix;
+        }
+
+        String chunkPath(String path, int index) {
+            return path + "/" + this.prefix + index;
+        }
+
+        byte[] encode() {
+            byte[] prefixBytes = this.prefix.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 8 + 4 + 4 + 8 + 4 + prefixBytes.length);
+            buffer.putInt(MAGIC).putLong(this.version).putLong(this.length).putInt(this.chunkSize)
+                    .putInt(this.count).putLong(this.crc).putInt(prefixBytes.length).put(prefixBytes);
+            return buffer.array();
+        }
+
+        static Manifest decode(String path, byte[] bytes) throws KeeperException {
+            ByteBuffer buffer = ByteBuffer.wrap(null == bytes ? new byte[0] : bytes);
+            if (buffer.remaining() < 4 || MAGIC != buffer.getInt()) {
+                // 不是分块存储的节点
+                throw KeeperException.create(KeeperException.Code.BADARGUMENTS, path);
+            }
+            long version = buffer.getLong();
+            long length = buffer.getLong();
+            int chunkSize = buffer.getInt();
+            int count = buffer.getInt();
+            long crc = buffer.getLong();
+            byte[] prefixBytes = new byte[buffer.getInt()];
+            buffer.get(prefixBytes);
+            return new Manifest(version, length, chunkSize, count, crc, new String(prefixBytes, StandardCharsets.UTF_8));
+        }
+    }
+}
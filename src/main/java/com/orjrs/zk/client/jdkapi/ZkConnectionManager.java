@@ -0,0 +1,393 @@
+package com.orjrs.zk.client.jdkapi;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接管理：非阻塞建立会话，会话过期后自动重建
+ * <p>
+ * 连接串支持多个地址（host1:2181,host2:2181）和 chroot，某个地址不可用时由 ZK 客户端轮换到其他地址。
+ * {@link #connect(long, TimeUnit)} 立即返回，会话连上（SyncConnected）时完成，超过期限以
+ * ConnectionLoss 异常结束，启动时间有上限。会话过期（Expired）后按带随机抖动的指数退避重建会话，
+ * 并重新添加授权信息。事件转发给构造时传入的 Watcher，旧会话的事件不再转发。
+ *
+ * @author orjrs
+ * @create 2020-09-26 10:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkConnectionManager implements AutoCloseable {
+
+    /** 重建退避基数（毫秒） */
+    private static final long BACKOFF_BASE_MILLIS = 100L;
+
+    /** 最大重建退避（毫秒） */
+    private static final long BACKOFF_MAX_MILLIS = 10000L;
+
+    /** 连接串，含 chroot */
+    private final String connectString;
+
+    /** ZK会话超时时间 */
+    private final int sessionTimeout;
+
+    /** 事件转发目标，可为空 */
+    private final Watcher watcher;
+
+    /** 授权信息，会话重建时重新添加 */
+    private final List<AuthInfo> authInfos = new CopyOnWriteArrayList<>();
+
+    /** 状态监听器 */
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** 超时与重建 */
+    private final ScheduledExecutorService scheduler;
+
+    /** 当前会话，受 this 锁保护 */
+    private Session session;
+
+    /** 当前会话连上时完成，重建会话时替换，受 this 锁保护 */
+    private CompletableFuture<Session> connected = new CompletableFuture<>();
+
+    /** 连续重建失败次数，受 this 锁保护 */
+    private int attempts;
+
+    /** 会话代数 */
+    private long generation;
+
+    private volatile State state = State.LATENT;
+
+    public ZkConnectionManager(String connectString, int sessionTimeout, Watcher watcher) {
+        this(connectString, null, sessionTimeout, watcher);
+    }
+
+    /**
+     * @param connectString  连接串，多个地址以逗号分隔
+     * @param chroot         根路径，可为空
+     * @param sessionTimeout ZK会话超时时间
+     * @param watcher        事件转发目标，可为空
+     */
+    public ZkConnectionManager(String connectString, String chroot, int sessionTimeout, Watcher watcher) {
+        this.connectString = null == chroot || chroot.isEmpty() || "/".equals(chroot) ? connectString : connectString + chroot;
+        this.sessionTimeout = sessionTimeout;
+        this.watcher = watcher;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "zk-connection-manager");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 添加授权信息，已有会话立即生效，重建的会话自动添加
+     *
+     * @param scheme 授权类型
+     * @param auth   授权信息
+     */
+    public void addAuthInfo(String scheme, byte[] auth) {
+        this.authInfos.add(new AuthInfo(scheme, auth));
+        Session current;
+        synchronized (this) {
+            current = this.session;
+        }
+        if (null != current) {
+            current.zk.addAuthInfo(scheme, auth);
+        }
+    }
+
+    public void addStateListener(StateListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeStateListener(StateListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * 建立会话（已建立时直接返回当前会话），不阻塞
+     *
+     * @param timeout 期限
+     * @param unit    期限单位
+     * @return 连上时完成；超过期限以 {@link KeeperException.ConnectionLossException} 结束，会话在后台继续连接
+     */
+    public CompletableFuture<Session> connect(long timeout, TimeUnit unit) {
+        CompletableFuture<Session> future;
+        synchronized (this) {
+            if (State.CLOSED == this.state) {
+                CompletableFuture<Session> closed = new CompletableFuture<>();
+                closed.completeExceptionally(new IllegalStateException("连接管理已关闭"));
+                return closed;
+            }
+            if (null == this.session) {
+                open();
+            }
+            future = this.connected;
+        }
+        return withDeadline(future, timeout, unit);
+    }
+
+    /**
+     * 当前会话连上时完成，会话过期重建期间返回的是新会话的结果
+     *
+     * @return 会话
+     */
+    public synchronized CompletableFuture<Session> getSession() {
+        return this.connected;
+    }
+
+    /**
+     * 当前会话的 ZooKeeper，可能尚未连上（此时调用以 ConnectionLoss 失败）
+     *
+     * @return ZooKeeper，会话过期重建前为空
+     */
+    public synchronized ZooKeeper getZooKeeper() {
+        return null == this.session ? null : this.session.zk;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public void close() {
+        Session current;
+        synchronized (this) {
+            this.state = State.CLOSED;
+            current = this.session;
+            this.session = null;
+            this.connected.completeExceptionally(new IllegalStateException("连接管理已关闭"));
+        }
+        this.scheduler.shutdownNow();
+        if (null != current) {
+            current.close();
+        }
+        fireStateChanged(State.CLOSED, null);
+    }
+
+    /**
+     * 新建会话，调用方持有 this 锁
+     */
+    private void open() {
+        long gen = ++this.generation;
+        if (this.connected.isCompletedExceptionally()) {
+            this.connected = new CompletableFuture<>();
+        }
+        try {
+            Session created = new Session(gen);
+            created.zk = new ZooKeeper(this.connectString, this.sessionTimeout, created);
+            for (AuthInfo authInfo : this.authInfos) {
+                created.zk.addAuthInfo(authInfo.scheme, authInfo.auth);
+            }
+            this.session = created;
+            this.state = State.CONNECTING;
+            log.info("创建ZK会话：{}，第{}代", this.connectString, gen);
+        } catch (IOException | IllegalArgumentException e) {
+            // 连接串不合法等，不会自行恢复
+            log.info("创建ZK会话失败：{}", e.getMessage());
+            this.connected.completeExceptionally(e);
+        }
+    }
+
+    private void onEvent(Session source, WatchedEvent event) {
+        // 旧会话的事件不再转发，当前会话的 Expired 事件仍然转发
+        boolean current = isCurrent(source);
+        if (Watcher.Event.EventType.None == event.getType()) {
+            onState(source, event.getState());
+        }
+        if (null != this.watcher && current) {
+            this.watcher.process(event);
+        }
+    }
+
+    private void onState(Session source, Watcher.Event.KeeperState keeperState) {
+        State newState;
+        CompletableFuture<Session> toComplete = null;
+        synchronized (this) {
+            if (source != this.session) {
+                return;
+            }
+            switch (keeperState) {
+                case SyncConnected:
+                    newState = State.CONNECTED;
+                    toComplete = this.connected;
+                    this.attempts = 0;
+                    break;
+                case ConnectedReadOnly:
+                    newState = State.READ_ONLY;
+                    toComplete = this.connected;
+                    break;
+                case Disconnected:
+                    newState = State.DISCONNECTED;
+                    break;
+                case AuthFailed:
+                    newState = State.AUTH_FAILED;
+                    break;
+                case Expired:
+                    newState = State.EXPIRED;
+                    this.session = null;
+                    if (this.connected.isDone()) {
+                        this.connected = new CompletableFuture<>();
+                    }
+                    scheduleRebuild();
+                    break;
+                default:
+                    return;
+            }
+            this.state = newState;
+        }
+        if (State.EXPIRED == newState) {
+            source.close();
+        }
+        if (null != toComplete) {
+            toComplete.complete(source);
+        }
+        fireStateChanged(newState, source);
+    }
+
+    /**
+     * 带随机抖动的指数退避后重建会话，调用方持有 this 锁
+     */
+    private void scheduleRebuild() {
+        int attempt = this.attempts++;
+        long backoff = Math.min(BACKOFF_BASE_MILLIS << Math.min(attempt, 16), BACKOFF_MAX_MILLIS);
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        log.info("ZK会话过期，{}ms 后重建会话", delay);
+        this.scheduler.schedule(() -> {
+            synchronized (this) {
+                if (State.CLOSED != this.state && null == this.session) {
+                    open();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized boolean isCurrent(Session source) {
+        return source == this.session;
+    }
+
+    private CompletableFuture<Session> withDeadline(CompletableFuture<Session> future, long timeout, TimeUnit unit) {
+        if (future.isDone()) {
+            return future;
+        }
+        CompletableFuture<Session> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = this.scheduler.schedule(
+                () -> result.completeExceptionally(new KeeperException.ConnectionLossException()), timeout, unit);
+        future.whenComplete((s, e) -> {
+            timer.cancel(false);
+            if (null == e) {
+                result.complete(s);
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private void fireStateChanged(State newState, Session source) {
+        for (StateListener listener : this.listeners) {
+            try {
+                listener.stateChanged(newState, source);
+            } catch (RuntimeException e) {
+                log.info("连接状态监听器处理{}失败：{}", newState, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 连接状态
+     */
+    public enum State {
+        /** 尚未建立会话 */
+        LATENT,
+        /** 正在连接 */
+        CONNECTING,
+        /** 已连接 */
+        CONNECTED,
+        /** 只读连接 */
+        READ_ONLY,
+        /** 断开，客户端自动重连，会话仍有效 */
+        DISCONNECTED,
+        /** 会话过期，正在重建 */
+        EXPIRED,
+        /** 授权失败 */
+        AUTH_FAILED,
+        /** 已关闭 */
+        CLOSED
+    }
+
+    /**
+     * 连接状态监听器，在 ZK 事件线程中回调，不能阻塞
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        void stateChanged(State state, Session session);
+    }
+
+    /**
+     * 一个 ZK 会话，会话过期后由新的 Session 替代
+     */
+    public final class Session implements Watcher {
+
+        /** 会话代数，从 1 开始 */
+        private final long generation;
+
+        private ZooKeeper zk;
+
+        Session(long generation) {
+            this.generation = generation;
+        }
+
+        public ZooKeeper getZooKeeper() {
+            return zk;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public long getSessionId() {
+            return zk.getSessionId();
+        }
+
+        @Override
+        public void process(WatchedEvent event) {
+            onEvent(this, event);
+        }
+
+        void close() {
+            try {
+                zk.close();
+            } catch (InterruptedException e) {
+                log.info("关闭ZK会话，发生 InterruptedException={}", e.getMessage());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 授权信息
+     */
+    private static final class AuthInfo {
+
+        private final String scheme;
+
+        private final byte[] auth;
+
+        AuthInfo(String scheme, byte[] auth) {
+            this.scheme = scheme;
+            this.auth = auth;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件合并：同一 (路径, 事件类型) 在时间窗口内的多个事件合并为一次回调
+ * <p>
+ * 每来一个事件，回调推迟到 window 之后；但从第一个事件算起最多推迟 maxDelay，
+ * 避免持续的事件风暴导致永远不回调。回调收到的是窗口内最后一个事件，处理方此时重新读取
+ * 即可得到最新状态（同时重新注册监听）。连接状态事件不合并，直接转发。
+ *
+ * @author orjrs
+ * @create 2020-08-15 09:40
+ * @since 1.0.0
+ */
+public class ZkEventCoalescer implements Watcher, AutoCloseable {
+
+    /** 实际处理事件的 Watcher */
+    private final Watcher delegate;
+
+    /** 合并窗口（毫秒） */
+    private final long windowMillis;
+
+    /** 最大推迟时间（毫秒） */
+    private final long maxDelayMillis;
+
+    /** 等待回调的事件，受自身锁保护 */
+    private final Map<Key, Pending> pending = new HashMap<>();
+
+    /** 定时器 */
+    private final ScheduledExecutorService timer;
+
+    /** 收到的事件数 */
+    private final LongAdder received = new LongAdder();
+
+    /** 回调次数 */
+    private final LongAdder delivered = new LongAdder();
+
+    public ZkEventCoalescer(Watcher delegate, long windowMillis, long maxDelayMillis) {
+        this.delegate = delegate;
+        this.windowMillis = windowMillis;
+        this.maxDelayMillis = Math.max(windowMillis, maxDelayMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "zk-event-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+        if (null == event) {
+            return;
+        }
+        this.received.increment();
+        if (null == event.getPath()) {
+            this.delivered.increment();
+            this.delegate.process(event);
+            return;
+        }
+        Key key = new Key(event.getPath(), event.getType());
+        long now = System.currentTimeMillis();
+        synchronized (this.pending) {
+            Pending p = this.pending.get(key);
+            if (null == p) {
+                p = new Pending(now);
+                this.pending.put(key, p);
+            } else {
+                p.future.cancel(false);
+            }
+            p.latest = event;
+            long delay = Math.min(this.windowMillis, p.firstAt + this.maxDelayMillis - now);
+            p.future = this.timer.schedule(() -> deliver(key), Math.max(delay, 0L), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deliver(Key key) {
+        Pending p;
+        synchronized (this.pending) {
+            p = this.pending.remove(key);
+        }
+        if (null != p) {
+            this.delivered.increment();
+            this.delegate.process(p.latest);
+        }
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    @Override
+    public void close() {
+        this.timer.shutdownNow();
+        synchronized (this.pending) {
+            this.pending.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZkEventCoalescer[received=%d, delivered=%d]", getReceived(), getDelivered());
+    }
+
+    /**
+     * 等待回调的合并事件
+     */
+    private static final class Pending {
+
+        /** 第一个事件的时间 */
+        private final long firstAt;
+
+        /** 最后一个事件 */
+        private WatchedEvent latest;
+
+        private ScheduledFuture<?> future;
+
+        Pending(long firstAt) {
+            this.firstAt = firstAt;
+        }
+    }
+
+    /**
+     * 合并键
+     */
+    private static final class Key {
+
+        private final String path;
+
+        private final Event.EventType type;
+
+        Key(String path, Event.EventType type) {
+            this.path = path;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return path.equals(other.path) && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, type);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.orjrs.zk.client.jdkapi;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件分发器：把事件从 ZK 事件线程上立即取走，交给工作线程执行
+ * <p>
+ * 按路径哈希分配到固定的工作线程，同一路径的事件保持顺序，不同路径并行处理；
+ * 连接状态事件（无路径）使用单独的工作线程，不会被慢的节点事件阻塞。
+ * 队列有界，满时阻塞 ZK 事件线程形成背压，并记录阻塞次数，事件不会丢失。
+ *
+ * @author orjrs
+ * @create 2020-08-08 10:30
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkEventDispatcher implements Watcher, AutoCloseable {
+
+    /** 结束标记 */
+    private static final WatchedEvent POISON = new WatchedEvent(Event.EventType.None, Event.KeeperState.Disconnected, null);
+
+    /** 实际处理事件的 Watcher */
+    private final Watcher delegate;
+
+    /** 节点事件工作线程 */
+    private final Lane[] lanes;
+
+    /** 连接状态事件工作线程 */
+    private final Lane stateLane;
+
+    /** 已分发事件数 */
+    private final LongAdder dispatched = new LongAdder();
+
+    /** 已处理事件数 */
+    private final LongAdder completed = new LongAdder();
+
+    /** 处理失败数 */
+    private final LongAdder failed = new LongAdder();
+
+    /** 队列满导致 ZK 事件线程阻塞的次数 */
+    private final LongAdder blocked = new LongAdder();
+
+    /** 出现过的最大队列长度 */
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    public ZkEventDispatcher(Watcher delegate, int workers, int queueCapacity) {
+        this.delegate = delegate;
+        this.lanes = new Lane[workers];
+        for (int i = 0; i < workers; i++) {
+            this.lanes[i] = new Lane("zk-event-" + i, queueCapacity);
+        }
+        this.stateLane = new Lane("zk-event-state", queueCapacity);
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+        if (null == event) {
+            return;
+        }
+        Lane lane = null == event.getPath() ? this.stateLane : this.lanes[index(event.getPath())];
+        this.dispatched.increment();
+        if (!lane.queue.offer(event)) {
+            this.blocked.increment();
+            try {
+                lane.queue.put(event);
+            } catch (InterruptedException e) {
+                log.info("事件分发被中断，丢弃事件：{}", event);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        long depth = lane.queue.size();
+        long max = this.maxDepth.get();
+        while (depth > max && !this.maxDepth.compareAndSet(max, depth)) {
+            max = this.maxDepth.get();
+        }
+    }
+
+    int index(String path) {
+        int h = path.hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % this.lanes.length;
+    }
+
+    /**
+     * 当前所有队列中等待处理的事件数
+     *
+     * @return 事件数
+     */
+    public int getQueued() {
+        int queued = this.stateLane.queue.size();
+        for (Lane lane : this.lanes) {
+            queued += lane.queue.size();
+        }
+        return queued;
+    }
+
+    public long getDispatched() {
+        return dispatched.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getBlocked() {
+        return blocked.sum();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public void close() {
+        this.stateLane.stop();
+        for (Lane lane : this.lanes) {
+            lane.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZkEventDispatcher[queued=%d, dispatched=%d, completed=%d, failed=%d, blocked=%d, maxDepth=%d]",
+                getQueued(), getDispatched(), getCompleted(), getFailed(), getBlocked(), getMaxDepth());
+    }
+
+    /**
+     * 单线程工作队列
+     */
+    private final class Lane implements Runnable {
+
+        private final BlockingQueue<WatchedEvent> queue;
+
+        private final Thread thread;
+
+        Lane(String name, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                WatchedEvent event;
+                try {
+                    event = this.queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (POISON == event) {
+                    return;
+                }
+                try {
+                    delegate.process(event);
+                    completed.increment();
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    log.info("处理事件{}失败：{}", event, e.getMessage());
+                }
+            }
+        }
+
+        void stop() {
+            // 处理完已入队的事件后退出
+            if (!this.queue.offer(POISON)) {
+                this.thread.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 线性一致读：先 sync 再 getData，并发调用方共用 sync
+ * <p>
+ * sync 使本会话所连的服务端追上 leader，之后在同一会话上的读取能看到 sync 发出前其他客户端已完成的写入。
+ * 一个 sync 在途时到达的调用方不能复用它（它可能早于调用方看到的写入），而是合并到下一个 sync，
+ * 在途的 sync 返回后立即发出。因此同时最多一个 sync 在途、一个在排队，sync 次数随时间窗口数增长，
+ * 与调用方数量无关。服务端的 sync 不区分路径，不同路径的读取同样共用。
+ * 回调在 ZK 事件线程中执行，不能在其中调用阻塞的 {@link #read(String)}。
+ *
+ * @author orjrs
+ * @create 2020-11-01 10:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkLinearizableReader {
+
+    /** sync 的路径，服务端不区分路径 */
+    private static final String SYNC_PATH = "/";
+
+    /** 当前会话 */
+    private final Supplier<ZooKeeper> zk;
+
+    /** 排队中的 sync，受 this 锁保护 */
+    private SyncRound pending;
+
+    /** 是否有 sync 在途，受 this 锁保护 */
+    private boolean inFlight;
+
+    /** 调用次数 */
+    private final LongAdder callers = new LongAdder();
+
+    /** 发出的 sync 次数 */
+    private final LongAdder syncs = new LongAdder();
+
+    public ZkLinearizableReader(ZooKeeper zk) {
+        this.zk = () -> zk;
+    }
+
+    /**
+     * 会话过期重建后使用新会话
+     *
+     * @param manager 连接管理
+     */
+    public ZkLinearizableReader(ZkConnectionManager manager) {
+        this.zk = manager::getZooKeeper;
+    }
+
+    /**
+     * 线性一致地读取节点数据
+     *
+     * @param path 路径
+     * @return 节点数据
+     * @throws KeeperException      节点不存在、sync 失败等
+     * @throws InterruptedException 中断
+     */
+    public byte[] read(String path) throws KeeperException, InterruptedException {
+        try {
+            return readAsync(path).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KeeperException) {
+                throw (KeeperException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 线性一致地异步读取节点数据
+     *
+     * @param path 路径
+     * @return 节点数据，失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<byte[]> readAsync(String path) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        SyncRound round = join();
+        round.future.whenComplete((zk, e) -> {
+            if (null != e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            // 在 sync 所在的会话上读取
+            long start = ZkMetrics.get().start();
+            zk.getData(path, false, (rc, p, ctx, data, stat) -> {
+                ZkMetrics.get().record(ZkMetrics.GET_DATA, p, start, rc);
+                if (KeeperException.Code.OK.intValue() == rc) {
+                    future.complete(data);
+                } else {
+                    future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+                }
+            }, null);
+        });
+        return future;
+    }
+
+    /**
+     * 等待一个在调用之后发出的 sync 完成
+     *
+     * @return sync 所在的会话，之后在该会话上的读取是线性一致的；失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<ZooKeeper> sync() {
+        return join().future;
+    }
+
+    public long getCallers() {
+        return callers.sum();
+    }
+
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZkLinearizableReader[callers=%d, syncs=%d]", getCallers(), getSyncs());
+    }
+
+    /**
+     * 加入排队中的 sync，没有 sync 在途时立即发出
+     */
+    private SyncRound join() {
+        this.callers.increment();
+        SyncRound round;
+        boolean send = false;
+        synchronized (this) {
+            if (null == this.pending) {
+                this.pending = new SyncRound();
+            }
+            round = this.pending;
+            if (!this.inFlight) {
+                this.inFlight = true;
+                this.pending = null;
+                send = true;
+            }
+        }
+        if (send) {
+            send(round);
+        }
+        return round;
+    }
+
+    private void send(SyncRound round) {
+        ZooKeeper zk = this.zk.get();
+        if (null == zk) {
+            finish(round, null, new KeeperException.ConnectionLossException());
+            return;
+        }
+        this.syncs.increment();
+        long start = ZkMetrics.get().start();
+        zk.sync(SYNC_PATH, (rc, path, ctx) -> {
+            ZkMetrics.get().record(ZkMetrics.SYNC, path, start, rc);
+            if (KeeperException.Code.OK.intValue() == rc) {
+                finish(round, zk, null);
+            } else {
+                finish(round, null, KeeperException.create(KeeperException.Code.get(rc), path));
+            }
+        }, null);
+    }
+
+    /**
+     * 结束一轮 sync，再发出期间排队的下一轮
+     */
+    private void finish(SyncRound round, ZooKeeper zk, KeeperException error) {
+        // 先让本轮调用方发出读取，同一会话上排在下一个 sync 之后的读取要等它完成
+        if (null == error) {
+            round.future.complete(zk);
+        } else {
+            round.future.completeExceptionally(error);
+        }
+        SyncRound next;
+        synchronized (this) {
+            next = this.pending;
+            this.pending = null;
+            this.inFlight = null != next;
+        }
+        if (null != next) {
+            send(next);
+        }
+    }
+
+    /**
+     * 共用同一个 sync 的一批调用方
+     */
+    private static final class SyncRound {
+
+        /** sync 完成时以所在会话完成 */
+        private final CompletableFuture<ZooKeeper> future = new CompletableFuture<>();
+    }
+}
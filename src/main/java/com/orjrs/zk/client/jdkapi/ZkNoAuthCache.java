@@ -0,0 +1,109 @@
+package com.orjrs.zk.client.jdkapi;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无权限结果缓存：按（密钥，路径，权限）记录 NoAuth，有效期内同样的请求不再发往服务端
+ * <p>
+ * 读、写、删除检查的权限不同（删除检查的是父节点的 DELETE 权限），因此按权限分别记录。
+ * 有效期应较短，ACL 或密钥变更后最多在有效期结束时恢复访问。
+ *
+ * @author orjrs
+ * @create 2020-10-18 16:20
+ * @since 1.0.0
+ */
+public class ZkNoAuthCache {
+
+    /** 有效期（纳秒） */
+    private final long ttlNanos;
+
+    /** 最大记录数 */
+    private final int maxEntries;
+
+    /** 密钥 + 权限 + 路径 -> 过期时间（System.nanoTime） */
+    private final Map<String, Long> entries = new ConcurrentHashMap<>();
+
+    /** 命中次数 */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param ttlMillis  有效期（毫秒）
+     * @param maxEntries 最大记录数
+     */
+    public ZkNoAuthCache(long ttlMillis, int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 是否在有效期内被拒绝过
+     *
+     * @param credential 密钥
+     * @param path       路径
+     * @param perm       权限，见 {@link org.apache.zookeeper.ZooDefs.Perms}
+     * @return 是否无权限
+     */
+    public boolean isDenied(String credential, String path, int perm) {
+        String key = key(credential, path, perm);
+        Long expiresAt = this.entries.get(key);
+        if (null == expiresAt) {
+            return false;
+        }
+        if (System.nanoTime() - expiresAt < 0) {
+            this.hits.increment();
+            return true;
+        }
+        this.entries.remove(key, expiresAt);
+        return false;
+    }
+
+    /**
+     * 记录无权限
+     *
+     * @param credential 密钥
+     * @param path       路径
+     * @param perm       权限，见 {@link org.apache.zookeeper.ZooDefs.Perms}
+     */
+    public void deny(String credential, String path, int perm) {
+        if (this.entries.size() >= this.maxEntries) {
+            purge();
+        }
+        this.entries.put(key(credential, path, perm), System.nanoTime() + this.ttlNanos);
+    }
+
+    /**
+     * 清除某个路径上的记录，例如修改 ACL 之后
+     *
+     * @param path 路径
+     */
+    public void invalidate(String path) {
+        String suffix = "\u0000" + path;
+        this.entries.keySet().removeIf(key -> key.endsWith(suffix));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 删除过期记录，仍然超过上限时全部清除
+     */
+    private void purge() {
+        long now = System.nanoTime();
+        this.entries.values().removeIf(expiresAt -> now - expiresAt >= 0);
+        if (this.entries.size() >= this.maxEntries) {
+            this.entries.clear();
+        }
+    }
+
+    private static String key(String credential, String path, int perm) {
+        return credential + "\u0000" + perm + "\u0000" + path;
+    }
+}
@@ -0,0 +1,328 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于监听失效的本地读缓存
+ * <p>
+ * 未命中时读取服务端并以本缓存作为 Watcher 注册监听：NodeDataChanged/NodeDeleted/NodeCreated
+ * 使对应路径失效（或异步刷新），Disconnected/Expired 时全部失效。
+ * <p>
+ * 命中时不加锁：只读 ConcurrentHashMap 并置位访问标记（已置位时不写）。容量超过上限时按 CLOCK 近似 LRU 淘汰：
+ * 指针在表上循环，访问标记已置位的清除后跳过，未置位的淘汰；同一时刻只有一个线程淘汰，其他写入不等待。
+ * 未命中时先放入该路径的加载标记再读取服务端，读取完成后只在标记仍在时替换为结果；
+ * 读取期间该路径失效（或全部失效）会移除标记，过期的结果不会写入，其他路径的失效不影响。
+ * 返回的 byte[] 与 Stat 为缓存中的同一对象，调用方不能修改。
+ *
+ * @author orjrs
+ * @create 2020-07-25 11:05
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkReadCache implements Watcher {
+
+    /** zk 会话 */
+    private final ZooKeeper zk;
+
+    /** 数据变更时是否异步刷新，否则只失效 */
+    private final boolean refreshOnChange;
+
+    /** 缓存，加载中的路径为加载标记 */
+    private final Map<String, CachedNode> cache = new ConcurrentHashMap<>();
+
+    /** 容量 */
+    private final int maxSize;
+
+    /** 淘汰锁 */
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    /** CLOCK 指针，受 evictLock 保护 */
+    private Iterator<Map.Entry<String, CachedNode>> hand;
+
+    /** 命中次数 */
+    private final LongAdder hits = new LongAdder();
+
+    /** 未命中次数 */
+    private final LongAdder misses = new LongAdder();
+
+    /** 淘汰次数 */
+    private final LongAdder evictions = new LongAdder();
+
+    /** 失效次数 */
+    private final LongAdder invalidations = new LongAdder();
+
+    public ZkReadCache(ZooKeeper zk, int maxSize) {
+        this(zk, maxSize, false);
+    }
+
+    public ZkReadCache(ZooKeeper zk, int maxSize, boolean refreshOnChange) {
+        this.zk = zk;
+        this.refreshOnChange = refreshOnChange;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 读取节点数据
+     *
+     * @param path 路径
+     * @return 节点数据
+     * @throws KeeperException      节点不存在等
+     * @throws InterruptedException 中断
+     */
+    public byte[] getData(String path) throws KeeperException, InterruptedException {
+        CachedNode node = get(path);
+        if (null != node && node.hasData) {
+            hits.increment();
+            return node.data;
+        }
+        misses.increment();
+        CachedNode token = loading(path);
+        Stat stat = new Stat();
+        byte[] data = ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> this.zk.getData(path, this, stat));
+        put(path, token, new CachedNode(data, stat, true));
+        return data;
+    }
+
+    /**
+     * 读取节点状态，节点不存在时返回 null（同样会被缓存直到 NodeCreated）
+     *
+     * @param path 路径
+     * @return 节点状态
+     * @throws KeeperException      连接异常等
+     * @throws InterruptedException 中断
+     */
+    public Stat exists(String path) throws KeeperException, InterruptedException {
+        CachedNode node = get(path);
+        if (null != node) {
+            hits.increment();
+            return node.stat;
+        }
+        misses.increment();
+        CachedNode token = loading(path);
+        Stat stat = ZkLimiter.get().call(ZkMetrics.EXISTS, path, () -> this.zk.exists(path, this));
+        put(path, token, new CachedNode(null, stat, false));
+        return stat;
+    }
+
+    /**
+     * 使路径失效
+     *
+     * @param path 路径
+     */
+    public void invalidate(String path) {
+        CachedNode removed = this.cache.remove(path);
+        if (null != removed && !removed.loading) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 全部失效
+     */
+    public void clear() {
+        // 逐个移除，与并发的加载和淘汰互不影响
+        for (Iterator<CachedNode> it = this.cache.values().iterator(); it.hasNext(); ) {
+            CachedNode removed = it.next();
+            it.remove();
+            if (!removed.loading) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+        String path = event.getPath();
+        switch (event.getType()) {
+            case NodeDataChanged:
+                invalidate(path);
+                if (this.refreshOnChange) {
+                    refresh(path);
+                }
+                break;
+            case NodeCreated:
+            case NodeDeleted:
+                invalidate(path);
+                break;
+            case None:
+                if (Event.KeeperState.Disconnected == event.getState() || Event.KeeperState.Expired == event.getState()) {
+                    log.info("连接状态{}，读缓存全部失效", event.getState());
+                    clear();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 异步重新读取并重新注册监听
+     */
+    private void refresh(String path) {
+        CachedNode token = loading(path);
+        long start = ZkMetrics.get().start();
+        this.zk.getData(path, this, (rc, p, ctx, data, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.GET_DATA, p, start, rc);
+            if (KeeperException.Code.OK.intValue() == rc) {
+                put(p, token, new CachedNode(data, stat, true));
+            } else {
+                this.cache.remove(p, token);
+            }
+        }, null);
+    }
+
+    /**
+     * 命中时返回缓存的节点，不加锁
+     */
+    private CachedNode get(String path) {
+        CachedNode node = this.cache.get(path);
+        if (null == node || node.loading) {
+            return null;
+        }
+        if (!node.referenced) {
+            // 已置位时不写，避免热点路径上多核争用同一缓存行
+            node.referenced = true;
+        }
+        return node;
+    }
+
+    /**
+     * 读取服务端之前放入加载标记，已有其他线程在加载时使用其标记
+     */
+    private CachedNode loading(String path) {
+        CachedNode token = new CachedNode();
+        while (true) {
+            CachedNode current = this.cache.putIfAbsent(path, token);
+            if (null == current) {
+                evictIfFull();
+                return token;
+            }
+            // 已有结果（并发加载刚完成）时替换不会成功，本次结果不写入
+            if (current.loading || current.hasData) {
+                return current;
+            }
+            // exists 缓存的只有状态，换成加载标记，读到的数据才能写入
+            if (this.cache.replace(path, current, token)) {
+                return token;
+            }
+        }
+    }
+
+    /**
+     * 标记仍在（读取期间该路径未失效）时写入结果
+     */
+    private void put(String path, CachedNode token, CachedNode node) {
+        if (token.loading) {
+            this.cache.replace(path, token, node);
+        }
+    }
+
+    /**
+     * 超过容量时按 CLOCK 淘汰，已有线程在淘汰时直接返回
+     */
+    private void evictIfFull() {
+        if (this.cache.size() <= this.maxSize || !this.evictLock.tryLock()) {
+            return;
+        }
+        try {
+            // 访问标记最多清除约两圈，之后不再跳过，避免热点读取使淘汰无法结束
+            int skips = 2 * this.maxSize;
+            while (this.cache.size() > this.maxSize) {
+                if (null == this.hand || !this.hand.hasNext()) {
+                    this.hand = this.cache.entrySet().iterator();
+                    if (!this.hand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, CachedNode> entry = this.hand.next();
+                CachedNode node = entry.getValue();
+                if (node.referenced && skips-- > 0) {
+                    node.referenced = false;
+                    continue;
+                }
+                if (this.cache.remove(entry.getKey(), node) && !node.loading) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            this.evictLock.unlock();
+        }
+    }
+
+    public int size() {
+        return this.cache.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZkReadCache[size=%d, hits=%d, misses=%d, evictions=%d, invalidations=%d]",
+                size(), getHits(), getMisses(), getEvictions(), getInvalidations());
+    }
+
+    /**
+     * 缓存的节点
+     */
+    private static class CachedNode {
+
+        /** 数据 */
+        private final byte[] data;
+
+        /** 状态，节点不存在时为空 */
+        private final Stat stat;
+
+        /** 是否包含数据（exists 只缓存状态） */
+        private final boolean hasData;
+
+        /** 是否为加载标记，每次加载一个新实例，按对象比较 */
+        private final boolean loading;
+
+        /** CLOCK 访问标记，新加入视为刚访问 */
+        private volatile boolean referenced = true;
+
+        /**
+         * 加载标记
+         */
+        CachedNode() {
+            this.data = null;
+            this.stat = null;
+            this.hasData = false;
+            this.loading = true;
+        }
+
+        CachedNode(byte[] data, Stat stat, boolean hasData) {
+            this.data = data;
+            this.stat = stat;
+            this.hasData = hasData;
+            this.loading = false;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.orjrs.zk.client.jdkapi;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 (scheme, credential) 复用的授权会话池
+ * <p>
+ * 同一授权信息共用一个已连接（SyncConnected）的会话；超过空闲时间或超过最大数量时
+ * 关闭最久未使用且当前没有在用的会话，会话过期时自动移出。
+ *
+ * @author orjrs
+ * @create 2020-08-01 14:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkSessionPool implements AutoCloseable {
+
+    /** ZK服务端地址 */
+    private final String connectString;
+
+    /** ZK会话超时时间，同时作为等待连接的超时时间 */
+    private final int sessionTimeout;
+
+    /** 最大会话数 */
+    private final int maxSize;
+
+    /** 空闲超时时间（毫秒） */
+    private final long idleMillis;
+
+    /** 会话 */
+    private final Map<Key, PooledSession> sessions = new ConcurrentHashMap<>();
+
+    /** 空闲清理 */
+    private final ScheduledExecutorService cleaner;
+
+    public ZkSessionPool(String connectString, int sessionTimeout, int maxSize, long idleMillis) {
+        this.connectString = connectString;
+        this.sessionTimeout = sessionTimeout;
+        this.maxSize = maxSize;
+        this.idleMillis = idleMillis;
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "zk-session-pool-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleMillis / 2, 100L);
+        this.cleaner.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 使用指定授权信息的会话执行操作
+     *
+     * @param scheme     授权类型
+     * @param credential 授权信息
+     * @param callback   操作
+     * @param <T>        返回类型
+     * @return 操作结果
+     * @throws KeeperException      连接超时（ConnectionLoss）或操作失败
+     * @throws InterruptedException 中断
+     */
+    public <T> T withSession(String scheme, String credential, SessionCallback<T> callback)
+            throws KeeperException, InterruptedException {
+        PooledSession session = acquire(new Key(scheme, credential));
+        try {
+            return callback.call(session.zk);
+        } finally {
+            session.release();
+        }
+    }
+
+    /**
+     * 当前会话数
+     *
+     * @return 会话数
+     */
+    public int size() {
+        return this.sessions.size();
+    }
+
+    @Override
+    public void close() {
+        this.cleaner.shutdownNow();
+        for (PooledSession session : this.sessions.values()) {
+            session.close();
+        }
+        this.sessions.clear();
+    }
+
+    private PooledSession acquire(Key key) throws KeeperException, InterruptedException {
+        while (true) {
+            PooledSession session = this.sessions.computeIfAbsent(key, this::open);
+            if (!session.retain()) {
+                // 刚被淘汰，重新获取
+                this.sessions.remove(key, session);
+                continue;
+            }
+            if (this.sessions.size() > this.maxSize) {
+                evictEldest();
+            }
+            if (!session.connected.await(this.sessionTimeout, TimeUnit.MILLISECONDS)) {
+                session.release();
+                if (session.evict()) {
+                    this.sessions.remove(key, session);
+                }
+                throw new KeeperException.ConnectionLossException();
+            }
+            return session;
+        }
+    }
+
+    private PooledSession open(Key key) {
+        SessionWatcher watcher = new SessionWatcher(key);
+        ZooKeeper zk;
+        try {
+            zk = new ZooKeeper(this.connectString, this.sessionTimeout, watcher);
+        } catch (IOException e) {
+            throw new IllegalStateException("创建ZK会话失败：" + e.getMessage(), e);
+        }
+        zk.addAuthInfo(key.scheme, key.credential.getBytes(StandardCharsets.UTF_8));
+        PooledSession session = new PooledSession(key, zk, watcher.connected);
+        watcher.session = session;
+        log.info("会话池新建授权会话：scheme={}", key.scheme);
+        return session;
+    }
+
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - this.idleMillis;
+        for (PooledSession session : this.sessions.values()) {
+            if (session.lastUsed < deadline && session.evict()) {
+                this.sessions.remove(session.key, session);
+                log.info("会话池关闭空闲会话：scheme={}", session.key.scheme);
+            }
+        }
+    }
+
+    private void evictEldest() {
+        while (this.sessions.size() > this.maxSize) {
+            PooledSession eldest = null;
+            for (PooledSession session : this.sessions.values()) {
+                if (session.isIdle() && (null == eldest || session.lastUsed < eldest.lastUsed)) {
+                    eldest = session;
+                }
+            }
+            // 都在使用中，暂时允许超出
+            if (null == eldest) {
+                return;
+            }
+            if (eldest.evict()) {
+                this.sessions.remove(eldest.key, eldest);
+                log.info("会话池超出上限，关闭会话：scheme={}", eldest.key.scheme);
+            }
+        }
+    }
+
+    /**
+     * 会话内执行的操作
+     *
+     * @param <T> 返回类型
+     */
+    @FunctionalInterface
+    public interface SessionCallback<T> {
+        T call(ZooKeeper zk) throws KeeperException, InterruptedException;
+    }
+
+    /**
+     * 池中会话的监听，会话连上或被移出会话池
+     */
+    private final class SessionWatcher implements Watcher {
+
+        private final Key key;
+
+        private final CountDownLatch connected = new CountDownLatch(1);
+
+        /** 对应的会话，ZooKeeper 创建后设置，此前只可能收到连接事件 */
+        private volatile PooledSession session;
+
+        SessionWatcher(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public void process(org.apache.zookeeper.WatchedEvent event) {
+            if (Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            } else if (Event.KeeperState.Expired == event.getState() || Event.KeeperState.AuthFailed == event.getState()) {
+                PooledSession pooled = session;
+                if (null == pooled) {
+                    return;
+                }
+                log.info("会话池中的会话状态{}，移出会话池", event.getState());
+                sessions.remove(key, pooled);
+                pooled.close();
+            }
+        }
+    }
+
+    /**
+     * 池中的会话
+     */
+    private static final class PooledSession {
+
+        private final Key key;
+
+        private final ZooKeeper zk;
+
+        private final CountDownLatch connected;
+
+        /** 正在使用的调用数，受 this 锁保护 */
+        private int inUse;
+
+        /** 是否已关闭，受 this 锁保护 */
+        private boolean closed;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledSession(Key key, ZooKeeper zk, CountDownLatch connected) {
+            this.key = key;
+            this.zk = zk;
+            this.connected = connected;
+        }
+
+        synchronized boolean retain() {
+            if (closed) {
+                return false;
+            }
+            inUse++;
+            lastUsed = System.currentTimeMillis();
+            return true;
+        }
+
+        synchronized void release() {
+            inUse--;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        synchronized boolean isIdle() {
+            return 0 == inUse && !closed;
+        }
+
+        /**
+         * 没有在用时关闭
+         */
+        boolean evict() {
+            synchronized (this) {
+                if (inUse > 0 || closed) {
+                    return false;
+                }
+                closed = true;
+            }
+            closeQuietly();
+            return true;
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            closeQuietly();
+        }
+
+        private void closeQuietly() {
+            try {
+                zk.close();
+            } catch (InterruptedException e) {
+                log.info("关闭会话池中的会话，发生 InterruptedException={}", e.getMessage());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 会话池键
+     */
+    private static final class Key {
+
+        private final String scheme;
+
+        private final String credential;
+
+        Key(String scheme, String credential) {
+            this.scheme = scheme;
+            this.credential = credential;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return scheme.equals(other.scheme) && credential.equals(other.credential);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scheme, credential);
+        }
+    }
+}
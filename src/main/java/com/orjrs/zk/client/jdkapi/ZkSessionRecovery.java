@@ -0,0 +1,340 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话过期恢复：记录通过本类创建的临时节点，会话重建后以批量 multi 重新创建
+ * <p>
+ * 会话过期后 {@link ZkConnectionManager} 按退避重建会话并重新添加授权信息，{@link ZkWatchRegistry}
+ * 在新会话上流水线重新注册监听；本类补上临时节点：新会话连上后在后台线程中用 {@link ZkBatch}
+ * 把所有临时节点合并为少数几个 multi 流水线创建，通常一个 RTT 完成。某个节点已被其他会话占用时
+ * 整个 multi 回滚，其余节点改为逐个创建。重放因连接断开未完成时，下次连上再重放。
+ * <p>
+ * 顺序临时节点按第一次创建得到的完整路径以普通临时节点重建，名称保持不变。
+ * 恢复耗时从发现会话过期到临时节点重建完成，包含重建会话的退避和连接时间。
+ *
+ * @author orjrs
+ * @create 2020-10-31 10:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkSessionRecovery implements AutoCloseable {
+
+    /** 连接管理 */
+    private final ZkConnectionManager manager;
+
+    /** 监听复用，可为空 */
+    private final ZkWatchRegistry watches;
+
+    /** 临时节点的 ACL */
+    private final List<ACL> acl;
+
+    /** 临时节点路径 -> 数据 */
+    private final Map<String, byte[]> ephemerals = new ConcurrentHashMap<>();
+
+    /** 重放线程，ZkBatch 等待的回调在 ZK 事件线程中执行，不能在状态监听器中等待 */
+    private final ExecutorService executor;
+
+    /** 状态监听器 */
+    private final ZkConnectionManager.StateListener listener = this::stateChanged;
+
+    /** 已重放临时节点的会话代数 */
+    private volatile long replayedGeneration;
+
+    /** 发现会话过期的时间（System.nanoTime），未在恢复中为 0 */
+    private volatile long expiredAt;
+
+    /** 恢复次数 */
+    private final LongAdder recoveries = new LongAdder();
+
+    /** 重建的临时节点数 */
+    private final LongAdder replayed = new LongAdder();
+
+    /** 已被其他会话占用而未能重建的临时节点数 */
+    private final LongAdder conflicts = new LongAdder();
+
+    /** 最近一次恢复耗时（毫秒） */
+    private volatile long lastRecoveryMillis;
+
+    /** 最近一次重放临时节点耗时（毫秒） */
+    private volatile long lastReplayMillis;
+
+    /** 最长恢复耗时（毫秒） */
+    private final AtomicLong maxRecoveryMillis = new AtomicLong();
+
+    public ZkSessionRecovery(ZkConnectionManager manager) {
+        this(manager, null);
+    }
+
+    /**
+     * @param manager 连接管理
+     * @param watches 监听复用，用于统计恢复后重新注册的监听，可为空
+     */
+    public ZkSessionRecovery(ZkConnectionManager manager, ZkWatchRegistry watches) {
+        this.manager = manager;
+        this.watches = watches;
+        this.acl = ZooDefs.Ids.OPEN_ACL_UNSAFE;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "zk-session-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<ZkConnectionManager.Session> session = manager.getSession();
+        if (session.isDone() && !session.isCompletedExceptionally()) {
+            this.replayedGeneration = session.join().getGeneration();
+        }
+        manager.addStateListener(this.listener);
+    }
+
+    /**
+     * 创建临时节点并记录，会话过期重建后自动重新创建
+     *
+     * @param path 路径
+     * @param data 数据
+     * @param mode EPHEMERAL 或 EPHEMERAL_SEQUENTIAL
+     * @return 实际创建的路径
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public String createEphemeral(String path, byte[] data, CreateMode mode) throws KeeperException, InterruptedException {
+        if (!mode.isEphemeral()) {
+            throw new IllegalArgumentException("不是临时节点：" + mode);
+        }
+        ZooKeeper zk = zk();
+        String created = ZkLimiter.get().call(ZkMetrics.CREATE, path, () -> zk.create(path, data, this.acl, mode));
+        this.ephemerals.put(created, null == data ? new byte[0] : data);
+        return created;
+    }
+
+    /**
+     * 修改临时节点数据，重建时使用新数据
+     *
+     * @param path 路径
+     * @param data 数据
+     * @return 修改后的节点状态
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public Stat setData(String path, byte[] data) throws KeeperException, InterruptedException {
+        ZooKeeper zk = zk();
+        Stat stat = ZkLimiter.get().call(ZkMetrics.SET_DATA, path, () -> zk.setData(path, data, -1));
+        this.ephemerals.replace(path, null == data ? new byte[0] : data);
+        return stat;
+    }
+
+    /**
+     * 删除临时节点并停止记录
+     *
+     * @param path 路径
+     * @throws KeeperException      失败，节点不存在时不抛出
+     * @throws InterruptedException 中断
+     */
+    public void deleteEphemeral(String path) throws KeeperException, InterruptedException {
+        forget(path);
+        ZooKeeper zk = zk();
+        try {
+            ZkLimiter.get().callVoid(ZkMetrics.DELETE, path, () -> zk.delete(path, -1));
+        } catch (KeeperException.NoNodeException e) {
+            // 已被删除
+        }
+    }
+
+    /**
+     * 停止记录，节点已通过其他方式删除时调用
+     *
+     * @param path 路径
+     */
+    public void forget(String path) {
+        this.ephemerals.remove(path);
+    }
+
+    /**
+     * 记录的临时节点数
+     *
+     * @return 节点数
+     */
+    public int getEphemerals() {
+        return this.ephemerals.size();
+    }
+
+    public long getRecoveries() {
+        return recoveries.sum();
+    }
+
+    public long getReplayed() {
+        return replayed.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    public long getLastReplayMillis() {
+        return lastReplayMillis;
+    }
+
+    public long getMaxRecoveryMillis() {
+        return maxRecoveryMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZkSessionRecovery[ephemerals=%d, recoveries=%d, replayed=%d, conflicts=%d, lastRecoveryMillis=%d, maxRecoveryMillis=%d]",
+                getEphemerals(), getRecoveries(), getReplayed(), getConflicts(), getLastRecoveryMillis(), getMaxRecoveryMillis());
+    }
+
+    @Override
+    public void close() {
+        this.manager.removeStateListener(this.listener);
+        this.executor.shutdownNow();
+    }
+
+    private void stateChanged(ZkConnectionManager.State state, ZkConnectionManager.Session session) {
+        if (ZkConnectionManager.State.EXPIRED == state) {
+            if (0L == this.expiredAt) {
+                this.expiredAt = System.nanoTime();
+            }
+            log.info("会话已过期，记录的临时节点{}个，等待新会话后重建", this.ephemerals.size());
+        } else if (ZkConnectionManager.State.CONNECTED == state && session.getGeneration() != this.replayedGeneration) {
+            // 新会话，或上次重放因断开未完成
+            try {
+                this.executor.execute(() -> replay(session));
+            } catch (RejectedExecutionException e) {
+                // 已关闭
+            }
+        }
+    }
+
+    /**
+     * 在新会话上重建全部临时节点
+     */
+    private void replay(ZkConnectionManager.Session session) {
+        if (session.getGeneration() == this.replayedGeneration || session.getZooKeeper() != this.manager.getZooKeeper()) {
+            // 已重放，或会话又已过期
+            return;
+        }
+        long start = System.nanoTime();
+        ZooKeeper zk = session.getZooKeeper();
+        List<String> paths = new ArrayList<>(this.ephemerals.keySet());
+        try {
+            List<String> failed = createAll(zk, paths, false);
+            if (!failed.isEmpty()) {
+                // multi 因个别节点冲突整体回滚，其余逐个创建
+                failed = createAll(zk, failed, true);
+            }
+            if (!failed.isEmpty()) {
+                log.info("{}个临时节点因连接断开未能重建，连上后重试", failed.size());
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        this.replayedGeneration = session.getGeneration();
+        long now = System.nanoTime();
+        this.lastReplayMillis = TimeUnit.NANOSECONDS.toMillis(now - start);
+        long expired = this.expiredAt;
+        this.expiredAt = 0L;
+        if (0L != expired) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(now - expired);
+            this.lastRecoveryMillis = millis;
+            this.maxRecoveryMillis.accumulateAndGet(millis, Math::max);
+            this.recoveries.increment();
+            log.info("会话恢复完成：第{}代会话，重建临时节点{}个，重放{}ms，恢复共{}ms{}", session.getGeneration(),
+                    paths.size(), this.lastReplayMillis, millis, null == this.watches ? "" : "，" + this.watches);
+        }
+    }
+
+    /**
+     * 批量创建，返回需要重试的路径（整体回滚或连接断开）
+     *
+     * @param single 是否逐个创建（每个 multi 一个节点）
+     */
+    private List<String> createAll(ZooKeeper zk, List<String> paths, boolean single) throws InterruptedException {
+        ZkBatch batch = new ZkBatch(zk, this.acl);
+        if (single) {
+            batch.maxBytes(0);
+        }
+        List<String> created = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            byte[] data = this.ephemerals.get(path);
+            if (null != data) {
+                batch.create(path, data, CreateMode.EPHEMERAL);
+                created.add(path);
+            }
+        }
+        List<String> retry = new ArrayList<>();
+        List<ZkBatch.OpOutcome> outcomes = batch.flush();
+        for (int i = 0; i < outcomes.size(); i++) {
+            ZkBatch.OpOutcome outcome = outcomes.get(i);
+            String path = created.get(i);
+            switch (outcome.getCode()) {
+                case OK:
+                    this.replayed.increment();
+                    break;
+                case NODEEXISTS:
+                    if (!ownedBy(zk, path)) {
+                        this.conflicts.increment();
+                        log.info("临时节点{}已被其他会话创建，未能重建", path);
+                    }
+                    break;
+                case NONODE:
+                    // 父节点已被删除，不再记录
+                    this.ephemerals.remove(path);
+                    log.info("临时节点{}的父节点不存在，停止记录", path);
+                    break;
+                case RUNTIMEINCONSISTENCY:
+                case CONNECTIONLOSS:
+                case SESSIONEXPIRED:
+                    retry.add(path);
+                    break;
+                default:
+                    log.info("重建临时节点{}失败：{}", path, outcome.getCode());
+                    break;
+            }
+        }
+        return retry;
+    }
+
+    private boolean ownedBy(ZooKeeper zk, String path) throws InterruptedException {
+        try {
+            Stat stat = ZkLimiter.withLane(ZkLimiter.Lane.SESSION,
+                    () -> ZkLimiter.get().call(ZkMetrics.EXISTS, path, () -> zk.exists(path, false)));
+            return null != stat && stat.getEphemeralOwner() == zk.getSessionId();
+        } catch (KeeperException e) {
+            return false;
+        }
+    }
+
+    private ZooKeeper zk() throws KeeperException {
+        ZooKeeper zk = this.manager.getZooKeeper();
+        if (null == zk) {
+            throw new KeeperException.ConnectionLossException();
+        }
+        return zk;
+    }
+}
@@ -0,0 +1,376 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多会话客户端：打开 N 个会话，按路径一致性哈希路由请求
+ * <p>
+ * 单个 ZooKeeper 句柄的所有请求共用一个连接和一个事件线程，吞吐受限于此；
+ * 按路径分到多个会话后，同一路径总是落在同一会话，保持该路径上的请求顺序，不同路径并行。
+ * ZK 只保证同一会话内的顺序（先收到监听事件再读到新数据），临时节点也随会话消失，
+ * 因此临时节点和带监听的读取固定走指定的会话（默认第 0 个）。创建过临时节点或注册过监听的路径
+ * 记为固定路径，之后该路径上的所有请求（包括修改、删除和不带监听的读取）都走固定会话，不再哈希。
+ * 删除成功（或节点已不存在）后取消固定；固定会话过期时顺序临时节点随之消失，其路径也取消固定，
+ * 锁、队列这类不断创建顺序节点的用法不会让固定路径无限增长。
+ * 路径第一次固定时先在固定会话上 sync，使之前经其他会话完成的写入对带监听的读取可见。
+ * 不同路径之间不保证顺序：经其他会话写入子节点后，固定会话上带监听的 getChildren 可能稍后才看到。
+ *
+ * @author orjrs
+ * @create 2020-10-03 10:20
+ * @since 1.0.0
+ */
+public class ZkShardedClient implements AutoCloseable {
+
+    /** 每个会话在哈希环上的虚拟节点数 */
+    private static final int VIRTUAL_NODES = 160;
+
+    /** 会话 */
+    private final ZkConnectionManager[] managers;
+
+    /** 哈希环：位置 -> 会话下标 */
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    /** 节点 ACL */
+    private final List<ACL> acl = ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+    /** 临时节点和监听使用的会话下标 */
+    private volatile int pinned;
+
+    /** 固定路径：创建过临时节点或注册过监听，所有请求走固定会话 */
+    private final Set<String> pinnedPaths = ConcurrentHashMap.newKeySet();
+
+    /** 固定会话上创建的顺序临时节点 -> 所属会话 ID，会话过期时取消固定 */
+    private final Map<String, Long> sequentialPaths = new ConcurrentHashMap<>();
+
+    public ZkShardedClient(String connectString, int sessionTimeout, int sessions) {
+        this(connectString, sessionTimeout, sessions, null);
+    }
+
+    /**
+     * @param connectString  连接串，可带 chroot
+     * @param sessionTimeout ZK会话超时时间
+     * @param sessions       会话数
+     * @param watcher        所有会话的默认 Watcher，可为空
+     */
+    public ZkShardedClient(String connectString, int sessionTimeout, int sessions, Watcher watcher) {
+        this.managers = new ZkConnectionManager[sessions];
+        for (int i = 0; i < sessions; i++) {
+            this.managers[i] = new ZkConnectionManager(connectString, sessionTimeout, watcher);
+            int index = i;
+            this.managers[i].addStateListener((state, session) -> {
+                if (ZkConnectionManager.State.EXPIRED == state && index == this.pinned) {
+                    unpinSequential(session.getSessionId());
+                }
+            });
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                this.ring.put(hash("session-" + i + "#" + v), i);
+            }
+        }
+    }
+
+    /**
+     * 建立所有会话
+     *
+     * @param timeout 期限
+     * @param unit    期限单位
+     * @return 全部连上时完成，任一会话超过期限以 ConnectionLoss 结束
+     */
+    public CompletableFuture<Void> connect(long timeout, TimeUnit unit) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[this.managers.length];
+        for (int i = 0; i < this.managers.length; i++) {
+            futures[i] = this.managers[i].connect(timeout, unit);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * 添加授权信息到所有会话
+     *
+     * @param scheme 授权类型
+     * @param auth   授权信息
+     */
+    public void addAuthInfo(String scheme, byte[] auth) {
+        for (ZkConnectionManager manager : this.managers) {
+            manager.addAuthInfo(scheme, auth);
+        }
+    }
+
+    /**
+     * 指定临时节点和监听使用的会话，需在固定任何路径之前调用
+     *
+     * @param index 会话下标
+     */
+    public void setPinned(int index) {
+        if (index < 0 || index >= this.managers.length) {
+            throw new IllegalArgumentException("会话下标超出范围：" + index);
+        }
+        if (!this.pinnedPaths.isEmpty() && index != this.pinned) {
+            throw new IllegalStateException("已有路径固定在会话" + this.pinned);
+        }
+        this.pinned = index;
+    }
+
+    public int getSessions() {
+        return this.managers.length;
+    }
+
+    /**
+     * 路径所在的会话下标，固定路径为固定会话
+     *
+     * @param path 路径
+     * @return 会话下标
+     */
+    public int shardOf(String path) {
+        return this.pinnedPaths.contains(path) ? this.pinned : hashOf(path);
+    }
+
+    /**
+     * 路径所在会话的 ZooKeeper
+     *
+     * @param path 路径
+     * @return ZooKeeper
+     */
+    public ZooKeeper forPath(String path) {
+        return zk(shardOf(path));
+    }
+
+    /**
+     * 是否为固定路径
+     *
+     * @param path 路径
+     * @return 是否固定
+     */
+    public boolean isPinned(String path) {
+        return this.pinnedPaths.contains(path);
+    }
+
+    /**
+     * 临时节点和监听使用的会话的 ZooKeeper
+     *
+     * @return ZooKeeper
+     */
+    public ZooKeeper pinned() {
+        return zk(this.pinned);
+    }
+
+    public String create(String path, byte[] data, CreateMode mode) throws KeeperException, InterruptedException {
+        if (!mode.isEphemeral()) {
+            ZooKeeper zk = forPath(path);
+            return ZkLimiter.get().call(ZkMetrics.CREATE, path, () -> zk.create(path, data, this.acl, mode));
+        }
+        // 写入经 leader 线性化，创建前无需 sync
+        ZooKeeper zk = pinned();
+        if (!mode.isSequential()) {
+            this.pinnedPaths.add(path);
+        }
+        String created = ZkLimiter.get().call(ZkMetrics.CREATE, path, () -> zk.create(path, data, this.acl, mode));
+        if (mode.isSequential()) {
+            this.sequentialPaths.put(created, zk.getSessionId());
+        }
+        this.pinnedPaths.add(created);
+        return created;
+    }
+
+    public byte[] getData(String path, Stat stat) throws KeeperException, InterruptedException {
+        ZooKeeper zk = forPath(path);
+        return ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> zk.getData(path, false, stat));
+    }
+
+    /**
+     * 读取并注册监听，走固定会话
+     */
+    public byte[] getData(String path, Watcher watcher, Stat stat) throws KeeperException, InterruptedException {
+        ZooKeeper zk = pin(path);
+        return ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> zk.getData(path, watcher, stat));
+    }
+
+    public Stat setData(String path, byte[] data, int version) throws KeeperException, InterruptedException {
+        ZooKeeper zk = forPath(path);
+        return ZkLimiter.get().call(ZkMetrics.SET_DATA, path, () -> zk.setData(path, data, version));
+    }
+
+    /**
+     * 删除节点，成功或节点已不存在时取消固定
+     */
+    public void delete(String path, int version) throws KeeperException, InterruptedException {
+        ZooKeeper zk = forPath(path);
+        try {
+            ZkLimiter.get().callVoid(ZkMetrics.DELETE, path, () -> zk.delete(path, version));
+        } catch (KeeperException.NoNodeException e) {
+            unpin(path);
+            throw e;
+        }
+        unpin(path);
+    }
+
+    public Stat exists(String path) throws KeeperException, InterruptedException {
+        ZooKeeper zk = forPath(path);
+        return ZkLimiter.get().call(ZkMetrics.EXISTS, path, () -> zk.exists(path, false));
+    }
+
+    /**
+     * 判断是否存在并注册监听，走固定会话
+     */
+    public Stat exists(String path, Watcher watcher) throws KeeperException, InterruptedException {
+        ZooKeeper zk = pin(path);
+        return ZkLimiter.get().call(ZkMetrics.EXISTS, path, () -> zk.exists(path, watcher));
+    }
+
+    public List<String> getChildren(String path) throws KeeperException, InterruptedException {
+        ZooKeeper zk = forPath(path);
+        return ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, path, () -> zk.getChildren(path, false));
+    }
+
+    /**
+     * 读取子节点并注册监听，走固定会话
+     */
+    public List<String> getChildren(String path, Watcher watcher) throws KeeperException, InterruptedException {
+        ZooKeeper zk = pin(path);
+        return ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, path, () -> zk.getChildren(path, watcher));
+    }
+
+    /**
+     * 异步读取节点数据
+     *
+     * @param path 路径
+     * @return 节点数据，失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<byte[]> getDataAsync(String path) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        long start = ZkMetrics.get().start();
+        forPath(path).getData(path, false, (rc, p, ctx, data, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.GET_DATA, p, start, rc);
+            if (KeeperException.Code.OK.intValue() == rc) {
+                future.complete(data);
+            } else {
+                future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * 异步修改节点数据
+     *
+     * @param path    路径
+     * @param data    数据
+     * @param version 版本，-1 表示不检查
+     * @return 修改后的节点状态，失败时以 {@link KeeperException} 异常结束
+     */
+    public CompletableFuture<Stat> setDataAsync(String path, byte[] data, int version) {
+        CompletableFuture<Stat> future = new CompletableFuture<>();
+        long start = ZkMetrics.get().start();
+        forPath(path).setData(path, data, version, (rc, p, ctx, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.SET_DATA, p, start, rc);
+            if (KeeperException.Code.OK.intValue() == rc) {
+                future.complete(stat);
+            } else {
+                future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+            }
+        }, null);
+        return future;
+    }
+
+    @Override
+    public void close() {
+        for (ZkConnectionManager manager : this.managers) {
+            manager.close();
+        }
+    }
+
+    /**
+     * 固定路径，第一次固定且原先哈希到其他会话时先在固定会话上 sync
+     */
+    private ZooKeeper pin(String path) throws KeeperException, InterruptedException {
+        ZooKeeper zk = pinned();
+        if (this.pinnedPaths.add(path) && hashOf(path) != this.pinned) {
+            CompletableFuture<Integer> synced = new CompletableFuture<>();
+            long start = ZkMetrics.get().start();
+            zk.sync(path, (rc, p, ctx) -> {
+                ZkMetrics.get().record(ZkMetrics.SYNC, p, start, rc);
+                synced.complete(rc);
+            }, null);
+            int rc;
+            try {
+                rc = synced.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                if (!synced.isDone()) {
+                    // 中断，下次重新 sync
+                    this.pinnedPaths.remove(path);
+                }
+            }
+            if (KeeperException.Code.OK.intValue() != rc) {
+                this.pinnedPaths.remove(path);
+                throw KeeperException.create(KeeperException.Code.get(rc), path);
+            }
+        }
+        return zk;
+    }
+
+    private void unpin(String path) {
+        this.sequentialPaths.remove(path);
+        this.pinnedPaths.remove(path);
+    }
+
+    /**
+     * 固定会话过期，该会话的顺序临时节点已随会话删除，在 ZK 事件线程中调用
+     */
+    private void unpinSequential(long sessionId) {
+        this.sequentialPaths.entrySet().removeIf(entry -> {
+            if (sessionId != entry.getValue()) {
+                return false;
+            }
+            this.pinnedPaths.remove(entry.getKey());
+            return true;
+        });
+    }
+
+    private int hashOf(String path) {
+        Map.Entry<Long, Integer> entry = this.ring.ceilingEntry(hash(path));
+        return null == entry ? this.ring.firstEntry().getValue() : entry.getValue();
+    }
+
+    private ZooKeeper zk(int index) {
+        ZooKeeper zk = this.managers[index].getZooKeeper();
+        if (null == zk) {
+            throw new IllegalStateException("ZK连接尚未创建");
+        }
+        return zk;
+    }
+
+    /**
+     * 64 位 FNV-1a，再做一次 murmur3 的 fmix64 使分布均匀
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
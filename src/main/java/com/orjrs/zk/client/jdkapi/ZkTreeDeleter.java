@@ -0,0 +1,273 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 并行递归删除子树
+ * <p>
+ * 先以有界窗口流水线发送异步 getChildren 遍历整棵子树，再按深度从深到浅，
+ * 每层切分成多个 multi 批量删除并流水线提交。删除期间被并发修改时在本地重试：
+ * 已被删除（NoNode）的节点直接跳过，新增了子节点（NotEmpty）的节点重新遍历其子树后再删除。
+ *
+ * @author orjrs
+ * @create 2020-09-12 10:15
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkTreeDeleter {
+
+    /** 默认最大在途请求数 */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    /** 默认每个 multi 的删除数 */
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** 单个节点并发修改时的最大重试次数 */
+    private static final int MAX_ROUNDS = 10;
+
+    /** 重试退避基数（毫秒） */
+    private static final long RETRY_BACKOFF_MILLIS = 5L;
+
+    /** 最大重试退避（毫秒） */
+    private static final long MAX_BACKOFF_MILLIS = 1000L;
+
+    /** ZK 保留节点 */
+    private static final String ZOOKEEPER_PATH = "/zookeeper";
+
+    /** 遍历结束标记 */
+    private static final Item DONE = new Item(null, -1);
+
+    /** zk 会话 */
+    private final ZooKeeper zk;
+
+    /** 最大在途请求数 */
+    private final int maxInFlight;
+
+    /** 每个 multi 的删除数 */
+    private final int batchSize;
+
+    public ZkTreeDeleter(ZooKeeper zk) {
+        this(zk, DEFAULT_MAX_IN_FLIGHT, DEFAULT_BATCH_SIZE);
+    }
+
+    public ZkTreeDeleter(ZooKeeper zk, int maxInFlight, int batchSize) {
+        this.zk = zk;
+        this.maxInFlight = maxInFlight;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 删除节点及其所有子孙节点，节点不存在时直接返回；路径为 / 时删除除 /zookeeper 外的所有节点
+     *
+     * @param path 路径
+     * @return 删除的节点数
+     * @throws KeeperException      出现除 NoNode/NotEmpty 以外的错误，或并发修改超过重试次数
+     * @throws InterruptedException 中断
+     */
+    public int deleteRecursive(String path) throws KeeperException, InterruptedException {
+        long start = System.currentTimeMillis();
+        List<List<String>> levels = walk(path);
+        int deleted = 0;
+        for (int depth = levels.size() - 1; depth >= 0; depth--) {
+            deleted += deleteLevel(levels.get(depth), 0);
+        }
+        log.info("递归删除{}完成：{}个节点，耗时{}ms", path, deleted, System.currentTimeMillis() - start);
+        return deleted;
+    }
+
+    /**
+     * 遍历子树，按深度分组返回
+     */
+    private List<List<String>> walk(String root) throws KeeperException, InterruptedException {
+        BlockingQueue<Item> queue = new LinkedBlockingQueue<>();
+        ConcurrentLinkedQueue<Item> found = new ConcurrentLinkedQueue<>();
+        Semaphore window = new Semaphore(this.maxInFlight);
+        AtomicInteger outstanding = new AtomicInteger(1);
+        AtomicReference<KeeperException> error = new AtomicReference<>();
+        queue.add(new Item(root, 0));
+        while (true) {
+            Item item = queue.take();
+            if (DONE == item) {
+                break;
+            }
+            window.acquire();
+            long start = ZkMetrics.get().start();
+            this.zk.getChildren(item.path, false, (rc, p, ctx, children) -> {
+                ZkMetrics.get().record(ZkMetrics.GET_CHILDREN, p, start, rc);
+                KeeperException.Code code = KeeperException.Code.get(rc);
+                if (KeeperException.Code.OK == code) {
+                    found.add(item);
+                    String prefix = "/".equals(p) ? p : p + "/";
+                    for (String child : children) {
+                        String childPath = prefix + child;
+                        if (ZOOKEEPER_PATH.equals(childPath)) {
+                            continue;
+                        }
+                        outstanding.incrementAndGet();
+                        queue.add(new Item(childPath, item.depth + 1));
+                    }
+                } else if (KeeperException.Code.NONODE != code) {
+                    error.compareAndSet(null, KeeperException.create(code, p));
+                }
+                window.release();
+                if (0 == outstanding.decrementAndGet()) {
+                    queue.add(DONE);
+                }
+            }, null);
+        }
+        if (null != error.get()) {
+            throw error.get();
+        }
+        List<List<String>> levels = new ArrayList<>();
+        for (Item item : found) {
+            // 根节点为 / 时不删除
+            if ("/".equals(item.path)) {
+                continue;
+            }
+            while (levels.size() <= item.depth) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(item.depth).add(item.path);
+        }
+        return levels;
+    }
+
+    /**
+     * 删除同一深度的节点，节点之间没有父子关系，各个 multi 可以并行提交
+     */
+    private int deleteLevel(List<String> paths, int round) throws KeeperException, InterruptedException {
+        int deleted = 0;
+        List<String> remaining = paths;
+        // 每轮每个失败的 multi 至少确定一个失败节点，按节点限制 NotEmpty 次数即可保证结束
+        Map<String, Integer> conflicts = new HashMap<>();
+        while (!remaining.isEmpty()) {
+            List<List<String>> chunks = new ArrayList<>();
+            for (int i = 0; i < remaining.size(); i += this.batchSize) {
+                chunks.add(remaining.subList(i, Math.min(i + this.batchSize, remaining.size())));
+            }
+            Semaphore window = new Semaphore(Math.max(this.maxInFlight / this.batchSize, 1));
+            CountDownLatch latch = new CountDownLatch(chunks.size());
+            List<ChunkResult> results = new ArrayList<>(chunks.size());
+            for (List<String> chunk : chunks) {
+                List<Op> ops = new ArrayList<>(chunk.size());
+                for (String path : chunk) {
+                    ops.add(Op.delete(path, -1));
+                }
+                ChunkResult result = new ChunkResult(chunk);
+                results.add(result);
+                window.acquire();
+                long start = ZkMetrics.get().start();
+                this.zk.multi(ops, (rc, p, ctx, opResults) -> {
+                    ZkMetrics.get().record(ZkMetrics.MULTI, null, start, rc);
+                    result.rc = rc;
+                    result.opResults = opResults;
+                    window.release();
+                    latch.countDown();
+                }, null);
+            }
+            latch.await();
+
+            List<String> retry = new ArrayList<>();
+            for (ChunkResult result : results) {
+                if (KeeperException.Code.OK.intValue() == result.rc) {
+                    deleted += result.paths.size();
+                    continue;
+                }
+                if (null == result.opResults) {
+                    throw KeeperException.create(KeeperException.Code.get(result.rc));
+                }
+                // multi 整体回滚，找出失败的操作，其余的下一轮重试
+                for (int i = 0; i < result.paths.size(); i++) {
+                    String path = result.paths.get(i);
+                    OpResult opResult = i < result.opResults.size() ? result.opResults.get(i) : null;
+                    int err = opResult instanceof OpResult.ErrorResult ? ((OpResult.ErrorResult) opResult).getErr() : 0;
+                    KeeperException.Code code = KeeperException.Code.get(err);
+                    if (KeeperException.Code.OK == code || KeeperException.Code.RUNTIMEINCONSISTENCY == code) {
+                        retry.add(path);
+                    } else if (KeeperException.Code.NONODE == code) {
+                        log.info("节点{}已被删除，跳过", path);
+                    } else if (KeeperException.Code.NOTEMPTY == code) {
+                        int conflict = conflicts.merge(path, 1, Integer::sum);
+                        if (conflict > MAX_ROUNDS) {
+                            throw KeeperException.create(code, path);
+                        }
+                        if (conflict > 1) {
+                            // 仍在被并发写入，退避后重试
+                            Thread.sleep(Math.min(RETRY_BACKOFF_MILLIS << conflict, MAX_BACKOFF_MILLIS));
+                        }
+                        log.info("节点{}新增了子节点，重新遍历", path);
+                        deleted += deleteChildren(path, round + 1);
+                        retry.add(path);
+                    } else {
+                        throw KeeperException.create(code, path);
+                    }
+                }
+            }
+            remaining = retry;
+        }
+        return deleted;
+    }
+
+    /**
+     * 删除节点的所有子孙节点，保留节点本身
+     */
+    private int deleteChildren(String path, int round) throws KeeperException, InterruptedException {
+        if (round >= MAX_ROUNDS) {
+            throw new KeeperException.NotEmptyException(path);
+        }
+        List<List<String>> levels = walk(path);
+        int deleted = 0;
+        for (int depth = levels.size() - 1; depth >= 1; depth--) {
+            deleted += deleteLevel(levels.get(depth), round);
+        }
+        return deleted;
+    }
+
+    /**
+     * 遍历到的节点
+     */
+    private static final class Item {
+
+        private final String path;
+
+        private final int depth;
+
+        Item(String path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * 一个 multi 的结果，在 ZK 事件线程写入，latch 之后读取
+     */
+    private static final class ChunkResult {
+
+        private final List<String> paths;
+
+        private int rc;
+
+        private List<OpResult> opResults;
+
+        ChunkResult(List<String> paths) {
+            this.paths = paths;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 子树的本地内存镜像
+ * <p>
+ * {@link #start()} 以有界窗口流水线发送异步 getData/getChildren 并行加载整棵子树，
+ * 之后通过数据监听和子节点监听增量更新，并通知监听器节点的新增、修改、删除。
+ * 所有更新都在 ZK 事件线程中执行（单写），节点保存在不可变的 {@link PersistentHashMap} 中，
+ * 每次修改只复制到该路径的一条分支，其余部分与旧版本共享，单次更新的代价与树的大小无关；
+ * 每个回调的全部修改完成后通过 volatile 引用整体发布，读取无锁，{@link #getSnapshot()} 直接返回该 Map，是同一时刻的完整视图；
+ * 返回的 byte[] 与 Stat 为镜像中的同一对象，调用方不能修改。监听器在 ZK 事件线程中回调，不能阻塞。
+ * 会话过期后监听全部丢失，镜像失效，读取抛出 IllegalStateException，需在新会话上重新创建镜像。
+ *
+ * @author orjrs
+ * @create 2020-09-19 10:20
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkTreeMirror implements Watcher, AutoCloseable {
+
+    /** 默认最大在途请求数 */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    /** 初始加载的回调上下文 */
+    private static final Object INITIAL = new Object();
+
+    /** 初始加载结束标记 */
+    private static final Object DONE = new Object();
+
+    /** zk 会话 */
+    private final ZooKeeper zk;
+
+    /** 镜像的根路径 */
+    private final String root;
+
+    /** 已发布的路径 -> 节点，不可变 */
+    private volatile PersistentHashMap<String, Node> nodes = PersistentHashMap.empty();
+
+    /** 事件线程中尚未发布的版本，为 null 时与 nodes 相同 */
+    private PersistentHashMap<String, Node> pending;
+
+    /** 事件线程中等待发布后通知的变更 */
+    private final List<Change> changes = new ArrayList<>();
+
+    /** 监听器 */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /** 初始加载待发送的路径 */
+    private final BlockingQueue<Object> loadQueue = new LinkedBlockingQueue<>();
+
+    /** 初始加载未完成的请求数 */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /** 初始加载窗口 */
+    private final Semaphore window;
+
+    /** 初始加载出现的错误 */
+    private final AtomicReference<KeeperException> loadError = new AtomicReference<>();
+
+    /** 数据回调 */
+    private final AsyncCallback.DataCallback dataCallback = this::onData;
+
+    /** 子节点回调 */
+    private final AsyncCallback.Children2Callback childrenCallback = this::onChildren;
+
+    /** 是否已完成初始加载 */
+    private volatile boolean initialized;
+
+    /** 是否已关闭 */
+    private volatile boolean closed;
+
+    /** 会话是否已过期 */
+    private volatile boolean expired;
+
+    public ZkTreeMirror(ZooKeeper zk, String root) {
+        this(zk, root, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public ZkTreeMirror(ZooKeeper zk, String root, int maxInFlight) {
+        this.zk = zk;
+        this.root = root;
+        this.window = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * 加载整棵子树并开始监听，根节点不存在时等待其被创建
+     *
+     * @throws KeeperException      加载出现除 NoNode 以外的错误
+     * @throws InterruptedException 中断
+     */
+    public void start() throws KeeperException, InterruptedException {
+        long start = System.currentTimeMillis();
+        this.outstanding.set(1);
+        this.loadQueue.add(this.root);
+        while (true) {
+            Object path = this.loadQueue.take();
+            if (DONE == path) {
+                break;
+            }
+            // getData 与 getChildren 各占一个窗口
+            this.window.acquire(2);
+            fetch((String) path, INITIAL);
+        }
+        if (null != this.loadError.get()) {
+            throw this.loadError.get();
+        }
+        this.initialized = true;
+        if (!this.nodes.containsKey(this.root)) {
+            watchCreated(this.root);
+        }
+        log.info("子树{}镜像加载完成：{}个节点，耗时{}ms", this.root, this.nodes.size(), System.currentTimeMillis() - start);
+    }
+
+    public void addListener(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * 读取节点
+     *
+     * @param path 路径
+     * @return 节点，不存在时返回 null
+     */
+    public Node getNode(String path) {
+        return nodes().get(path);
+    }
+
+    /**
+     * 读取节点数据
+     *
+     * @param path 路径
+     * @return 节点数据，不存在时返回 null
+     */
+    public byte[] getData(String path) {
+        Node node = nodes().get(path);
+        return null == node ? null : node.data;
+    }
+
+    /**
+     * 读取子节点名称
+     *
+     * @param path 路径
+     * @return 按名称排序的子节点，不存在时返回 null
+     */
+    public List<String> getChildren(String path) {
+        Node node = nodes().get(path);
+        return null == node ? null : node.children;
+    }
+
+    /**
+     * 当前所有节点的快照，不可变，之后的更新不影响已返回的快照
+     *
+     * @return 路径 -> 节点
+     */
+    public Map<String, Node> getSnapshot() {
+        return nodes();
+    }
+
+    public int size() {
+        return nodes().size();
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * 镜像是否仍在更新
+     *
+     * @return 已完成初始加载且会话未过期、未关闭
+     */
+    public boolean isValid() {
+        return this.initialized && !this.expired && !this.closed;
+    }
+
+    /**
+     * 停止更新，3.4 客户端无法移除已注册的监听，之后收到的事件直接忽略
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.nodes = PersistentHashMap.empty();
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+        if (this.closed) {
+            return;
+        }
+        String path = event.getPath();
+        switch (event.getType()) {
+            case NodeDataChanged:
+                getData(path, null);
+                break;
+            case NodeChildrenChanged:
+                getChildren(path, null);
+                break;
+            case NodeCreated:
+                fetch(path, null);
+                break;
+            case NodeDeleted:
+                remove(path);
+                publish();
+                if (this.root.equals(path)) {
+                    watchCreated(path);
+                }
+                break;
+            case None:
+                if (Event.KeeperState.Expired == event.getState()) {
+                    this.expired = true;
+                    log.info("会话过期，子树{}镜像失效", this.root);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void fetch(String path, Object ctx) {
+        getData(path, ctx);
+        getChildren(path, ctx);
+    }
+
+    private void getData(String path, Object ctx) {
+        long start = ZkMetrics.get().start();
+        this.zk.getData(path, this, this.dataCallback, new Call(start, ctx));
+    }
+
+    private void getChildren(String path, Object ctx) {
+        long start = ZkMetrics.get().start();
+        this.zk.getChildren(path, this, this.childrenCallback, new Call(start, ctx, true));
+    }
+
+    private void watchCreated(String path) {
+        long start = ZkMetrics.get().start();
+        this.zk.exists(path, this, (rc, p, ctx, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.EXISTS, p, start, rc);
+            // 监听注册前已被创建
+            if (KeeperException.Code.OK.intValue() == rc && !current().containsKey(p)) {
+                fetch(p, null);
+            }
+        }, null);
+    }
+
+    private void onData(int rc, String path, Object ctx, byte[] data, Stat stat) {
+        Call call = (Call) ctx;
+        ZkMetrics.get().record(ZkMetrics.GET_DATA, path, call.start, rc);
+        KeeperException.Code code = KeeperException.Code.get(rc);
+        if (!this.closed) {
+            if (KeeperException.Code.OK == code) {
+                applyData(path, data, stat);
+            } else if (KeeperException.Code.NONODE == code) {
+                remove(path);
+            } else {
+                failed(call, code, path);
+            }
+        }
+        loaded(call);
+        publish();
+    }
+
+    private void onChildren(int rc, String path, Object ctx, List<String> children, Stat stat) {
+        Call call = (Call) ctx;
+        ZkMetrics.get().record(ZkMetrics.GET_CHILDREN, path, call.start, rc);
+        KeeperException.Code code = KeeperException.Code.get(rc);
+        if (!this.closed) {
+            if (KeeperException.Code.OK == code) {
+                applyChildren(path, children, call.ctx);
+            } else if (KeeperException.Code.NONODE == code) {
+                remove(path);
+            } else {
+                failed(call, code, path);
+            }
+        }
+        loaded(call);
+        publish();
+    }
+
+    private void applyData(String path, byte[] data, Stat stat) {
+        Node old = current().get(path);
+        if (null == old) {
+            Node node = new Node(path, data, stat, Collections.emptyList());
+            store(path, node);
+            notify(EventType.ADDED, node);
+        } else if (stat.getMzxid() > old.stat.getMzxid()) {
+            Node node = new Node(path, data, stat, old.children);
+            store(path, node);
+            notify(EventType.UPDATED, node);
+        }
+    }
+
+    private void applyChildren(String path, List<String> children, Object ctx) {
+        Node old = current().get(path);
+        if (null == old) {
+            // getData 已返回 NoNode，节点已被删除
+            return;
+        }
+        Collections.sort(children);
+        store(path, new Node(path, old.data, old.stat, Collections.unmodifiableList(children)));
+        String prefix = "/".equals(path) ? path : path + "/";
+        Set<String> current = new HashSet<>(children);
+        for (String child : old.children) {
+            if (!current.contains(child)) {
+                removeTree(prefix + child);
+            }
+        }
+        Set<String> previous = new HashSet<>(old.children);
+        for (String child : children) {
+            if (previous.contains(child) || current().containsKey(prefix + child)) {
+                continue;
+            }
+            if (INITIAL == ctx) {
+                this.outstanding.incrementAndGet();
+                this.loadQueue.add(prefix + child);
+            } else {
+                fetch(prefix + child, null);
+            }
+        }
+    }
+
+    /**
+     * 删除节点，同时从父节点的子节点列表中移除，不必等父节点的 NodeChildrenChanged
+     */
+    private void remove(String path) {
+        if (null == current().get(path)) {
+            return;
+        }
+        int index = path.lastIndexOf('/');
+        String parentPath = 0 == index ? "/" : path.substring(0, index);
+        Node parent = current().get(parentPath);
+        if (null != parent && !this.root.equals(path)) {
+            List<String> children = new ArrayList<>(parent.children);
+            if (children.remove(path.substring(index + 1))) {
+                store(parentPath, new Node(parentPath, parent.data, parent.stat, Collections.unmodifiableList(children)));
+            }
+        }
+        removeTree(path);
+    }
+
+    private void removeTree(String path) {
+        Node node = current().get(path);
+        if (null == node) {
+            return;
+        }
+        this.pending = current().minus(path);
+        String prefix = "/".equals(path) ? path : path + "/";
+        for (String child : node.children) {
+            removeTree(prefix + child);
+        }
+        notify(EventType.REMOVED, node);
+    }
+
+    private void failed(Call call, KeeperException.Code code, String path) {
+        if (INITIAL == call.ctx) {
+            this.loadError.compareAndSet(null, KeeperException.create(code, path));
+        } else {
+            log.info("更新镜像节点{}失败：{}", path, code);
+        }
+    }
+
+    /**
+     * 初始加载的一个请求完成，getData 与 getChildren 都完成后该节点加载完成
+     */
+    private void loaded(Call call) {
+        if (INITIAL != call.ctx) {
+            return;
+        }
+        this.window.release();
+        if (call.second && 0 == this.outstanding.decrementAndGet()) {
+            publish();
+            this.loadQueue.add(DONE);
+        }
+    }
+
+    private Map<String, Node> nodes() {
+        if (this.expired) {
+            throw new IllegalStateException("会话已过期，子树" + this.root + "镜像已失效");
+        }
+        return this.nodes;
+    }
+
+    /**
+     * 事件线程中读取最新的节点，包括尚未发布的修改
+     */
+    private PersistentHashMap<String, Node> current() {
+        return null == this.pending ? this.nodes : this.pending;
+    }
+
+    /**
+     * 事件线程中修改节点，只复制持久化映射中到该路径的一条分支，与树的大小无关
+     */
+    private void store(String path, Node node) {
+        this.pending = current().plus(path, node);
+    }
+
+    /**
+     * 发布事件线程中的修改，初始加载期间只在全部完成时发布一次
+     */
+    private void publish() {
+        if (null == this.pending || 0 < this.outstanding.get()) {
+            return;
+        }
+        if (!this.closed) {
+            this.nodes = this.pending;
+        }
+        this.pending = null;
+        // 发布后再通知，监听器读取镜像时能看到本次变更
+        for (Change change : this.changes) {
+            fire(change.type, change.node);
+        }
+        this.changes.clear();
+    }
+
+    private void notify(EventType type, Node node) {
+        if (this.initialized) {
+            this.changes.add(new Change(type, node));
+        }
+    }
+
+    private void fire(EventType type, Node node) {
+        for (Listener listener : this.listeners) {
+            try {
+                listener.onEvent(type, node);
+            } catch (RuntimeException e) {
+                log.info("镜像监听器处理{} {}失败：{}", type, node.path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 镜像变更类型
+     */
+    public enum EventType {
+        ADDED, UPDATED, REMOVED
+    }
+
+    /**
+     * 镜像变更监听器
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onEvent(EventType type, Node node);
+    }
+
+    /**
+     * 一次异步请求
+     */
+    private static final class Call {
+
+        private final long start;
+
+        private final Object ctx;
+
+        /** 同一节点的第二个请求（getChildren），响应按顺序返回，此时两个请求都已完成 */
+        private final boolean second;
+
+        Call(long start, Object ctx) {
+            this(start, ctx, false);
+        }
+
+        Call(long start, Object ctx, boolean second) {
+            this.start = start;
+            this.ctx = ctx;
+            this.second = second;
+        }
+    }
+
+    /**
+     * 一次待通知的变更
+     */
+    private static final class Change {
+
+        private final EventType type;
+
+        private final Node node;
+
+        Change(EventType type, Node node) {
+            this.type = type;
+            this.node = node;
+        }
+    }
+
+    /**
+     * 镜像中的节点，不可变
+     */
+    public static final class Node {
+
+        private final String path;
+
+        private final byte[] data;
+
+        private final Stat stat;
+
+        private final List<String> children;
+
+        Node(String path, byte[] data, Stat stat, List<String> children) {
+            this.path = path;
+            this.data = data;
+            this.stat = stat;
+            this.children = children;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public Stat getStat() {
+            return stat;
+        }
+
+        public List<String> getChildren() {
+            return children;
+        }
+    }
+}
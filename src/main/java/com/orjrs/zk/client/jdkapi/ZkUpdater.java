@@ -0,0 +1,311 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 乐观更新：读取节点数据和版本号，按版本号 setData，版本冲突（BadVersion）时带随机抖动退避后重试
+ * <p>
+ * 同一路径上本地并发的更新合并为一次写入：拿到路径锁的线程取走队列中所有待执行的更新，
+ * 按提交顺序依次作用在读到的数据上，只写入最终结果，每个调用方拿到自己那一步的结果；
+ * 冲突时重新读取并重新执行全部更新函数，因此更新函数不能有副作用。
+ * 返回 null 表示不修改，所有函数都不修改时不写入。
+ * <p>
+ * setData 发出后结果未知时不能重试或放回队列，否则同一更新会被执行两次：写入线程在 setData 发出后不响应中断，
+ * 等到服务端结果后再恢复中断标记。调用方等待时被中断，而更新已被其他线程取走时，同样等待写入完成并正常返回结果，
+ * 中断标记保留，调用方据此可知更新已生效；只有更新尚未被取走时才抛出 InterruptedException，此时未写入。
+ *
+ * @author orjrs
+ * @create 2020-10-18 14:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkUpdater {
+
+    /** 默认最大重试次数 */
+    private static final int DEFAULT_MAX_RETRIES = 10;
+
+    /** 退避基数（毫秒） */
+    private static final long BACKOFF_BASE_MILLIS = 1L;
+
+    /** 最大退避（毫秒） */
+    private static final long BACKOFF_MAX_MILLIS = 100L;
+
+    /** 一次合并的最大更新数 */
+    private static final int MAX_COMBINED = 1024;
+
+    /** 当前会话 */
+    private final Supplier<ZooKeeper> zk;
+
+    /** 路径 -> 待执行的更新 */
+    private final Map<String, PathQueue> queues = new ConcurrentHashMap<>();
+
+    /** 最大重试次数 */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /** 更新调用次数 */
+    private final LongAdder updates = new LongAdder();
+
+    /** 写入次数 */
+    private final LongAdder writes = new LongAdder();
+
+    /** 合并到其他调用的写入中的更新数 */
+    private final LongAdder combined = new LongAdder();
+
+    /** 版本冲突次数 */
+    private final LongAdder conflicts = new LongAdder();
+
+    /** 冲突超过重试次数而失败的写入数 */
+    private final LongAdder exhausted = new LongAdder();
+
+    public ZkUpdater(ZooKeeper zk) {
+        this.zk = () -> zk;
+    }
+
+    /**
+     * 会话过期重建后使用新会话
+     *
+     * @param manager 连接管理
+     */
+    public ZkUpdater(ZkConnectionManager manager) {
+        this.zk = manager::getZooKeeper;
+    }
+
+    /**
+     * 设置最大重试次数
+     *
+     * @param maxRetries 次数
+     * @return this
+     */
+    public ZkUpdater maxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * 读取-修改-按版本号写入
+     *
+     * @param path     路径
+     * @param function 更新函数，参数为当前数据，返回新数据，null 表示不修改；冲突时会被再次调用
+     * @return 本次更新函数的结果，不修改时为当前数据；返回时中断标记已设置表示等待期间被中断，但更新已生效
+     * @throws KeeperException      失败；节点不存在为 NoNode，冲突超过重试次数为 BadVersion
+     * @throws InterruptedException 中断，更新未写入
+     */
+    public byte[] update(String path, Function<byte[], byte[]> function) throws KeeperException, InterruptedException {
+        this.updates.increment();
+        Update update = new Update(function);
+        PathQueue queue = this.queues.computeIfAbsent(path, p -> new PathQueue());
+        queue.pending.add(update);
+        boolean interrupted = false;
+        try {
+            queue.lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            if (queue.pending.remove(update)) {
+                // 尚未被取走，不会写入
+                throw e;
+            }
+            // 已被其他线程取走，等待其写入完成后返回结果
+            interrupted = true;
+            queue.lock.lock();
+        }
+        try {
+            // 队列超过一次合并的上限时可能要执行多批
+            while (!update.done) {
+                run(path, queue, update);
+            }
+        } finally {
+            queue.lock.unlock();
+            // 空闲的路径不再保留；并发时可能多建一个队列，只影响合并，不影响正确性
+            if (queue.pending.isEmpty() && !queue.lock.hasQueuedThreads()) {
+                this.queues.remove(path, queue);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (update.error instanceof KeeperException) {
+            throw (KeeperException) update.error;
+        }
+        if (null != update.error) {
+            throw (RuntimeException) update.error;
+        }
+        return update.result;
+    }
+
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getCombined() {
+        return combined.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * 取走待执行的更新合并写入，调用方持有路径锁
+     */
+    private void run(String path, PathQueue queue, Update own) throws InterruptedException {
+        List<Update> batch = new ArrayList<>();
+        Update next;
+        while (batch.size() < MAX_COMBINED && null != (next = queue.pending.poll())) {
+            batch.add(next);
+        }
+        try {
+            write(path, batch);
+        } catch (KeeperException e) {
+            for (Update update : batch) {
+                if (null == update.error) {
+                    update.error = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            // 中断只发生在读取和退避时，本批尚未写入；只有当前线程被中断，其他更新放回队列由各自的线程执行
+            for (Update update : batch) {
+                if (update != own) {
+                    update.result = null;
+                    update.error = null;
+                    queue.pending.add(update);
+                }
+            }
+            throw e;
+        }
+        this.combined.add(batch.size() - 1);
+        for (Update update : batch) {
+            update.done = true;
+        }
+    }
+
+    private void write(String path, List<Update> batch) throws KeeperException, InterruptedException {
+        ZooKeeper zk = this.zk.get();
+        if (null == zk) {
+            throw new KeeperException.ConnectionLossException();
+        }
+        for (int attempt = 0; ; attempt++) {
+            Stat stat = new Stat();
+            byte[] data = ZkLimiter.get().call(ZkMetrics.GET_DATA, path, () -> zk.getData(path, false, stat));
+            boolean changed = false;
+            for (Update update : batch) {
+                if (null != update.error) {
+                    continue;
+                }
+                byte[] result;
+                try {
+                    result = update.function.apply(data);
+                } catch (RuntimeException e) {
+                    // 只影响这一个更新
+                    update.error = e;
+                    continue;
+                }
+                if (null != result) {
+                    data = result;
+                    changed = true;
+                }
+                update.result = data;
+            }
+            if (!changed) {
+                return;
+            }
+            try {
+                setData(zk, path, data, stat.getVersion());
+                this.writes.increment();
+                return;
+            } catch (KeeperException.BadVersionException e) {
+                this.conflicts.increment();
+                if (attempt >= this.maxRetries) {
+                    this.exhausted.increment();
+                    log.info("更新{}冲突{}次，放弃", path, attempt + 1);
+                    throw e;
+                }
+                // 全抖动指数退避
+                long backoff = Math.min(BACKOFF_BASE_MILLIS << Math.min(attempt, 16), BACKOFF_MAX_MILLIS);
+                Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+            }
+        }
+    }
+
+    /**
+     * 发出 setData 后不响应中断，等到服务端结果再恢复中断标记
+     */
+    private static void setData(ZooKeeper zk, String path, byte[] data, int version) throws KeeperException {
+        CountDownLatch latch = new CountDownLatch(1);
+        int[] result = new int[1];
+        long start = ZkMetrics.get().start();
+        zk.setData(path, data, version, (rc, p, ctx, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.SET_DATA, p, start, rc);
+            result[0] = rc;
+            latch.countDown();
+        }, null);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (KeeperException.Code.OK.intValue() != result[0]) {
+            throw KeeperException.create(KeeperException.Code.get(result[0]), path);
+        }
+    }
+
+    /**
+     * 一个路径上的待执行更新
+     */
+    private static final class PathQueue {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Queue<Update> pending = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * 一次更新，结果由执行写入的线程填入，调用方拿到路径锁后读取
+     */
+    private static final class Update {
+
+        private final Function<byte[], byte[]> function;
+
+        private byte[] result;
+
+        /** KeeperException 或更新函数抛出的 RuntimeException */
+        private Exception error;
+
+        private boolean done;
+
+        Update(Function<byte[], byte[]> function) {
+            this.function = function;
+        }
+    }
+}
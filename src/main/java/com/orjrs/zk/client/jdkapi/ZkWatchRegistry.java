@@ -0,0 +1,487 @@
+package com.orjrs.zk.client.jdkapi;
+
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 监听复用：每个（路径，类型）只向服务端注册一个监听，事件在本地分发给任意多个监听器
+ * <p>
+ * 各组件各自注册监听时，每个组件在事件触发后都要再发一次请求重新注册，组件各自持有会话时服务端的监听表
+ * 和通知也成倍增加。注册表把同一（路径，类型）的监听器挂在一个服务端监听上，触发后由注册表重新注册一次
+ * （异步，不阻塞 ZK 事件线程），再依次回调所有监听器；会话过期重建后在新会话上重新注册全部监听。
+ * 路径按层级存放在前缀树中，公共前缀只保存一份，最后一个监听器移除时回收树节点。
+ * <p>
+ * 3.4 版本的服务端不能移除监听，监听器全部移除后，服务端监听在下次触发时失效，不再重新注册。
+ * 监听器在 ZK 事件线程中回调，不能阻塞，耗时的处理可交给 {@link ZkEventDispatcher}。
+ *
+ * @author orjrs
+ * @create 2020-10-24 10:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkWatchRegistry {
+
+    /** 树节点的估算大小（对象头、字段、子节点表） */
+    private static final int NODE_BYTES = 96;
+
+    /** 服务端监听的估算大小（对象头、字段、监听器列表） */
+    private static final int ENTRY_BYTES = 80;
+
+    /** 每个监听器引用的估算大小 */
+    private static final int LISTENER_BYTES = 8;
+
+    /** 连接管理 */
+    private final ZkConnectionManager manager;
+
+    /** 前缀树的根，所有结构修改持有该锁 */
+    private final Node root = new Node(null, "");
+
+    /** 树节点数（含根） */
+    private int nodes = 1;
+
+    /** 服务端监听数 */
+    private int entries;
+
+    /** 监听器数 */
+    private int listeners;
+
+    /** 路径各层名称的字符数 */
+    private long segmentChars;
+
+    /** 已注册监听的会话 */
+    private volatile ZkConnectionManager.Session armedSession;
+
+    /** 收到的服务端事件数 */
+    private final LongAdder events = new LongAdder();
+
+    /** 回调监听器次数 */
+    private final LongAdder deliveries = new LongAdder();
+
+    /** 向服务端注册监听的次数 */
+    private final LongAdder arms = new LongAdder();
+
+    /** 注册失败次数 */
+    private final LongAdder armFailures = new LongAdder();
+
+    /** 监听器抛出异常的次数 */
+    private final LongAdder listenerFailures = new LongAdder();
+
+    public ZkWatchRegistry(ZkConnectionManager manager) {
+        this.manager = manager;
+        CompletableFuture<ZkConnectionManager.Session> session = manager.getSession();
+        if (session.isDone() && !session.isCompletedExceptionally()) {
+            this.armedSession = session.join();
+        }
+        this.manager.addStateListener(this::stateChanged);
+    }
+
+    /**
+     * 添加监听器，（路径，类型）上第一个监听器添加时向服务端注册监听
+     *
+     * @param path     路径
+     * @param type     监听类型
+     * @param listener 监听器，收到节点事件和连接状态事件
+     * @return 注册，关闭时移除监听器
+     */
+    public Registration watch(String path, WatchType type, Watcher listener) {
+        if (null == path || !path.startsWith("/")) {
+            throw new IllegalArgumentException("路径必须以 / 开头：" + path);
+        }
+        Entry entry;
+        boolean created = false;
+        synchronized (this.root) {
+            Node node = this.root;
+            int start = 1;
+            while (start < path.length()) {
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = path.length();
+                }
+                node = child(node, path.substring(start, end));
+                start = end + 1;
+            }
+            entry = node.entries[type.ordinal()];
+            if (null == entry) {
+                entry = new Entry(node, type);
+                node.entries[type.ordinal()] = entry;
+                this.entries++;
+                created = true;
+            }
+            entry.listeners.add(listener);
+            this.listeners++;
+        }
+        if (created) {
+            arm(entry);
+        }
+        return new Registration(entry, listener);
+    }
+
+    /**
+     * （路径，类型）上的监听器数
+     *
+     * @param path 路径
+     * @param type 监听类型
+     * @return 监听器数
+     */
+    public int getListenerCount(String path, WatchType type) {
+        synchronized (this.root) {
+            Node node = find(path);
+            Entry entry = null == node ? null : node.entries[type.ordinal()];
+            return null == entry ? 0 : entry.listeners.size();
+        }
+    }
+
+    /**
+     * 服务端监听数，即有监听器的（路径，类型）数
+     *
+     * @return 监听数
+     */
+    public int getServerWatches() {
+        synchronized (this.root) {
+            return this.entries;
+        }
+    }
+
+    public int getListeners() {
+        synchronized (this.root) {
+            return this.listeners;
+        }
+    }
+
+    public int getTrieNodes() {
+        synchronized (this.root) {
+            return this.nodes;
+        }
+    }
+
+    /**
+     * 注册表占用内存的估算值，不含监听器对象本身
+     *
+     * @return 字节数
+     */
+    public long getEstimatedBytes() {
+        synchronized (this.root) {
+            return (long) this.nodes * NODE_BYTES + this.segmentChars * 2 + (long) this.entries * ENTRY_BYTES
+                    + (long) this.listeners * LISTENER_BYTES;
+        }
+    }
+
+    public long getEvents() {
+        return events.sum();
+    }
+
+    public long getDeliveries() {
+        return deliveries.sum();
+    }
+
+    public long getArms() {
+        return arms.sum();
+    }
+
+    public long getArmFailures() {
+        return armFailures.sum();
+    }
+
+    public long getListenerFailures() {
+        return listenerFailures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZkWatchRegistry[serverWatches=%d, listeners=%d, trieNodes=%d, estimatedBytes=%d, events=%d, deliveries=%d, arms=%d]",
+                getServerWatches(), getListeners(), getTrieNodes(), getEstimatedBytes(), getEvents(), getDeliveries(), getArms());
+    }
+
+    /**
+     * 查找或创建子节点，调用方持有 root 锁
+     */
+    private Node child(Node parent, String segment) {
+        if (null == parent.children) {
+            parent.children = new HashMap<>(4);
+        }
+        Node node = parent.children.get(segment);
+        if (null == node) {
+            node = new Node(parent, segment);
+            parent.children.put(segment, node);
+            this.nodes++;
+            this.segmentChars += segment.length();
+        }
+        return node;
+    }
+
+    /**
+     * 查找节点，调用方持有 root 锁
+     */
+    private Node find(String path) {
+        Node node = this.root;
+        int start = 1;
+        while (null != node && start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = null == node.children ? null : node.children.get(path.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private void remove(Entry entry, Watcher listener) {
+        synchronized (this.root) {
+            if (!entry.listeners.remove(listener)) {
+                return;
+            }
+            this.listeners--;
+            if (!entry.listeners.isEmpty()) {
+                return;
+            }
+            entry.removed = true;
+            entry.node.entries[entry.type.ordinal()] = null;
+            this.entries--;
+            // 回收没有监听和子节点的树节点
+            Node node = entry.node;
+            while (node != this.root && node.isEmpty()) {
+                node.parent.children.remove(node.segment);
+                if (node.parent.children.isEmpty()) {
+                    node.parent.children = null;
+                }
+                this.nodes--;
+                this.segmentChars -= node.segment.length();
+                node = node.parent;
+            }
+        }
+    }
+
+    /**
+     * 异步向服务端注册监听，不阻塞调用线程
+     */
+    private void arm(Entry entry) {
+        if (entry.removed) {
+            return;
+        }
+        ZooKeeper zk = this.manager.getZooKeeper();
+        if (null == zk) {
+            // 会话重建中，连上后重新注册
+            entry.armed = false;
+            return;
+        }
+        entry.armed = true;
+        String path = entry.node.path();
+        if (WatchType.CHILDREN == entry.type) {
+            this.arms.increment();
+            long start = ZkMetrics.get().start();
+            zk.getChildren(path, entry, (rc, p, ctx, children) -> {
+                ZkMetrics.get().record(ZkMetrics.GET_CHILDREN, p, start, rc);
+                if (KeeperException.Code.NONODE.intValue() == rc) {
+                    // 节点不存在时等待创建，NodeCreated 后再注册子节点监听
+                    armExists(zk, entry, p);
+                } else {
+                    armed(entry, p, rc);
+                }
+            }, null);
+        } else {
+            armExists(zk, entry, path);
+        }
+    }
+
+    private void armExists(ZooKeeper zk, Entry entry, String path) {
+        this.arms.increment();
+        long start = ZkMetrics.get().start();
+        zk.exists(path, entry, (rc, p, ctx, stat) -> {
+            ZkMetrics.get().record(ZkMetrics.EXISTS, p, start, rc);
+            if (WatchType.CHILDREN == entry.type && KeeperException.Code.OK.intValue() == rc) {
+                // 期间节点已被创建，改为注册子节点监听
+                arm(entry);
+                return;
+            }
+            // 节点不存在时 exists 同样注册了监听
+            armed(entry, p, KeeperException.Code.NONODE.intValue() == rc ? KeeperException.Code.OK.intValue() : rc);
+        }, null);
+    }
+
+    private void armed(Entry entry, String path, int rc) {
+        if (KeeperException.Code.OK.intValue() != rc) {
+            // 连上后重新注册
+            entry.armed = false;
+            this.armFailures.increment();
+            log.info("注册{}的{}监听失败：{}", path, entry.type, KeeperException.Code.get(rc));
+        }
+    }
+
+    /**
+     * 连上时注册尚未注册成功的监听，新会话上重新注册全部监听
+     */
+    private void stateChanged(ZkConnectionManager.State state, ZkConnectionManager.Session session) {
+        if (ZkConnectionManager.State.CONNECTED != state || null == session) {
+            return;
+        }
+        boolean newSession = session != this.armedSession;
+        this.armedSession = session;
+        List<Entry> toArm = new ArrayList<>();
+        synchronized (this.root) {
+            collect(this.root, toArm, newSession);
+        }
+        if (!toArm.isEmpty()) {
+            log.info("{}注册{}个监听", newSession ? "新会话上重新" : "连上后", toArm.size());
+        }
+        for (Entry entry : toArm) {
+            arm(entry);
+        }
+    }
+
+    private static void collect(Node node, List<Entry> toArm, boolean all) {
+        for (Entry entry : node.entries) {
+            if (null != entry && (all || !entry.armed)) {
+                toArm.add(entry);
+            }
+        }
+        if (null != node.children) {
+            for (Node child : node.children.values()) {
+                collect(child, toArm, all);
+            }
+        }
+    }
+
+    /**
+     * 监听类型，对应服务端的两张监听表
+     */
+    public enum WatchType {
+        /** 节点创建、删除、数据变更，以 exists 注册 */
+        DATA,
+        /** 子节点变更和节点删除，以 getChildren 注册 */
+        CHILDREN
+    }
+
+    /**
+     * 一个监听器的注册
+     */
+    public final class Registration implements AutoCloseable {
+
+        private final Entry entry;
+
+        private final Watcher listener;
+
+        Registration(Entry entry, Watcher listener) {
+            this.entry = entry;
+            this.listener = listener;
+        }
+
+        /**
+         * 移除监听器
+         */
+        @Override
+        public void close() {
+            remove(this.entry, this.listener);
+        }
+    }
+
+    /**
+     * 前缀树节点，一层路径
+     */
+    private static final class Node {
+
+        private final Node parent;
+
+        private final String segment;
+
+        /** 子节点，没有时为空 */
+        private Map<String, Node> children;
+
+        /** 按 {@link WatchType} 下标存放的服务端监听 */
+        private final Entry[] entries = new Entry[WatchType.values().length];
+
+        Node(Node parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        boolean isEmpty() {
+            if (null != this.children) {
+                return false;
+            }
+            for (Entry entry : this.entries) {
+                if (null != entry) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 由各层名称拼出完整路径，只在注册监听时使用
+         */
+        String path() {
+            if (null == this.parent) {
+                return "/";
+            }
+            StringBuilder builder = new StringBuilder();
+            append(builder);
+            return builder.toString();
+        }
+
+        private void append(StringBuilder builder) {
+            if (null != this.parent) {
+                this.parent.append(builder);
+                builder.append('/').append(this.segment);
+            }
+        }
+    }
+
+    /**
+     * 一个（路径，类型）的服务端监听，作为 Watcher 注册到服务端
+     */
+    private final class Entry implements Watcher {
+
+        private final Node node;
+
+        private final WatchType type;
+
+        /** 监听器，回调时不加锁 */
+        private final List<Watcher> listeners = new CopyOnWriteArrayList<>();
+
+        /** 已发出注册请求且未失败 */
+        private volatile boolean armed;
+
+        /** 监听器已全部移除 */
+        private volatile boolean removed;
+
+        Entry(Node node, WatchType type) {
+            this.node = node;
+            this.type = type;
+        }
+
+        @Override
+        public void process(WatchedEvent event) {
+            if (this.removed) {
+                return;
+            }
+            if (Event.EventType.None != event.getType()) {
+                // 服务端监听已触发，先重新注册再回调，回调期间的变更不会漏掉
+                events.increment();
+                this.armed = false;
+                arm(this);
+            }
+            for (Watcher listener : this.listeners) {
+                deliveries.increment();
+                try {
+                    listener.process(event);
+                } catch (RuntimeException e) {
+                    listenerFailures.increment();
+                    log.info("监听器处理{}失败：{}", event, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.orjrs.zk.client.jdkapi;
 
-import javafx.scene.Parent;
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import com.orjrs.zk.client.serializer.Serializers;
 import lombok.extern.slf4j.Slf4j;
 import org.I0Itec.zkclient.ZkClient;
 import org.apache.zookeeper.*;
@@ -42,6 +44,30 @@ public class ZkWatcher implements Watcher {
     /** zk子节点 */
     private static final String CHILDREN_PATH = "/testZkWatch/children";
 
+    /** 读缓存容量 */
+    private static final int CACHE_SIZE = 10000;
+
+    /** 读缓存 */
+    private ZkReadCache cache = null;
+
+    /** 事件处理线程数 */
+    private static final int EVENT_WORKERS = 4;
+
+    /** 事件队列容量 */
+    private static final int EVENT_QUEUE_CAPACITY = 1024;
+
+    /** 事件分发器，process 在分发器的工作线程中执行 */
+    private ZkEventDispatcher dispatcher = null;
+
+    /** 事件合并窗口（毫秒），0 表示不合并 */
+    private long coalesceWindowMillis = 0L;
+
+    /** 事件合并最大推迟时间（毫秒） */
+    private long coalesceMaxDelayMillis = 0L;
+
+    /** 事件合并 */
+    private ZkEventCoalescer coalescer = null;
+
     @Override
     public void process(WatchedEvent event) {
         log.info("=====进入监听过程......");
@@ -57,6 +83,9 @@ public class ZkWatcher implements Watcher {
         Event.KeeperState state = event.getState();
         // 事件类型
         Event.EventType type = event.getType();
+        if (type == Event.EventType.None) {
+            ZkMetrics.get().recordState(state);
+        }
         if (state == Event.KeeperState.SyncConnected) {
             cdl.countDown();
             log.info("=====成功连接ZK......");
@@ -76,19 +105,39 @@ public class ZkWatcher implements Watcher {
             log.info("=====连接授权失败......");
         } else if (state == Event.KeeperState.Disconnected) {
             log.info("=====断开连接......");
+            clearCache();
         } else if (state == Event.KeeperState.Expired) {
             log.info("=====会话已过期......");
+            clearCache();
         }
     }
 
 
+    /**
+     * 开启事件合并，需在 createSession 之前调用
+     *
+     * @param windowMillis   合并窗口（毫秒）
+     * @param maxDelayMillis 最大推迟时间（毫秒）
+     */
+    public void enableCoalescing(long windowMillis, long maxDelayMillis) {
+        this.coalesceWindowMillis = windowMillis;
+        this.coalesceMaxDelayMillis = maxDelayMillis;
+    }
+
     /**
      * 创建连接
      */
     public void createSession() {
         releaseSession();
         try {
-            zk = new ZooKeeper(SERVER_ADDR, SESSION_TIMEOUT, this);
+            dispatcher = new ZkEventDispatcher(this, EVENT_WORKERS, EVENT_QUEUE_CAPACITY);
+            Watcher watcher = dispatcher;
+            if (coalesceWindowMillis > 0) {
+                coalescer = new ZkEventCoalescer(dispatcher, coalesceWindowMillis, coalesceMaxDelayMillis);
+                watcher = coalescer;
+            }
+            zk = new ZooKeeper(SERVER_ADDR, SESSION_TIMEOUT, watcher);
+            cache = new ZkReadCache(zk, CACHE_SIZE);
             cdl.await();
         } catch (IOException | InterruptedException e) {
             log.info("=========创建连接失败:{}", e.getMessage());
@@ -107,21 +156,35 @@ public class ZkWatcher implements Watcher {
                 log.info("=========关闭连接失败:{}", e.getMessage());
             }
         }
+        if (coalescer != null) {
+            coalescer.close();
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
     }
 
     private void createNode(String path, String data) {
         try {
-            zk.create(path, new String(data).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            ZkLimiter.get().call(ZkMetrics.CREATE, path, () -> zk.create(path, Serializers.UTF8.serialize(data), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
             log.info("创建节点{}={}完成", path, data);
         } catch (KeeperException | InterruptedException e) {
             e.printStackTrace();
         }
     }
 
+    private void clearCache() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 读取节点数据，优先从读缓存获取，节点变更时由监听使缓存失效
+     */
     private String getNode(String path) {
         try {
-            byte[] data = zk.getData(path, true, null);
-            return new String(data);
+            return Serializers.UTF8.deserialize(cache.getData(path));
         } catch (KeeperException | InterruptedException e) {
             e.printStackTrace();
         }
@@ -130,31 +193,31 @@ public class ZkWatcher implements Watcher {
 
     private void deleteNode(String path) {
         try {
-            zk.delete(path, -1);
+            ZkLimiter.get().callVoid(ZkMetrics.DELETE, path, () -> zk.delete(path, -1));
             log.info("删除节点{}完成", path);
         } catch (KeeperException | InterruptedException e) {
             e.printStackTrace();
         }
     }
 
-    private void deleteAllNode() {
+    /**
+     * 递归删除节点及其所有子孙节点
+     *
+     * @param path 路径
+     * @return 删除的节点数，失败时返回 -1
+     */
+    public int deleteRecursive(String path) {
         try {
-            if (zk.exists(CHILDREN_PATH, false) != null) {
-                deleteNode(CHILDREN_PATH);
-            }
-            if (zk.exists(PARENT_PATH, false) != null) {
-                deleteNode(PARENT_PATH);
-            }
-            log.info("删除所有节点完成");
+            return new ZkTreeDeleter(zk).deleteRecursive(path);
         } catch (KeeperException | InterruptedException e) {
             e.printStackTrace();
         }
-
+        return -1;
     }
 
     private Stat exists(String path) {
         try {
-            Stat stat = zk.exists(path, true);
+            Stat stat = ZkLimiter.get().call(ZkMetrics.EXISTS, path, () -> zk.exists(path, true));
             log.info("判断节点是否存在{}={}完成", path, stat.toString());
             return stat;
         } catch (KeeperException | InterruptedException e) {
@@ -165,7 +228,7 @@ public class ZkWatcher implements Watcher {
 
     private Stat setNode(String path, String data) {
         try {
-            Stat stat = zk.setData(path, data.getBytes(), -1);
+            Stat stat = ZkLimiter.get().call(ZkMetrics.SET_DATA, path, () -> zk.setData(path, Serializers.UTF8.serialize(data), -1));
             log.info("修改节点数据{}={}完成", path, data);
             return stat;
         } catch (KeeperException | InterruptedException e) {
@@ -176,7 +239,7 @@ public class ZkWatcher implements Watcher {
 
     public List<String> getChildrenNode(String path) {
         try {
-            List<String> children = zk.getChildren(path, true);
+            List<String> children = ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, path, () -> zk.getChildren(path, true));
             return children;
         } catch (KeeperException | InterruptedException e) {
             e.printStackTrace();
@@ -189,7 +252,7 @@ public class ZkWatcher implements Watcher {
         zkWatcher.createSession();
         Thread.sleep(1000);
         // 删除所有节点
-        zkWatcher.deleteAllNode();
+        zkWatcher.deleteRecursive(PARENT_PATH);
 
         // 创建节点
         zkWatcher.createNode(PARENT_PATH, "I love my wife");
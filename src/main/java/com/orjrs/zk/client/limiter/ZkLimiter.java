@@ -0,0 +1,528 @@
+package com.orjrs.zk.client.limiter;
+
+import com.orjrs.zk.client.metrics.ZkCall;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import com.orjrs.zk.client.metrics.ZkVoidCall;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 客户端自适应并发限制和优先级调度
+ * <p>
+ * 同步调用经 {@link #call} 先取得许可，再经 {@link ZkMetrics#timed} 发往服务端，同时在途的请求数不超过并发上限。
+ * 上限按 AIMD 随观测延迟调整：延迟不超过基准延迟的 tolerance 倍加 slack 且上限被用满时每轮加 1，
+ * 超过或出现连接断开、操作超时时乘以 backoff，在途请求都在上次下调之后发出时才再次下调。
+ * 基准延迟取最近一个采样窗口的最小值，窗口最小值升高时只缓慢跟上，持续过载不会把基准抬高。
+ * <p>
+ * 请求分为三个通道：会话关键（锁释放、临时节点重建等，不排队不丢弃，但计入在途数）、写、批量读。
+ * 许可释放时先唤醒优先级高的通道，新请求在同级或更高级通道有排队时也要排队。
+ * 写和读各有排队容量和最长等待时间，队列已满立即丢弃，等待超时也丢弃，均抛出 {@link ZkOverloadException}
+ * 并计入 {@link ZkMetrics#recordShed}，读通道的容量和等待时间更小，过载时先丢读。
+ * <p>
+ * 默认关闭（-Dorjrs.zk.limiter=true 开启），关闭时 {@link #call} 只多一次 volatile 读。
+ * 异步调用（{@code ZkBatch}、{@code ZkBulkReader} 等）不经过本类，由各自的流水线窗口限制。
+ *
+ * @author orjrs
+ * @create 2020-11-02 10:00
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkLimiter {
+
+    /**
+     * 优先级通道，按优先级从高到低
+     */
+    public enum Lane {
+        /** 会话关键 */
+        SESSION,
+        /** 写 */
+        WRITE,
+        /** 批量读 */
+        READ;
+
+        /**
+         * 按操作名取通道
+         *
+         * @param op {@link ZkMetrics} 中的操作名
+         * @return 通道
+         */
+        public static Lane of(String op) {
+            switch (op) {
+                case ZkMetrics.CREATE:
+                case ZkMetrics.SET_DATA:
+                case ZkMetrics.DELETE:
+                case ZkMetrics.MULTI:
+                    return WRITE;
+                case ZkMetrics.SYNC:
+                    return SESSION;
+                default:
+                    return READ;
+            }
+        }
+    }
+
+    private static final ZkLimiter INSTANCE = new ZkLimiter();
+
+    /** 基准延迟的采样窗口（次） */
+    private static final int RTT_WINDOW = 1000;
+
+    /** 当前线程指定的通道 */
+    private static final ThreadLocal<Lane> LANE = new ThreadLocal<>();
+
+    /** 是否开启 */
+    private volatile boolean enabled = Boolean.getBoolean("orjrs.zk.limiter");
+
+    /** 并发上限的下限 */
+    private volatile int minLimit = 1;
+
+    /** 并发上限的上限 */
+    private volatile int maxLimit = 1000;
+
+    /** 延迟超过基准的倍数时下调 */
+    private volatile double tolerance = 2.0;
+
+    /** 延迟允许超过基准倍数之外的绝对余量（纳秒），避免基准很小时抖动引起下调 */
+    private volatile long slackNanos = TimeUnit.MILLISECONDS.toNanos(2);
+
+    /** 下调系数 */
+    private volatile double backoff = 0.9;
+
+    /** 各通道排队容量 */
+    private final int[] capacities = {0, 1024, 128};
+
+    /** 各通道最长等待（纳秒） */
+    private final long[] maxWaits = {0L, TimeUnit.SECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(100)};
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** 各通道的等待条件 */
+    private final Condition[] ready = new Condition[Lane.values().length];
+
+    /** 各通道排队数，受 lock 保护 */
+    private final int[] waiting = new int[Lane.values().length];
+
+    /** 在途请求数，受 lock 保护 */
+    private int inFlight;
+
+    /** 并发上限，受 lock 保护 */
+    private double limit = 20;
+
+    /** 基准延迟（纳秒），受 lock 保护 */
+    private long minRtt = Long.MAX_VALUE;
+
+    /** 当前窗口的最小延迟（纳秒），受 lock 保护 */
+    private long windowMin = Long.MAX_VALUE;
+
+    /** 当前窗口的采样数，受 lock 保护 */
+    private int windowSamples;
+
+    /** 上次下调的时间（System.nanoTime），受 lock 保护 */
+    private long lastDecrease = System.nanoTime();
+
+    /** 各通道放行数 */
+    private final LongAdder[] admitted = adders();
+
+    /** 各通道排队过的请求数 */
+    private final LongAdder[] queued = adders();
+
+    /** 各通道丢弃数 */
+    private final LongAdder[] shed = adders();
+
+    /** 下调次数 */
+    private final LongAdder decreases = new LongAdder();
+
+    public ZkLimiter() {
+        for (Lane lane : Lane.values()) {
+            this.ready[lane.ordinal()] = this.lock.newCondition();
+        }
+    }
+
+    public static ZkLimiter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 以指定通道执行，期间当前线程经 {@link #call} 的调用都使用该通道
+     *
+     * @param lane 通道
+     * @param call 调用
+     * @param <T>  返回类型
+     * @return 调用结果
+     * @throws KeeperException      调用失败
+     * @throws InterruptedException 中断
+     */
+    public static <T> T withLane(Lane lane, ZkCall<T> call) throws KeeperException, InterruptedException {
+        Lane previous = LANE.get();
+        LANE.set(lane);
+        try {
+            return call.call();
+        } finally {
+            if (null == previous) {
+                LANE.remove();
+            } else {
+                LANE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 取得许可后执行并记录一次同步调用，未开启时直接交给 {@link ZkMetrics#timed}
+     *
+     * @param op   {@link ZkMetrics} 中的操作名
+     * @param path 路径
+     * @param call 调用
+     * @param <T>  返回类型
+     * @return 调用结果
+     * @throws KeeperException      调用失败；限流丢弃时为 {@link ZkOverloadException}
+     * @throws InterruptedException 中断
+     */
+    public <T> T call(String op, String path, ZkCall<T> call) throws KeeperException, InterruptedException {
+        if (!this.enabled) {
+            return ZkMetrics.get().timed(op, path, call);
+        }
+        Permit permit;
+        try {
+            permit = acquire(op);
+        } catch (ZkOverloadException e) {
+            ZkMetrics.get().recordShed(op);
+            throw e;
+        }
+        KeeperException.Code code = null;
+        try {
+            T result = ZkMetrics.get().timed(op, path, call);
+            code = KeeperException.Code.OK;
+            return result;
+        } catch (KeeperException e) {
+            code = e.code();
+            throw e;
+        } finally {
+            permit.release(code);
+        }
+    }
+
+    /**
+     * 取得许可后执行并记录一次无返回值的同步调用
+     *
+     * @param op   {@link ZkMetrics} 中的操作名
+     * @param path 路径
+     * @param call 调用
+     * @throws KeeperException      调用失败；限流丢弃时为 {@link ZkOverloadException}
+     * @throws InterruptedException 中断
+     */
+    public void callVoid(String op, String path, ZkVoidCall call) throws KeeperException, InterruptedException {
+        call(op, path, () -> {
+            call.call();
+            return null;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 设置并发上限
+     *
+     * @param initial 初始值
+     * @param min     下限
+     * @param max     上限
+     */
+    public void setLimit(int initial, int min, int max) {
+        if (min < 1 || initial < min || max < initial) {
+            throw new IllegalArgumentException(String.format("并发上限不合法：%d [%d, %d]", initial, min, max));
+        }
+        this.lock.lock();
+        try {
+            this.minLimit = min;
+            this.maxLimit = max;
+            this.limit = initial;
+            signalNext();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 设置下调条件
+     *
+     * @param tolerance 延迟超过基准的倍数
+     * @param slack     倍数之外的绝对余量
+     * @param unit      余量单位
+     */
+    public void setLatencyTolerance(double tolerance, long slack, TimeUnit unit) {
+        this.tolerance = tolerance;
+        this.slackNanos = unit.toNanos(slack);
+    }
+
+    public void setBackoff(double backoff) {
+        this.backoff = backoff;
+    }
+
+    /**
+     * 设置通道的排队容量和最长等待，会话关键通道不排队
+     *
+     * @param lane     写或读
+     * @param capacity 排队容量，0 表示上限用满时立即丢弃
+     * @param maxWait  最长等待
+     * @param unit     等待单位
+     */
+    public void setQueue(Lane lane, int capacity, long maxWait, TimeUnit unit) {
+        if (Lane.SESSION == lane) {
+            throw new IllegalArgumentException("会话关键通道不排队");
+        }
+        this.lock.lock();
+        try {
+            this.capacities[lane.ordinal()] = capacity;
+            this.maxWaits[lane.ordinal()] = unit.toNanos(maxWait);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 取得许可，当前线程指定了通道时使用指定通道，否则按操作名
+     *
+     * @param op 操作名
+     * @return 许可，调用完成后 {@link Permit#release}
+     * @throws ZkOverloadException  排队已满或等待超时
+     * @throws InterruptedException 等待时中断
+     */
+    public Permit acquire(String op) throws ZkOverloadException, InterruptedException {
+        Lane lane = LANE.get();
+        return acquire(null == lane ? Lane.of(op) : lane);
+    }
+
+    /**
+     * 在指定通道取得许可
+     *
+     * @param lane 通道
+     * @return 许可，调用完成后 {@link Permit#release}
+     * @throws ZkOverloadException  排队已满或等待超时
+     * @throws InterruptedException 等待时中断
+     */
+    public Permit acquire(Lane lane) throws ZkOverloadException, InterruptedException {
+        int index = lane.ordinal();
+        this.lock.lock();
+        try {
+            if (Lane.SESSION != lane && !(hasCapacity() && !hasWaiters(index))) {
+                await(lane);
+            }
+            this.inFlight++;
+            this.admitted[index].increment();
+            // 上限用满一半以上才算受限，应用自身并发不足时不上调
+            Permit permit = new Permit(lane, 2 * this.inFlight >= this.limit);
+            signalNext();
+            return permit;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        this.lock.lock();
+        try {
+            return (int) this.limit;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        this.lock.lock();
+        try {
+            return this.inFlight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public long getAdmitted(Lane lane) {
+        return admitted[lane.ordinal()].sum();
+    }
+
+    public long getQueued(Lane lane) {
+        return queued[lane.ordinal()].sum();
+    }
+
+    public long getShed(Lane lane) {
+        return shed[lane.ordinal()].sum();
+    }
+
+    public long getDecreases() {
+        return decreases.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZkLimiter[limit=%d, inFlight=%d, admitted=%d/%d/%d, shed=%d/%d, decreases=%d]",
+                getLimit(), getInFlight(), getAdmitted(Lane.SESSION), getAdmitted(Lane.WRITE), getAdmitted(Lane.READ),
+                getShed(Lane.WRITE), getShed(Lane.READ), getDecreases());
+    }
+
+    /**
+     * 排队等待许可，持有 lock 时调用
+     */
+    private void await(Lane lane) throws ZkOverloadException, InterruptedException {
+        int index = lane.ordinal();
+        if (this.waiting[index] >= this.capacities[index]) {
+            throw shed(lane, "排队已满");
+        }
+        this.queued[index].increment();
+        this.waiting[index]++;
+        long nanos = this.maxWaits[index];
+        boolean granted = false;
+        try {
+            // 只让位于更高优先级的排队，同一通道的排队按条件队列先后唤醒
+            while (!(hasCapacity() && !hasWaiters(index - 1))) {
+                if (nanos <= 0L) {
+                    throw shed(lane, "等待超时");
+                }
+                nanos = this.ready[index].awaitNanos(nanos);
+            }
+            granted = true;
+        } finally {
+            this.waiting[index]--;
+            if (!granted) {
+                // 可能已被唤醒，转给下一个
+                signalNext();
+            }
+        }
+    }
+
+    private ZkOverloadException shed(Lane lane, String reason) {
+        this.shed[lane.ordinal()].increment();
+        return new ZkOverloadException(lane, reason, (int) this.limit);
+    }
+
+    private boolean hasCapacity() {
+        return this.inFlight < (int) this.limit;
+    }
+
+    /**
+     * 优先级不低于 index 的通道是否有排队
+     */
+    private boolean hasWaiters(int index) {
+        for (int i = 0; i <= index; i++) {
+            if (this.waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 有空闲许可时唤醒优先级最高的排队，持有 lock 时调用
+     */
+    private void signalNext() {
+        if (!hasCapacity()) {
+            return;
+        }
+        for (int i = 0; i < this.waiting.length; i++) {
+            if (this.waiting[i] > 0) {
+                this.ready[i].signal();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 调用完成，按延迟调整上限
+     *
+     * @param code  结果码，为空表示未得到结果（中断等），不参与调整
+     * @param nanos 延迟
+     */
+    void complete(Permit permit, KeeperException.Code code, long nanos) {
+        this.lock.lock();
+        try {
+            this.inFlight--;
+            if (null != code) {
+                adjust(permit, code, nanos);
+            }
+            signalNext();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void adjust(Permit permit, KeeperException.Code code, long nanos) {
+        boolean dropped = KeeperException.Code.CONNECTIONLOSS == code || KeeperException.Code.OPERATIONTIMEOUT == code;
+        if (!dropped) {
+            this.windowMin = Math.min(this.windowMin, nanos);
+            if (++this.windowSamples >= RTT_WINDOW) {
+                // 基准降低时立即跟上，升高时每个窗口只跟上 1/8
+                this.minRtt = this.windowMin < this.minRtt || Long.MAX_VALUE == this.minRtt
+                        ? this.windowMin : this.minRtt + ((this.windowMin - this.minRtt) >> 3);
+                this.windowMin = Long.MAX_VALUE;
+                this.windowSamples = 0;
+            }
+        }
+        long base = Math.min(this.minRtt, this.windowMin);
+        if (dropped || (Long.MAX_VALUE != base && nanos > base * this.tolerance + this.slackNanos)) {
+            // 上次下调之前发出的请求反映的是旧上限，不再重复下调
+            if (permit.start - this.lastDecrease > 0L) {
+                this.limit = Math.max(this.minLimit, this.limit * this.backoff);
+                this.lastDecrease = System.nanoTime();
+                this.decreases.increment();
+                log.debug("延迟{}us超过基准{}us，并发上限下调为{}", nanos / 1000, base / 1000, (int) this.limit);
+            }
+        } else if (permit.saturated) {
+            this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+        }
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Lane.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * 一次许可，调用完成后释放一次
+     */
+    public final class Permit {
+
+        /** 通道 */
+        private final Lane lane;
+
+        /** 放行时上限是否受限 */
+        private final boolean saturated;
+
+        /** 放行时间（System.nanoTime） */
+        private final long start = System.nanoTime();
+
+        private boolean released;
+
+        private Permit(Lane lane, boolean saturated) {
+            this.lane = lane;
+            this.saturated = saturated;
+        }
+
+        public Lane getLane() {
+            return lane;
+        }
+
+        /**
+         * 释放许可
+         *
+         * @param code 结果码，为空表示未得到结果（中断等），不参与调整上限
+         */
+        public void release(KeeperException.Code code) {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            complete(this, code, System.nanoTime() - this.start);
+        }
+    }
+}
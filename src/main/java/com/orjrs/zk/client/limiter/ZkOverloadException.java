@@ -0,0 +1,50 @@
+package com.orjrs.zk.client.limiter;
+
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * 客户端限流丢弃：请求未发往服务端，可稍后重试
+ * <p>
+ * 错误码为 {@link KeeperException.Code#OPERATIONTIMEOUT}，按 KeeperException 处理的调用方无需修改。
+ *
+ * @author orjrs
+ * @create 2020-11-02 10:20
+ * @since 1.0.0
+ */
+public class ZkOverloadException extends KeeperException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 所在通道 */
+    private final ZkLimiter.Lane lane;
+
+    /** 丢弃原因 */
+    private final String reason;
+
+    /** 丢弃时的并发上限 */
+    private final int limit;
+
+    public ZkOverloadException(ZkLimiter.Lane lane, String reason, int limit) {
+        super(Code.OPERATIONTIMEOUT);
+        this.lane = lane;
+        this.reason = reason;
+        this.limit = limit;
+    }
+
+    public ZkLimiter.Lane getLane() {
+        return lane;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String getMessage() {
+        return String.format("客户端限流丢弃%s请求：%s，并发上限%d", this.lane, this.reason, this.limit);
+    }
+}
@@ -0,0 +1,137 @@
+package com.orjrs.zk.client.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JMX 导出：注册 com.orjrs.zk:type=ZkMetrics，属性在读取时实时计算
+ * <p>
+ * 属性名形如 getData.count、getData.p99（微秒）、error.NONODE、state.Disconnected。
+ *
+ * @author orjrs
+ * @create 2020-09-05 11:30
+ * @since 1.0.0
+ */
+@Slf4j
+public class JmxMetricsExporter implements MetricsExporter, DynamicMBean {
+
+    private static final String OBJECT_NAME = "com.orjrs.zk:type=ZkMetrics";
+
+    private ZkMetrics metrics;
+
+    private ObjectName name;
+
+    @Override
+    public void start(ZkMetrics metrics) {
+        this.metrics = metrics;
+        try {
+            this.name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(this.name)) {
+                server.unregisterMBean(this.name);
+            }
+            server.registerMBean(this, this.name);
+        } catch (JMException e) {
+            log.info("注册ZK指标MBean失败：{}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (null != this.name) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+            }
+        } catch (JMException e) {
+            log.info("注销ZK指标MBean失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 当前所有属性
+     */
+    private Map<String, Object> snapshot() {
+        Map<String, Object> values = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> op : this.metrics.getOps().entrySet()) {
+            LatencyHistogram h = op.getValue();
+            values.put(op.getKey() + ".count", h.getCount());
+            values.put(op.getKey() + ".mean", h.getMean() / 1000.0);
+            values.put(op.getKey() + ".p50", h.getPercentile(50) / 1000.0);
+            values.put(op.getKey() + ".p99", h.getPercentile(99) / 1000.0);
+            values.put(op.getKey() + ".p999", h.getPercentile(99.9) / 1000.0);
+            values.put(op.getKey() + ".max", h.getMax() / 1000.0);
+        }
+        for (Map.Entry<?, LongAdder> error : this.metrics.getErrors().entrySet()) {
+            values.put("error." + error.getKey(), error.getValue().sum());
+        }
+        for (Map.Entry<?, LongAdder> shed : this.metrics.getShed().entrySet()) {
+            values.put("shed." + shed.getKey(), shed.getValue().sum());
+        }
+        for (Map.Entry<?, LongAdder> state : this.metrics.getStates().entrySet()) {
+            values.put("state." + state.getKey(), state.getValue().sum());
+        }
+        return values;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = snapshot().get(attribute);
+        if (null == value) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("ZK指标只读");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute)) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "ZK调用指标", attributes.toArray(new MBeanAttributeInfo[0]),
+                null, null, null);
+    }
+}
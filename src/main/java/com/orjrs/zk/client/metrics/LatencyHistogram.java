@@ -0,0 +1,125 @@
+package com.orjrs.zk.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁延迟直方图（纳秒）
+ * <p>
+ * 与 HdrHistogram 相同的对数-线性分桶：每个 2 的幂区间再线性分为 16 个子桶，
+ * 相对误差不超过约 6%，记录只需一次原子自增，内存固定约 8KB。
+ *
+ * @author orjrs
+ * @create 2020-09-05 10:00
+ * @since 1.0.0
+ */
+public class LatencyHistogram {
+
+    /** 子桶位数 */
+    private static final int SUB_BITS = 5;
+
+    /** 线性区间的桶数 */
+    private static final int LINEAR = 1 << SUB_BITS;
+
+    /** 每个 2 的幂区间的子桶数 */
+    private static final int HALF = LINEAR >> 1;
+
+    /** 桶总数 */
+    private static final int BUCKETS = LINEAR + (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 纳秒
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        this.counts.incrementAndGet(index(nanos));
+        this.count.increment();
+        this.sum.add(nanos);
+        long current = this.max.get();
+        while (nanos > current && !this.max.compareAndSet(current, nanos)) {
+            current = this.max.get();
+        }
+    }
+
+    static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - (SUB_BITS - 1);
+        int top = (int) (value >>> shift);
+        return LINEAR + (shift - 1) * HALF + (top - HALF);
+    }
+
+    /**
+     * 桶的上界
+     */
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / HALF + 1;
+        long top = (index - LINEAR) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * 分位数
+     *
+     * @param percentile 百分位，如 99.9
+     * @return 纳秒，误差不超过所在桶的宽度
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += this.counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+}
@@ -0,0 +1,24 @@
+package com.orjrs.zk.client.metrics;
+
+/**
+ * 指标导出
+ *
+ * @author orjrs
+ * @create 2020-09-05 11:00
+ * @since 1.0.0
+ */
+public interface MetricsExporter extends AutoCloseable {
+
+    /**
+     * 开始导出
+     *
+     * @param metrics 指标
+     */
+    void start(ZkMetrics metrics);
+
+    /**
+     * 停止导出
+     */
+    @Override
+    void close();
+}
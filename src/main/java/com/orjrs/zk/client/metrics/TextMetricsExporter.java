@@ -0,0 +1,83 @@
+package com.orjrs.zk.client.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文本导出：按固定间隔把指标输出到日志，也可直接调用 {@link #format} 获取文本
+ *
+ * @author orjrs
+ * @create 2020-09-05 11:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class TextMetricsExporter implements MetricsExporter {
+
+    /** 输出间隔（秒） */
+    private final long intervalSeconds;
+
+    private ScheduledExecutorService scheduler;
+
+    public TextMetricsExporter(long intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    @Override
+    public void start(ZkMetrics metrics) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "zk-metrics-text");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(() -> log.info("ZK指标：\n{}", format(metrics)),
+                this.intervalSeconds, this.intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (null != this.scheduler) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 格式化指标，延迟单位为微秒
+     *
+     * @param metrics 指标
+     * @return 文本
+     */
+    public static String format(ZkMetrics metrics) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> op : new TreeMap<>(metrics.getOps()).entrySet()) {
+            line(sb, op.getKey(), op.getValue());
+            Map<String, LatencyHistogram> prefixes = metrics.getPrefixes().get(op.getKey());
+            if (null != prefixes) {
+                for (Map.Entry<String, LatencyHistogram> prefix : new TreeMap<>(prefixes).entrySet()) {
+                    line(sb, "  " + prefix.getKey(), prefix.getValue());
+                }
+            }
+        }
+        for (Map.Entry<?, LongAdder> error : metrics.getErrors().entrySet()) {
+            sb.append("error ").append(error.getKey()).append(' ').append(error.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<?, LongAdder> shed : metrics.getShed().entrySet()) {
+            sb.append("shed ").append(shed.getKey()).append(' ').append(shed.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<?, LongAdder> state : metrics.getStates().entrySet()) {
+            sb.append("state ").append(state.getKey()).append(' ').append(state.getValue().sum()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void line(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append(String.format("%-24s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                name, h.getCount(), h.getMean() / 1000.0, h.getPercentile(50) / 1000.0,
+                h.getPercentile(99) / 1000.0, h.getPercentile(99.9) / 1000.0, h.getMax() / 1000.0));
+    }
+}
@@ -0,0 +1,16 @@
+package com.orjrs.zk.client.metrics;
+
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * 一次ZK同步调用
+ *
+ * @param <T> 返回类型
+ * @author orjrs
+ * @create 2020-09-05 10:20
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface ZkCall<T> {
+    T call() throws KeeperException, InterruptedException;
+}
@@ -0,0 +1,208 @@
+package com.orjrs.zk.client.metrics;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ZK调用指标：按操作、按路径前缀的延迟直方图，按错误码的错误数，按操作的限流丢弃数，会话状态变化次数
+ * <p>
+ * 默认关闭（-Dorjrs.zk.metrics=true 开启），关闭时 {@link #timed} 只多一次 volatile 读。
+ *
+ * @author orjrs
+ * @create 2020-09-05 10:30
+ * @since 1.0.0
+ */
+public final class ZkMetrics {
+
+    public static final String CREATE = "create";
+    public static final String GET_DATA = "getData";
+    public static final String SET_DATA = "setData";
+    public static final String DELETE = "delete";
+    public static final String EXISTS = "exists";
+    public static final String GET_CHILDREN = "getChildren";
+    public static final String MULTI = "multi";
+    public static final String SYNC = "sync";
+
+    private static final ZkMetrics INSTANCE = new ZkMetrics();
+
+    /** 是否开启 */
+    private volatile boolean enabled = Boolean.getBoolean("orjrs.zk.metrics");
+
+    /** 路径前缀取前几级 */
+    private volatile int prefixDepth = 1;
+
+    /** 操作 -> 延迟 */
+    private final Map<String, LatencyHistogram> ops = new ConcurrentHashMap<>();
+
+    /** 操作 -> 路径前缀 -> 延迟 */
+    private final Map<String, Map<String, LatencyHistogram>> prefixes = new ConcurrentHashMap<>();
+
+    /** 错误码 -> 次数 */
+    private final Map<KeeperException.Code, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /** 操作 -> 客户端限流丢弃次数 */
+    private final Map<String, LongAdder> shed = new ConcurrentHashMap<>();
+
+    /** 会话状态 -> 次数 */
+    private final Map<Watcher.Event.KeeperState, LongAdder> states = new ConcurrentHashMap<>();
+
+    private ZkMetrics() {
+    }
+
+    public static ZkMetrics get() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setPrefixDepth(int prefixDepth) {
+        this.prefixDepth = prefixDepth;
+    }
+
+    /**
+     * 执行并记录一次同步调用
+     *
+     * @param op   操作名
+     * @param path 路径
+     * @param call 调用
+     * @param <T>  返回类型
+     * @return 调用结果
+     * @throws KeeperException      调用失败，按错误码计数后原样抛出
+     * @throws InterruptedException 中断
+     */
+    public <T> T timed(String op, String path, ZkCall<T> call) throws KeeperException, InterruptedException {
+        if (!this.enabled) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            record(op, path, start, KeeperException.Code.OK.intValue());
+            return result;
+        } catch (KeeperException e) {
+            record(op, path, start, e.code().intValue());
+            throw e;
+        }
+    }
+
+    /**
+     * 执行并记录一次无返回值的同步调用
+     *
+     * @param op   操作名
+     * @param path 路径
+     * @param call 调用
+     * @throws KeeperException      调用失败，按错误码计数后原样抛出
+     * @throws InterruptedException 中断
+     */
+    public void timedVoid(String op, String path, ZkVoidCall call) throws KeeperException, InterruptedException {
+        timed(op, path, () -> {
+            call.call();
+            return null;
+        });
+    }
+
+    /**
+     * 异步调用开始，关闭时返回 0
+     *
+     * @return 开始时间
+     */
+    public long start() {
+        return this.enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 记录一次调用（异步调用在回调中使用）
+     *
+     * @param op         操作名
+     * @param path       路径
+     * @param startNanos {@link #start()} 的返回值
+     * @param rc         结果码
+     */
+    public void record(String op, String path, long startNanos, int rc) {
+        if (0L == startNanos) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        this.ops.computeIfAbsent(op, k -> new LatencyHistogram()).record(nanos);
+        if (null != path) {
+            this.prefixes.computeIfAbsent(op, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(prefix(path), k -> new LatencyHistogram()).record(nanos);
+        }
+        if (KeeperException.Code.OK.intValue() != rc) {
+            this.errors.computeIfAbsent(KeeperException.Code.get(rc), k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 记录一次未发往服务端就被客户端限流丢弃的调用，计入丢弃数和错误码 {@link KeeperException.Code#OPERATIONTIMEOUT}
+     *
+     * @param op 操作名
+     */
+    public void recordShed(String op) {
+        if (this.enabled) {
+            this.shed.computeIfAbsent(op, k -> new LongAdder()).increment();
+            this.errors.computeIfAbsent(KeeperException.Code.OPERATIONTIMEOUT, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 记录会话状态变化
+     *
+     * @param state 状态
+     */
+    public void recordState(Watcher.Event.KeeperState state) {
+        if (this.enabled && null != state) {
+            this.states.computeIfAbsent(state, k -> new LongAdder()).increment();
+        }
+    }
+
+    String prefix(String path) {
+        int depth = this.prefixDepth;
+        int end = 0;
+        for (int i = 0; i < depth; i++) {
+            end = path.indexOf('/', end + 1);
+            if (end < 0) {
+                return path;
+            }
+        }
+        return path.substring(0, end);
+    }
+
+    public Map<String, LatencyHistogram> getOps() {
+        return ops;
+    }
+
+    public Map<String, Map<String, LatencyHistogram>> getPrefixes() {
+        return prefixes;
+    }
+
+    public Map<KeeperException.Code, LongAdder> getErrors() {
+        return errors;
+    }
+
+    public Map<String, LongAdder> getShed() {
+        return shed;
+    }
+
+    public Map<Watcher.Event.KeeperState, LongAdder> getStates() {
+        return states;
+    }
+
+    public void reset() {
+        this.ops.clear();
+        this.prefixes.clear();
+        this.errors.clear();
+        this.shed.clear();
+        this.states.clear();
+    }
+}
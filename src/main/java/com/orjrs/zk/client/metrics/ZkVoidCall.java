@@ -0,0 +1,15 @@
+package com.orjrs.zk.client.metrics;
+
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * 一次无返回值的ZK同步调用
+ *
+ * @author orjrs
+ * @create 2020-09-05 10:25
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface ZkVoidCall {
+    void call() throws KeeperException, InterruptedException;
+}
@@ -0,0 +1,116 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkUpdater;
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 分布式计数器：节点数据为 8 字节的 long，通过 {@link ZkUpdater} 按版本号 setData 实现比较并交换
+ *
+ * @author orjrs
+ * @create 2020-10-18 10:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkCounter {
+
+    /** 版本冲突的最大重试次数 */
+    private static final int MAX_RETRIES = 100;
+
+    /** 连接管理 */
+    private final ZkConnectionManager manager;
+
+    /** 计数器路径 */
+    private final String path;
+
+    /** 乐观更新，同一计数器上本地并发的加法合并为一次写入 */
+    private final ZkUpdater updater;
+
+    /**
+     * @param manager 连接管理
+     * @param path    计数器路径，不存在时按 0 创建
+     */
+    public ZkCounter(ZkConnectionManager manager, String path) {
+        this.manager = manager;
+        this.path = path;
+        this.updater = new ZkUpdater(manager).maxRetries(MAX_RETRIES);
+    }
+
+    /**
+     * 当前值
+     *
+     * @return 当前值，节点不存在时为 0
+     * @throws KeeperException      读取失败
+     * @throws InterruptedException 中断
+     */
+    public long get() throws KeeperException, InterruptedException {
+        ZooKeeper zk = zk();
+        try {
+            return decode(ZkLimiter.get().call(ZkMetrics.GET_DATA, this.path, () -> zk.getData(this.path, false, null)));
+        } catch (KeeperException.NoNodeException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 加上 delta，版本冲突时随机退避后重试，同一实例上的并发调用合并为一次写入
+     *
+     * @param delta 增量
+     * @return 加之后的值，加之前的值为返回值 - delta
+     * @throws KeeperException      失败；冲突超过重试次数时为 BadVersion
+     * @throws InterruptedException 中断
+     */
+    public long addAndGet(long delta) throws KeeperException, InterruptedException {
+        while (true) {
+            try {
+                return decode(this.updater.update(this.path, data -> encode(decode(data) + delta)));
+            } catch (KeeperException.NoNodeException e) {
+                create(zk());
+            }
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    private void create(ZooKeeper zk) throws KeeperException, InterruptedException {
+        int index = 0;
+        while (index >= 0) {
+            index = this.path.indexOf('/', index + 1);
+            String node = index < 0 ? this.path : this.path.substring(0, index);
+            byte[] data = index < 0 ? encode(0L) : new byte[0];
+            try {
+                ZkLimiter.get().call(ZkMetrics.CREATE, node,
+                        () -> zk.create(node, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+            } catch (KeeperException.NodeExistsException e) {
+                // 已存在
+            }
+        }
+        log.info("创建计数器：{}", this.path);
+    }
+
+    private ZooKeeper zk() throws KeeperException {
+        ZooKeeper zk = this.manager.getZooKeeper();
+        if (null == zk) {
+            throw new KeeperException.ConnectionLossException();
+        }
+        return zk;
+    }
+
+    static byte[] encode(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    static long decode(byte[] data) {
+        return null == data || data.length < Long.BYTES ? 0L : ByteBuffer.wrap(data).getLong();
+    }
+}
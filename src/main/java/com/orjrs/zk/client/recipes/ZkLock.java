@@ -0,0 +1,329 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁：可重入，排队等待，不产生惊群
+ * <p>
+ * 每次加锁在锁路径下创建一个 EPHEMERAL_SEQUENTIAL 节点，序号最小的持有锁；其余等待者只监听排在自己前面的
+ * 那一个节点（读锁监听前面最近的写锁节点），释放锁只唤醒一个等待者，服务端的监听通知和 getChildren
+ * 次数与等待者数量无关。节点名带本次加锁的随机标识，创建时连接断开也能找回自己的节点，不会遗留。
+ * <p>
+ * 同一线程重复加锁只计数；同一进程的不同线程各自排队。加锁超时、被中断或失败时删除自己的节点；
+ * 会话过期后临时节点由服务端删除，{@link #isHeldByCurrentThread()} 返回 false，等待中的加锁以
+ * SessionExpired 失败。
+ *
+ * @author orjrs
+ * @create 2020-10-17 16:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkLock {
+
+    /** 互斥锁节点类型 */
+    static final String MUTEX = "lock";
+
+    /** 读锁节点类型 */
+    static final String READ = "read";
+
+    /** 写锁节点类型 */
+    static final String WRITE = "write";
+
+    /** 序号长度 */
+    private static final int SEQUENCE_LENGTH = 10;
+
+    /** 连接管理 */
+    private final ZkConnectionManager manager;
+
+    /** 锁路径 */
+    private final String path;
+
+    /** 节点类型 */
+    private final String type;
+
+    /** 同一读写锁中的写锁，仅读锁有 */
+    private final ZkLock writer;
+
+    /** 线程 -> 持有的锁 */
+    private final Map<Thread, LockData> holders = new ConcurrentHashMap<>();
+
+    /**
+     * @param manager 连接管理
+     * @param path    锁路径，不存在时创建
+     */
+    public ZkLock(ZkConnectionManager manager, String path) {
+        this(manager, path, MUTEX, null);
+    }
+
+    ZkLock(ZkConnectionManager manager, String path, String type, ZkLock writer) {
+        this.manager = manager;
+        this.path = path;
+        this.type = type;
+        this.writer = writer;
+    }
+
+    /**
+     * 加锁，一直等待
+     *
+     * @throws KeeperException      失败，会话过期时为 SessionExpired
+     * @throws InterruptedException 中断
+     */
+    public void acquire() throws KeeperException, InterruptedException {
+        acquire(-1L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 加锁
+     *
+     * @param timeout 最长等待时间，负数表示一直等待
+     * @param unit    时间单位
+     * @return 是否加锁成功
+     * @throws KeeperException      失败，会话过期时为 SessionExpired
+     * @throws InterruptedException 中断
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws KeeperException, InterruptedException {
+        Thread current = Thread.currentThread();
+        LockData data = this.holders.get(current);
+        if (null != data && isValid(data)) {
+            data.count++;
+            return true;
+        }
+        this.holders.remove(current);
+        ZooKeeper zk = this.manager.getZooKeeper();
+        if (null == zk) {
+            throw new KeeperException.ConnectionLossException();
+        }
+        long deadline = timeout < 0 ? Long.MAX_VALUE : System.nanoTime() + unit.toNanos(timeout);
+        String node = createNode(zk, this.type + "-" + UUID.randomUUID() + "-");
+        boolean acquired = false;
+        try {
+            acquired = waitForLock(zk, node, deadline);
+        } finally {
+            if (!acquired) {
+                deleteNode(zk, node);
+            }
+        }
+        if (acquired) {
+            this.holders.put(current, new LockData(zk, node));
+        }
+        return acquired;
+    }
+
+    /**
+     * 释放锁，重入时计数减一，计数为 0 时删除节点
+     *
+     * @throws KeeperException      删除节点失败
+     * @throws InterruptedException 中断
+     */
+    public void release() throws KeeperException, InterruptedException {
+        Thread current = Thread.currentThread();
+        LockData data = this.holders.get(current);
+        if (null == data) {
+            throw new IllegalMonitorStateException("当前线程未持有锁：" + this.path);
+        }
+        if (--data.count > 0) {
+            return;
+        }
+        this.holders.remove(current);
+        if (!isValid(data)) {
+            log.info("锁{}所在会话已过期，节点已由服务端删除", this.path);
+            return;
+        }
+        try {
+            // 释放锁让其他等待者继续，限流时不排队
+            ZkLimiter.withLane(ZkLimiter.Lane.SESSION, () -> {
+                ZkLimiter.get().callVoid(ZkMetrics.DELETE, data.node, () -> data.zk.delete(data.node, -1));
+                return null;
+            });
+        } catch (KeeperException.NoNodeException e) {
+            // 已被删除
+        }
+    }
+
+    /**
+     * 当前线程是否持有锁，所在会话过期后返回 false
+     *
+     * @return 是否持有
+     */
+    public boolean isHeldByCurrentThread() {
+        LockData data = this.holders.get(Thread.currentThread());
+        return null != data && isValid(data);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 当前线程持有的锁节点名
+     */
+    String ownNode() {
+        LockData data = this.holders.get(Thread.currentThread());
+        return null == data ? null : data.node;
+    }
+
+    /**
+     * 排队直到序号最小（或前面没有写锁），超过期限返回 false
+     */
+    private boolean waitForLock(ZooKeeper zk, String node, long deadline) throws KeeperException, InterruptedException {
+        String name = node.substring(this.path.length() + 1);
+        while (true) {
+            CountDownLatch latch = new CountDownLatch(1);
+            try {
+                List<String> children = sortedChildren(zk);
+                int index = children.indexOf(name);
+                if (index < 0) {
+                    // 节点不在了，会话过期或被其他客户端删除
+                    throw new KeeperException.NoNodeException(node);
+                }
+                String predecessor = predecessor(children, index);
+                if (null == predecessor) {
+                    return true;
+                }
+                String predecessorPath = this.path + "/" + predecessor;
+                // 只监听前一个节点；会话事件（断开、过期）也会唤醒
+                Stat stat = ZkLimiter.get().call(ZkMetrics.EXISTS, predecessorPath,
+                        () -> zk.exists(predecessorPath, event -> latch.countDown()));
+                if (null == stat) {
+                    continue;
+                }
+            } catch (KeeperException.ConnectionLossException e) {
+                // 客户端自动重连，会话仍有效时节点还在，重新检查
+                latch.countDown();
+            }
+            if (Long.MAX_VALUE == deadline) {
+                latch.await();
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !latch.await(remaining, TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 需要等待的节点：互斥锁和写锁等前一个节点，读锁等前面最近的写锁节点；无需等待时返回 null
+     */
+    private String predecessor(List<String> children, int index) {
+        if (!READ.equals(this.type)) {
+            return 0 == index ? null : children.get(index - 1);
+        }
+        String ownWrite = null == this.writer ? null : this.writer.ownNode();
+        for (int i = index - 1; i >= 0; i--) {
+            String child = children.get(i);
+            if (child.startsWith(WRITE + "-")) {
+                // 当前线程持有写锁时可以直接加读锁
+                return null != ownWrite && ownWrite.endsWith("/" + child) ? null : child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 锁节点按序号排序
+     */
+    private List<String> sortedChildren(ZooKeeper zk) throws KeeperException, InterruptedException {
+        List<String> children = new ArrayList<>(
+                ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, this.path, () -> zk.getChildren(this.path, false)));
+        children.removeIf(child -> child.length() <= SEQUENCE_LENGTH);
+        children.sort((a, b) -> a.substring(a.length() - SEQUENCE_LENGTH).compareTo(b.substring(b.length() - SEQUENCE_LENGTH)));
+        return children;
+    }
+
+    /**
+     * 创建锁节点，锁路径不存在时先创建；连接断开时按前缀找回已创建的节点
+     */
+    private String createNode(ZooKeeper zk, String prefix) throws KeeperException, InterruptedException {
+        String nodePath = this.path + "/" + prefix;
+        boolean lost = false;
+        while (true) {
+            try {
+                if (lost) {
+                    for (String child : ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, this.path, () -> zk.getChildren(this.path, false))) {
+                        if (child.startsWith(prefix)) {
+                            return this.path + "/" + child;
+                        }
+                    }
+                }
+                return ZkLimiter.get().call(ZkMetrics.CREATE, nodePath,
+                        () -> zk.create(nodePath, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL));
+            } catch (KeeperException.NoNodeException e) {
+                createParents(zk, this.path);
+            } catch (KeeperException.ConnectionLossException e) {
+                // 不确定是否已创建，重连后按前缀查找
+                lost = true;
+            }
+        }
+    }
+
+    private static void createParents(ZooKeeper zk, String path) throws KeeperException, InterruptedException {
+        int index = 0;
+        while (index >= 0) {
+            index = path.indexOf('/', index + 1);
+            String parent = index < 0 ? path : path.substring(0, index);
+            try {
+                ZkLimiter.get().call(ZkMetrics.CREATE, parent,
+                        () -> zk.create(parent, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+            } catch (KeeperException.NodeExistsException e) {
+                // 已存在
+            }
+        }
+    }
+
+    /**
+     * 放弃加锁时删除自己的节点，会话已失效时由服务端删除
+     */
+    private static void deleteNode(ZooKeeper zk, String node) {
+        try {
+            ZkLimiter.get().callVoid(ZkMetrics.DELETE, node, () -> zk.delete(node, -1));
+        } catch (KeeperException.NoNodeException | KeeperException.SessionExpiredException e) {
+            // 已被删除
+        } catch (KeeperException e) {
+            log.info("删除锁节点{}失败，会话结束后由服务端删除：{}", node, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 加锁时的会话仍是当前会话
+     */
+    private boolean isValid(LockData data) {
+        return data.zk == this.manager.getZooKeeper();
+    }
+
+    /**
+     * 一个线程持有的锁
+     */
+    private static final class LockData {
+
+        private final ZooKeeper zk;
+
+        private final String node;
+
+        /** 重入次数，只由持有线程访问 */
+        private int count = 1;
+
+        LockData(ZooKeeper zk, String node) {
+            this.zk = zk;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkBatch;
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.limiter.ZkLimiter;
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分布式队列：元素为 {@code <路径>/item-<序号>} 持久顺序节点
+ * <p>
+ * 消费时缓存排好序的子节点列表，列表取完才重新 getChildren；一次取一批，先流水线读取数据，
+ * 再用一个 multi 删除整批，删除成功的元素才算取到。multi 因某个元素已被其他消费者取走而整体失败时，
+ * 其余元素改为流水线逐个删除，不会连续重试。没有争抢时从列表头部按序取；上一批发生过争抢时，
+ * 从头部 {@value #CLAIM_SPREAD} 倍批量的窗口内随机选取起点，减少多个消费者争抢同一批元素，
+ * 此时顺序只在该窗口内近似先进先出。
+ * 同一实例上的多个线程共用缓存，缓存为空时只有一个线程重新列出。
+ * 生产者可通过 {@link #offerAll(List)} 以 multi 批量入队。{@link #take(int)} 在队列为空时等待子节点监听，
+ * 不轮询。
+ * <p>
+ * 元素在删除成功后才返回给调用方，消费者在处理前崩溃会丢失元素（至多一次）；
+ * 入队遇到 ConnectionLoss 时不确定是否已创建，直接抛出。
+ *
+ * @author orjrs
+ * @create 2020-10-25 10:10
+ * @since 1.0.0
+ */
+@Slf4j
+public class ZkQueue {
+
+    /** 元素节点名前缀 */
+    private static final String PREFIX = "item-";
+
+    /** 取元素时随机起点的窗口，为批量的倍数 */
+    private static final int CLAIM_SPREAD = 4;
+
+    /** 连接管理 */
+    private final ZkConnectionManager manager;
+
+    /** 队列路径 */
+    private final String path;
+
+    /** 排好序的子节点名，受自身锁保护 */
+    private final List<String> cached = new ArrayList<>();
+
+    /** 重新列出子节点的次数，在 cached 锁内修改 */
+    private volatile long refills;
+
+    /** 上一批是否与其他消费者发生争抢 */
+    private volatile boolean contended;
+
+    /** 子节点变化时完成，等待中的 take 重新读取 */
+    private volatile CountDownLatch changed = new CountDownLatch(1);
+
+    /** 子节点监听 */
+    private final Watcher childWatcher = this::childrenChanged;
+
+    /** getChildren 次数 */
+    private final LongAdder listings = new LongAdder();
+
+    /** 已被其他消费者取走的元素数 */
+    private final LongAdder conflicts = new LongAdder();
+
+    /**
+     * @param manager 连接管理
+     * @param path    队列路径，不存在时入队自动创建
+     */
+    public ZkQueue(ZkConnectionManager manager, String path) {
+        this.manager = manager;
+        this.path = path;
+    }
+
+    /**
+     * 入队
+     *
+     * @param data 数据
+     * @return 元素节点路径
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public String offer(byte[] data) throws KeeperException, InterruptedException {
+        ZooKeeper zk = zk();
+        String itemPath = this.path + "/" + PREFIX;
+        while (true) {
+            try {
+                return ZkLimiter.get().call(ZkMetrics.CREATE, itemPath,
+                        () -> zk.create(itemPath, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL));
+            } catch (KeeperException.NoNodeException e) {
+                createParents(zk, this.path);
+            }
+        }
+    }
+
+    /**
+     * 批量入队，按 jute.maxbuffer 拆分为多个 multi 流水线提交，同一 multi 内的元素序号连续
+     *
+     * @param items 数据
+     * @return 元素节点路径，顺序与 items 一致
+     * @throws KeeperException      失败，此时之前的 multi 可能已经入队
+     * @throws InterruptedException 中断
+     */
+    public List<String> offerAll(List<byte[]> items) throws KeeperException, InterruptedException {
+        ZooKeeper zk = zk();
+        String itemPath = this.path + "/" + PREFIX;
+        for (boolean retried = false; ; retried = true) {
+            ZkBatch batch = new ZkBatch(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+            for (byte[] item : items) {
+                batch.create(itemPath, item, CreateMode.PERSISTENT_SEQUENTIAL);
+            }
+            List<ZkBatch.OpOutcome> outcomes = batch.flush();
+            List<String> created = new ArrayList<>(outcomes.size());
+            KeeperException.Code error = KeeperException.Code.OK;
+            for (ZkBatch.OpOutcome outcome : outcomes) {
+                if (outcome.isOk()) {
+                    created.add(((OpResult.CreateResult) outcome.getResult()).getPath());
+                } else if (KeeperException.Code.OK == error || KeeperException.Code.RUNTIMEINCONSISTENCY == error) {
+                    error = outcome.getCode();
+                }
+            }
+            if (KeeperException.Code.OK == error) {
+                return created;
+            }
+            // 队列节点不存在时整批失败，创建后重试一次
+            if (KeeperException.Code.NONODE != error || retried || !created.isEmpty()) {
+                throw KeeperException.create(error, this.path);
+            }
+            createParents(zk, this.path);
+        }
+    }
+
+    /**
+     * 取一个元素，不等待
+     *
+     * @return 数据，队列为空时为 null
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public byte[] poll() throws KeeperException, InterruptedException {
+        List<byte[]> items = poll(1);
+        return items.isEmpty() ? null : items.get(0);
+    }
+
+    /**
+     * 取一批元素，不等待
+     *
+     * @param max 最多取的元素数
+     * @return 数据，队列为空时为空列表
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public List<byte[]> poll(int max) throws KeeperException, InterruptedException {
+        ZooKeeper zk = zk();
+        while (true) {
+            List<String> names = reserve(zk, max);
+            if (names.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<byte[]> items = claim(zk, names);
+            if (!items.isEmpty()) {
+                return items;
+            }
+            // 整批都被其他消费者取走，从缓存的下一批继续
+        }
+    }
+
+    /**
+     * 取一个元素，队列为空时等待
+     *
+     * @return 数据
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public byte[] take() throws KeeperException, InterruptedException {
+        return take(1).get(0);
+    }
+
+    /**
+     * 取一批元素，队列为空时等待
+     *
+     * @param max 最多取的元素数
+     * @return 数据，至少一个
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public List<byte[]> take(int max) throws KeeperException, InterruptedException {
+        return take(max, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 取一批元素，队列为空时等待，最多等待到期限
+     *
+     * @param max     最多取的元素数
+     * @param timeout 期限
+     * @param unit    期限单位
+     * @return 数据，超过期限时为空列表
+     * @throws KeeperException      失败
+     * @throws InterruptedException 中断
+     */
+    public List<byte[]> take(int max, long timeout, TimeUnit unit) throws KeeperException, InterruptedException {
+        long deadline = Long.MAX_VALUE == timeout ? Long.MAX_VALUE : System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            // 先取监听对应的 latch，列出子节点为空之后的变化一定会使它完成
+            CountDownLatch latch = this.changed;
+            List<byte[]> items = poll(max);
+            if (!items.isEmpty()) {
+                return items;
+            }
+            if (Long.MAX_VALUE == deadline) {
+                latch.await();
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !latch.await(remaining, TimeUnit.NANOSECONDS)) {
+                    return Collections.emptyList();
+                }
+            }
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getListings() {
+        return listings.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    /**
+     * 从缓存中预留一批元素名，缓存为空时重新列出子节点并注册监听
+     */
+    private List<String> reserve(ZooKeeper zk, int max) throws KeeperException, InterruptedException {
+        long seen = this.refills;
+        synchronized (this.cached) {
+            if (this.cached.isEmpty()) {
+                if (seen != this.refills) {
+                    // 等锁期间其他线程已重新列出且已取完，同一实例上的线程不重复列出
+                    return Collections.emptyList();
+                }
+                this.refills++;
+                refill(zk);
+                if (this.cached.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+            int count = Math.min(max, this.cached.size());
+            int start = 0;
+            if (this.contended) {
+                int window = Math.min(this.cached.size(), count * CLAIM_SPREAD);
+                start = ThreadLocalRandom.current().nextInt(window - count + 1);
+            }
+            List<String> range = this.cached.subList(start, start + count);
+            List<String> names = new ArrayList<>(range);
+            range.clear();
+            return names;
+        }
+    }
+
+    /**
+     * 重新列出子节点，调用方持有 cached 锁
+     */
+    private void refill(ZooKeeper zk) throws KeeperException, InterruptedException {
+        List<String> children;
+        this.listings.increment();
+        try {
+            children = ZkLimiter.get().call(ZkMetrics.GET_CHILDREN, this.path, () -> zk.getChildren(this.path, this.childWatcher));
+        } catch (KeeperException.NoNodeException e) {
+            // 尚未入队过，等待创建
+            ZkLimiter.get().call(ZkMetrics.EXISTS, this.path, () -> zk.exists(this.path, this.childWatcher));
+            return;
+        }
+        for (String child : children) {
+            if (child.startsWith(PREFIX)) {
+                this.cached.add(child);
+            }
+        }
+        // 前缀相同、序号定长，按字符串排序即按序号排序
+        Collections.sort(this.cached);
+    }
+
+    /**
+     * 流水线读取数据，再以一个 multi 删除；返回删除成功的元素数据
+     */
+    private List<byte[]> claim(ZooKeeper zk, List<String> names) throws KeeperException, InterruptedException {
+        byte[][] data = new byte[names.size()][];
+        int[] codes = new int[names.size()];
+        CountDownLatch latch = new CountDownLatch(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            int index = i;
+            long start = ZkMetrics.get().start();
+            zk.getData(this.path + "/" + names.get(i), false, (rc, p, ctx, bytes, stat) -> {
+                ZkMetrics.get().record(ZkMetrics.GET_DATA, p, start, rc);
+                codes[index] = rc;
+                data[index] = bytes;
+                latch.countDown();
+            }, null);
+        }
+        latch.await();
+
+        ZkBatch batch = new ZkBatch(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+        List<Integer> readable = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            if (KeeperException.Code.OK.intValue() == codes[i]) {
+                readable.add(i);
+                batch.delete(this.path + "/" + names.get(i));
+            } else if (KeeperException.Code.NONODE.intValue() == codes[i]) {
+                this.conflicts.increment();
+            } else {
+                throw KeeperException.create(KeeperException.Code.get(codes[i]), this.path + "/" + names.get(i));
+            }
+        }
+        List<ZkBatch.OpOutcome> outcomes = batch.flush();
+        List<byte[]> claimed = new ArrayList<>(readable.size());
+        List<Integer> retry = new ArrayList<>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            ZkBatch.OpOutcome outcome = outcomes.get(i);
+            if (outcome.isOk()) {
+                claimed.add(data[readable.get(i)]);
+            } else if (KeeperException.Code.NONODE == outcome.getCode()) {
+                this.conflicts.increment();
+            } else if (KeeperException.Code.RUNTIMEINCONSISTENCY == outcome.getCode()) {
+                // 同一 multi 中其他元素已被取走，整体回滚
+                retry.add(readable.get(i));
+            } else {
+                throw KeeperException.create(outcome.getCode(), outcome.getOp().getPath());
+            }
+        }
+        if (!retry.isEmpty()) {
+            ZkBatch single = new ZkBatch(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE).maxBytes(0);
+            for (int index : retry) {
+                single.delete(this.path + "/" + names.get(index));
+            }
+            List<ZkBatch.OpOutcome> singles = single.flush();
+            for (int i = 0; i < singles.size(); i++) {
+                if (singles.get(i).isOk()) {
+                    claimed.add(data[retry.get(i)]);
+                } else if (KeeperException.Code.NONODE == singles.get(i).getCode()) {
+                    this.conflicts.increment();
+                } else {
+                    throw KeeperException.create(singles.get(i).getCode(), singles.get(i).getOp().getPath());
+                }
+            }
+        }
+        this.contended = claimed.size() < names.size();
+        return claimed;
+    }
+
+    private void childrenChanged(WatchedEvent event) {
+        // 子节点变化、节点创建或连接状态变化都唤醒等待者重新读取
+        CountDownLatch latch = this.changed;
+        this.changed = new CountDownLatch(1);
+        latch.countDown();
+    }
+
+    private ZooKeeper zk() throws KeeperException {
+        ZooKeeper zk = this.manager.getZooKeeper();
+        if (null == zk) {
+            throw new KeeperException.ConnectionLossException();
+        }
+        return zk;
+    }
+
+    private static void createParents(ZooKeeper zk, String path) throws KeeperException, InterruptedException {
+        int index = 0;
+        while (index >= 0) {
+            index = path.indexOf('/', index + 1);
+            String parent = index < 0 ? path : path.substring(0, index);
+            try {
+                ZkLimiter.get().call(ZkMetrics.CREATE, parent,
+                        () -> zk.create(parent, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+            } catch (KeeperException.NodeExistsException e) {
+                // 已存在
+            }
+        }
+    }
+}
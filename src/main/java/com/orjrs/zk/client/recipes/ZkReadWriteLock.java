@@ -0,0 +1,39 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+
+/**
+ * 分布式读写锁：读锁共享，写锁独占，按申请顺序排队
+ * <p>
+ * 读锁只等待排在前面最近的写锁，写锁等待排在前面的任何一个锁，都只监听一个节点。
+ * 持有写锁的线程可以再加读锁；持有读锁时加写锁会一直等待自己的读锁，不支持升级。
+ *
+ * @author orjrs
+ * @create 2020-10-17 16:50
+ * @since 1.0.0
+ */
+public class ZkReadWriteLock {
+
+    /** 写锁 */
+    private final ZkLock writeLock;
+
+    /** 读锁 */
+    private final ZkLock readLock;
+
+    /**
+     * @param manager 连接管理
+     * @param path    锁路径，读锁和写锁的节点都在该路径下
+     */
+    public ZkReadWriteLock(ZkConnectionManager manager, String path) {
+        this.writeLock = new ZkLock(manager, path, ZkLock.WRITE, null);
+        this.readLock = new ZkLock(manager, path, ZkLock.READ, this.writeLock);
+    }
+
+    public ZkLock readLock() {
+        return readLock;
+    }
+
+    public ZkLock writeLock() {
+        return writeLock;
+    }
+}
@@ -0,0 +1,21 @@
+package com.orjrs.zk.client.serializer;
+
+/**
+ * 原始字节
+ *
+ * @author orjrs
+ * @create 2020-08-22 10:10
+ * @since 1.0.0
+ */
+public class BytesSerializer implements Serializer<byte[]> {
+
+    @Override
+    public byte[] serialize(byte[] value) {
+        return value;
+    }
+
+    @Override
+    public byte[] deserialize(byte[] data) {
+        return data;
+    }
+}
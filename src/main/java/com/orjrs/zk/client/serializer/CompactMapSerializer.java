@@ -0,0 +1,104 @@
+package com.orjrs.zk.client.serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 紧凑二进制格式的字符串键值对
+ * <p>
+ * 格式：条目数(varint) + 每个条目 [键长度+1(varint) 键(UTF-8) 值长度+1(varint) 值(UTF-8)]，
+ * 长度写 0 表示 null。比 JSON 或 Java 序列化小且不需要反射。
+ *
+ * @author orjrs
+ * @create 2020-08-22 10:30
+ * @since 1.0.0
+ */
+public class CompactMapSerializer implements Serializer<Map<String, String>> {
+
+    /** null 值的长度标记 */
+    private static final int NULL_LENGTH = -1;
+
+    @Override
+    public byte[] serialize(Map<String, String> value) {
+        if (null == value) {
+            return null;
+        }
+        ThreadLocalBuffer buffer = ThreadLocalBuffer.get();
+        buffer.writeVarInt(value.size());
+        for (Map.Entry<String, String> entry : value.entrySet()) {
+            writeString(buffer, entry.getKey());
+            writeString(buffer, entry.getValue());
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public Map<String, String> deserialize(byte[] data) {
+        if (null == data) {
+            return null;
+        }
+        int[] pos = {0};
+        int size = readVarInt(data, pos);
+        Map<String, String> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            String key = readString(data, pos);
+            map.put(key, readString(data, pos));
+        }
+        return map;
+    }
+
+    /**
+     * 写入长度加一及内容，0 表示 null
+     */
+    private static void writeString(ThreadLocalBuffer buffer, String s) {
+        if (null == s) {
+            buffer.writeVarInt(0);
+            return;
+        }
+        buffer.writeVarInt(utf8Length(s) + 1);
+        buffer.writeUtf8(s);
+    }
+
+    private static String readString(byte[] data, int[] pos) {
+        int len = readVarInt(data, pos) - 1;
+        if (NULL_LENGTH == len) {
+            return null;
+        }
+        String s = new String(data, pos[0], len, StandardCharsets.UTF_8);
+        pos[0] += len;
+        return s;
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len++;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                len++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+}
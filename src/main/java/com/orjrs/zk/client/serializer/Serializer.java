@@ -0,0 +1,31 @@
+package com.orjrs.zk.client.serializer;
+
+/**
+ * 节点数据序列化
+ * <p>
+ * serialize 返回的数组会交给 ZooKeeper 异步发送，实现不能复用返回的数组；
+ * 可以复用的是编码过程中的临时缓冲区（见 {@link ThreadLocalBuffer}）。
+ *
+ * @param <T> 数据类型
+ * @author orjrs
+ * @create 2020-08-22 10:00
+ * @since 1.0.0
+ */
+public interface Serializer<T> {
+
+    /**
+     * 序列化
+     *
+     * @param value 数据
+     * @return 字节数组
+     */
+    byte[] serialize(T value);
+
+    /**
+     * 反序列化
+     *
+     * @param data 字节数组，节点无数据时为 null
+     * @return 数据
+     */
+    T deserialize(byte[] data);
+}
@@ -0,0 +1,42 @@
+package com.orjrs.zk.client.serializer;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * 内置序列化实现
+ *
+ * @author orjrs
+ * @create 2020-08-22 10:05
+ * @since 1.0.0
+ */
+public final class Serializers {
+
+    /** UTF-8 字符串 */
+    public static final Serializer<String> UTF8 = new Utf8Serializer();
+
+    /** 原始字节，不做任何转换 */
+    public static final Serializer<byte[]> BYTES = new BytesSerializer();
+
+    /** 紧凑二进制格式的字符串键值对 */
+    public static final Serializer<Map<String, String>> COMPACT_MAP = new CompactMapSerializer();
+
+    private Serializers() {
+    }
+
+    /**
+     * 取出 ByteBuffer 中剩余的字节；堆内存且正好覆盖整个数组时直接返回底层数组，不复制
+     *
+     * @param buffer 数据
+     * @return 字节数组
+     */
+    public static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+}
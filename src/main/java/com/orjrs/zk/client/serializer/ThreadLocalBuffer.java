@@ -0,0 +1,119 @@
+package com.orjrs.zk.client.serializer;
+
+import java.util.Arrays;
+
+/**
+ * 每个线程复用的编码缓冲区，编码完成后按实际长度复制一次
+ *
+ * @author orjrs
+ * @create 2020-08-22 10:15
+ * @since 1.0.0
+ */
+final class ThreadLocalBuffer {
+
+    /** 初始大小 */
+    private static final int INITIAL_SIZE = 1024;
+
+    /** 超过该大小的缓冲区用完后不保留，避免长期占用内存 */
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ThreadLocalBuffer> BUFFERS = ThreadLocal.withInitial(ThreadLocalBuffer::new);
+
+    /** 缓冲区 */
+    byte[] buf = new byte[INITIAL_SIZE];
+
+    /** 已写入长度 */
+    int size;
+
+    private ThreadLocalBuffer() {
+    }
+
+    /**
+     * 获取当前线程的缓冲区并清空
+     *
+     * @return 缓冲区
+     */
+    static ThreadLocalBuffer get() {
+        ThreadLocalBuffer buffer = BUFFERS.get();
+        buffer.size = 0;
+        return buffer;
+    }
+
+    /**
+     * 保证还能写入 n 个字节
+     *
+     * @param n 字节数
+     */
+    void ensure(int n) {
+        if (this.size + n > this.buf.length) {
+            this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length * 2, this.size + n));
+        }
+    }
+
+    void write(int b) {
+        ensure(1);
+        this.buf[this.size++] = (byte) b;
+    }
+
+    /**
+     * 写入无符号变长整数
+     *
+     * @param value 值
+     */
+    void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            this.buf[this.size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buf[this.size++] = (byte) value;
+    }
+
+    /**
+     * 按 UTF-8 写入字符串，不带长度
+     *
+     * @param s 字符串
+     */
+    void writeUtf8(String s) {
+        int len = s.length();
+        ensure(len * 3);
+        byte[] b = this.buf;
+        int pos = this.size;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xC0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[pos++] = (byte) (0xF0 | (cp >> 18));
+                b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符，与 String.getBytes 一致替换为 '?'
+                b[pos++] = (byte) '?';
+            } else {
+                b[pos++] = (byte) (0xE0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        this.size = pos;
+    }
+
+    /**
+     * 复制出实际长度的数组，并在缓冲区过大时释放
+     *
+     * @return 编码结果
+     */
+    byte[] toByteArray() {
+        byte[] result = Arrays.copyOf(this.buf, this.size);
+        if (this.buf.length > MAX_RETAINED_SIZE) {
+            this.buf = new byte[INITIAL_SIZE];
+        }
+        return result;
+    }
+}
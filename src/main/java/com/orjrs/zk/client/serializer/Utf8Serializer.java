@@ -0,0 +1,28 @@
+package com.orjrs.zk.client.serializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 字符串，编码使用线程内复用的缓冲区，每次只分配结果数组
+ *
+ * @author orjrs
+ * @create 2020-08-22 10:20
+ * @since 1.0.0
+ */
+public class Utf8Serializer implements Serializer<String> {
+
+    @Override
+    public byte[] serialize(String value) {
+        if (null == value) {
+            return null;
+        }
+        ThreadLocalBuffer buffer = ThreadLocalBuffer.get();
+        buffer.writeUtf8(value);
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public String deserialize(byte[] data) {
+        return null == data ? null : new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -1,10 +1,14 @@
 package com.orjrs.zk.client.zkclient;
 
+import com.orjrs.zk.client.jdkapi.ZkBulkReader;
 import jdk.nashorn.internal.runtime.logging.Logger;
 import lombok.extern.slf4j.Slf4j;
 import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.ZkConnection;
+import org.I0Itec.zkclient.serialize.SerializableSerializer;
+import org.I0Itec.zkclient.serialize.ZkSerializer;
 
-import java.util.List;
+import java.util.Map;
 
 /**
  * ZK Client demo
@@ -21,17 +25,20 @@ public class ZkClientTest {
     /** ZK会话超时时间 */
     private static final int SESSION_TIMEOUT = 10000;
 
-    public static void main(String[] args) {
-        ZkClient zkClient = new ZkClient(SERVER_ADDR, SESSION_TIMEOUT);
+    public static void main(String[] args) throws Exception {
+        ZkConnection connection = new ZkConnection(SERVER_ADDR, SESSION_TIMEOUT);
+        ZkClient zkClient = new ZkClient(connection);
         // 1. 创建临时节点
         zkClient.createEphemeral("/orjrs/temp_test");
         // 2. 创建持久节点
         zkClient.createPersistent("/orjrs/persistent", true);
-        List<String> children = zkClient.getChildren("/orjrs");
-        for (String child : children) {
+        // 3. 批量读取子节点：流水线发送 getData，不再逐个等待 RTT
+        ZkSerializer serializer = new SerializableSerializer();
+        Map<String, byte[]> children = new ZkBulkReader(connection.getZookeeper()).readChildren("/orjrs");
+        for (Map.Entry<String, byte[]> child : children.entrySet()) {
             String prefix = "/orjrs/";
-            String data = zkClient.readData(prefix + child);
-            log.info("========节点{}:{}", prefix + child, data);
+            Object data = null == child.getValue() ? null : serializer.deserialize(child.getValue());
+            log.info("========节点{}:{}", prefix + child.getKey(), data);
         }
     }
 }
@@ -0,0 +1,73 @@
+package com.orjrs.zk.client.compress;
+
+import com.orjrs.zk.client.serializer.Serializer;
+import com.orjrs.zk.client.serializer.Serializers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 压缩测试
+ *
+ * @author orjrs
+ * @create 2020-10-17 15:00
+ * @since 1.0.0
+ */
+public class CompressingSerializerTest {
+
+    public static final String DATA = "我是自定义监控测试节点 abc 😀";
+
+    private final Serializer<String> serializer = new CompressingSerializer<>(Serializers.UTF8, Codecs.DEFLATE, 64);
+
+    @Test
+    public void testCompress() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append(DATA);
+        }
+        String value = builder.toString();
+        byte[] data = serializer.serialize(value);
+        Assert.assertEquals(CompressingSerializer.HEADER | DeflateCodec.ID, data[0] & 0xFF);
+        Assert.assertTrue(data.length < value.getBytes(StandardCharsets.UTF_8).length / 10);
+        Assert.assertEquals(value, serializer.deserialize(data));
+    }
+
+    @Test
+    public void testBelowThreshold() {
+        // 小于阈值不压缩，与未开启压缩时写入的数据相同
+        Assert.assertArrayEquals(Serializers.UTF8.serialize(DATA), serializer.serialize(DATA));
+        Assert.assertEquals(DATA, serializer.deserialize(DATA.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertNull(serializer.deserialize(null));
+        Assert.assertEquals("", serializer.deserialize(new byte[0]));
+    }
+
+    @Test
+    public void testIncompressible() {
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        random[0] = (byte) 0xFF;
+        Serializer<byte[]> bytes = new CompressingSerializer<>(Serializers.BYTES, Codecs.DEFLATE, 64);
+        byte[] data = bytes.serialize(random);
+        // 压缩后没有变小，原样保存；首字节与头字节冲突，补一个头字节
+        Assert.assertEquals(random.length + 1, data.length);
+        Assert.assertEquals(CompressingSerializer.HEADER, data[0] & 0xFF);
+        Assert.assertArrayEquals(random, bytes.deserialize(data));
+    }
+
+    @Test
+    public void testCodecReuse() {
+        byte[] first = new byte[100000];
+        byte[] second = new byte[300];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = (byte) (i % 7);
+        }
+        Serializer<byte[]> bytes = new CompressingSerializer<>(Serializers.BYTES, Codecs.DEFLATE, 64);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertArrayEquals(first, bytes.deserialize(bytes.serialize(first)));
+            Assert.assertArrayEquals(second, bytes.deserialize(bytes.serialize(second)));
+        }
+        Assert.assertSame(Codecs.DEFLATE, Codecs.get(DeflateCodec.ID));
+    }
+}
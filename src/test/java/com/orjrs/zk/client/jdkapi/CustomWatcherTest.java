@@ -1,9 +1,16 @@
 package com.orjrs.zk.client.jdkapi;
 
+import com.orjrs.zk.client.serializer.Serializer;
 import lombok.extern.log4j.Log4j2;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Zk自定义监听器
  *
@@ -16,6 +23,9 @@ public class CustomWatcherTest {
     public static final String ORJRS_WATCHER = "/orjrs_watcher";
     public static final String DATA = "我是自定义监控测试节点";
     public static final String UPDATE_DATA = "我是自定义监控测试节点->更新后的数据";
+    public static final String ORJRS_ASYNC = "/orjrs_async";
+    public static final String ORJRS_BATCH = "/orjrs_batch";
+    public static final int OPS = 2000;
 
     @Test
     public void test() {
@@ -34,4 +44,97 @@ public class CustomWatcherTest {
         }
 
     }
+
+    @Test
+    public void testAsync() throws Exception {
+        CustomWatcher customWatcher = new CustomWatcher();
+        customWatcher.createConnection();
+        Assert.assertEquals(ORJRS_ASYNC, customWatcher.createPathAsync(ORJRS_ASYNC, DATA).get());
+        Assert.assertEquals(DATA, customWatcher.readPathAsync(ORJRS_ASYNC).get());
+        customWatcher.writePathAsync(ORJRS_ASYNC, UPDATE_DATA).get();
+        Assert.assertEquals(UPDATE_DATA, customWatcher.readPathAsync(ORJRS_ASYNC).get());
+        customWatcher.deletePathAsync(ORJRS_ASYNC).get();
+        try {
+            customWatcher.readPathAsync(ORJRS_ASYNC).join();
+            Assert.fail();
+        } catch (Exception e) {
+            Assert.assertTrue(e.getCause() instanceof org.apache.zookeeper.KeeperException.NoNodeException);
+        }
+        customWatcher.releaseConnection();
+    }
+
+    @Test
+    public void testAsyncDeserializeFailure() throws Exception {
+        CustomWatcher customWatcher = new CustomWatcher();
+        customWatcher.createConnection();
+        customWatcher.createPathAsync(ORJRS_ASYNC, DATA).exceptionally(e -> null).get();
+        Serializer<String> broken = new Serializer<String>() {
+            @Override
+            public byte[] serialize(String value) {
+                return value.getBytes();
+            }
+
+            @Override
+            public String deserialize(byte[] data) {
+                throw new IllegalArgumentException("bad header");
+            }
+        };
+        try {
+            customWatcher.readPathAsync(ORJRS_ASYNC, broken).get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        customWatcher.deletePathAsync(ORJRS_ASYNC).get();
+        customWatcher.releaseConnection();
+    }
+
+    /**
+     * 单会话上同时保持全部异步读取在途，每个请求都返回自己的结果，吞吐对比见 CustomWatcherBenchmark
+     */
+    @Test
+    public void testAsyncPipelined() throws Exception {
+        CustomWatcher customWatcher = new CustomWatcher();
+        customWatcher.createConnection();
+        customWatcher.createPathAsync(ORJRS_ASYNC, DATA).exceptionally(e -> null).get();
+
+        List<CompletableFuture<String>> futures = new ArrayList<>(OPS);
+        for (int i = 0; i < OPS; i++) {
+            futures.add(customWatcher.readPathAsync(ORJRS_ASYNC));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        for (CompletableFuture<String> future : futures) {
+            Assert.assertEquals(DATA, future.get());
+        }
+        customWatcher.deletePathAsync(ORJRS_ASYNC).get();
+        customWatcher.releaseConnection();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        CustomWatcher customWatcher = new CustomWatcher();
+        customWatcher.createConnection();
+        ZkBatch batch = customWatcher.batch().maxBytes(64 * 1024);
+        batch.create(ORJRS_BATCH, DATA);
+        for (int i = 0; i < OPS; i++) {
+            batch.create(ORJRS_BATCH + "/node" + i, DATA);
+        }
+        List<ZkBatch.OpOutcome> outcomes = batch.flush();
+        Assert.assertEquals(OPS + 1, outcomes.size());
+        Assert.assertTrue(outcomes.stream().allMatch(ZkBatch.OpOutcome::isOk));
+
+        // 版本检查失败时整个 multi 回滚
+        outcomes = customWatcher.batch().check(ORJRS_BATCH, 100).delete(ORJRS_BATCH + "/node0").flush();
+        Assert.assertEquals(org.apache.zookeeper.KeeperException.Code.BADVERSION, outcomes.get(0).getCode());
+        Assert.assertFalse(outcomes.get(1).isOk());
+        Assert.assertNotNull(customWatcher.readPath(ORJRS_BATCH + "/node0"));
+
+        batch = customWatcher.batch();
+        for (int i = 0; i < OPS; i++) {
+            batch.delete(ORJRS_BATCH + "/node" + i);
+        }
+        batch.delete(ORJRS_BATCH);
+        Assert.assertTrue(batch.flush().stream().allMatch(ZkBatch.OpOutcome::isOk));
+        customWatcher.releaseConnection();
+    }
 }
@@ -0,0 +1,76 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 不可变哈希映射测试
+ *
+ * @author orjrs
+ * @create 2020-09-19 15:40
+ * @since 1.0.0
+ */
+public class PersistentHashMapTest {
+
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(42);
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100000; i++) {
+            String key = "/orjrs/n" + random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        Assert.assertEquals(expected, map);
+        Assert.assertEquals(map, expected);
+        for (int i = 0; i < 5000; i++) {
+            String key = "/orjrs/n" + i;
+            Assert.assertEquals(expected.get(key), map.get(key));
+            Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void testOldVersionUnchanged() {
+        PersistentHashMap<String, String> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, String> first = empty.plus("/a", "1").plus("/b", "2");
+        PersistentHashMap<String, String> second = first.plus("/a", "3").minus("/b");
+        Assert.assertEquals(0, empty.size());
+        Assert.assertEquals("1", first.get("/a"));
+        Assert.assertEquals("2", first.get("/b"));
+        Assert.assertEquals("3", second.get("/a"));
+        Assert.assertNull(second.get("/b"));
+        Assert.assertSame(second, second.minus("/missing"));
+        try {
+            second.put("/c", "4");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // 不可变
+        }
+    }
+
+    @Test
+    public void testHashCollision() {
+        // "Aa" 与 "BB" 的 hashCode 相同
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("Aa", 1).plus("BB", 2);
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals(Integer.valueOf(1), map.get("Aa"));
+        Assert.assertEquals(Integer.valueOf(2), map.get("BB"));
+        map = map.minus("Aa");
+        Assert.assertEquals(1, map.size());
+        Assert.assertNull(map.get("Aa"));
+        Assert.assertEquals(Integer.valueOf(2), map.get("BB"));
+        Assert.assertTrue(map.minus("BB").isEmpty());
+    }
+}
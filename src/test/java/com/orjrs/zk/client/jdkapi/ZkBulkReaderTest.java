@@ -0,0 +1,146 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 批量读取子节点测试
+ *
+ * @author orjrs
+ * @create 2020-07-18 18:00
+ * @since 1.0.0
+ */
+public class ZkBulkReaderTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_BULK = "/orjrs_bulk";
+
+    /** 发出的异步 getData 数 */
+    private final AtomicInteger reads = new AtomicInteger();
+
+    /** 列出子节点后删除的子节点 */
+    private final AtomicReference<String> deleteAfterList = new AtomicReference<>();
+
+    /** 发出异步 getData 后中断调用线程 */
+    private volatile boolean interruptOnRead;
+
+    private ZooKeeper zk;
+
+    @Before
+    public void setUp() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        zk = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }) {
+            @Override
+            public List<String> getChildren(String path, boolean watch) throws KeeperException, InterruptedException {
+                List<String> children = super.getChildren(path, watch);
+                String deleted = deleteAfterList.getAndSet(null);
+                if (null != deleted) {
+                    delete(path + "/" + deleted, -1);
+                }
+                return children;
+            }
+
+            @Override
+            public void getData(String path, boolean watch, AsyncCallback.DataCallback cb, Object ctx) {
+                reads.incrementAndGet();
+                super.getData(path, watch, cb, ctx);
+                if (interruptOnRead) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        connected.await();
+        zk.create(ORJRS_BULK, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        for (int i = 0; i < 50; i++) {
+            zk.create(String.format("%s/n%02d", ORJRS_BULK, i), ("v" + i).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // 子节点可能不可读，不能用 ZkTreeDeleter
+        for (String child : zk.getChildren(ORJRS_BULK, false)) {
+            zk.delete(ORJRS_BULK + "/" + child, -1);
+        }
+        zk.delete(ORJRS_BULK, -1);
+        zk.close();
+    }
+
+    @Test
+    public void testSkipDeleted() throws Exception {
+        deleteAfterList.set("n07");
+        Map<String, byte[]> children = new ZkBulkReader(zk, 8).readChildren(ORJRS_BULK);
+        Assert.assertEquals(49, children.size());
+        Assert.assertFalse(children.containsKey("n07"));
+        Assert.assertArrayEquals("v8".getBytes(), children.get("n08"));
+        Assert.assertEquals("n00", children.keySet().iterator().next());
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        Iterator<ZkBulkReader.Node> iterator = new ZkBulkReader(zk, 4).streamChildren(ORJRS_BULK);
+        Thread.sleep(200);
+        // 未消费时只发出一个窗口
+        Assert.assertEquals(4, reads.get());
+        iterator.next();
+        Assert.assertEquals(5, reads.get());
+        int count = 1;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(50, count);
+        Assert.assertEquals(50, reads.get());
+    }
+
+    @Test
+    public void testStopOnError() throws Exception {
+        // 排在最前且不可读的子节点
+        List<ACL> noRead = Collections.singletonList(new ACL(ZooDefs.Perms.ALL & ~ZooDefs.Perms.READ, ZooDefs.Ids.ANYONE_ID_UNSAFE));
+        zk.create(ORJRS_BULK + "/a", new byte[0], noRead, CreateMode.PERSISTENT);
+        try {
+            new ZkBulkReader(zk, 4).readChildrenWithStat(ORJRS_BULK);
+            Assert.fail();
+        } catch (KeeperException.NoAuthException e) {
+            // 读取失败
+        }
+        Thread.sleep(200);
+        // 失败后不再发送剩余请求
+        Assert.assertEquals(4, reads.get());
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        interruptOnRead = true;
+        try {
+            new ZkBulkReader(zk, 4).readChildrenWithStat(ORJRS_BULK);
+            Assert.fail();
+        } catch (InterruptedException e) {
+            // 中断以受检异常抛出
+        } finally {
+            interruptOnRead = false;
+        }
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,152 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 分块存储测试
+ *
+ * @author orjrs
+ * @create 2020-10-10 16:00
+ * @since 1.0.0
+ */
+public class ZkChunkedValueTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_CHUNKED = "/orjrs_chunked";
+
+    private ZooKeeper zk;
+
+    private ZkChunkedValue chunked;
+
+    @Before
+    public void setUp() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        zk = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        chunked = new ZkChunkedValue(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        chunked.delete(ORJRS_CHUNKED);
+        zk.close();
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        try {
+            chunked.read(ORJRS_CHUNKED);
+            Assert.fail();
+        } catch (KeeperException.NoNodeException e) {
+            // 尚未写入
+        }
+        // 超过 jute.maxbuffer
+        byte[] large = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(large);
+        Assert.assertEquals(1L, chunked.write(ORJRS_CHUNKED, large));
+        Assert.assertArrayEquals(large, chunked.read(ORJRS_CHUNKED));
+        Assert.assertEquals(7, zk.getChildren(ORJRS_CHUNKED, false).size());
+
+        // 覆盖后旧分块被删除
+        byte[] small = "small".getBytes();
+        Assert.assertEquals(2L, chunked.write(ORJRS_CHUNKED, small));
+        Assert.assertArrayEquals(small, chunked.read(ORJRS_CHUNKED));
+        Assert.assertEquals(1, zk.getChildren(ORJRS_CHUNKED, false).size());
+
+        Assert.assertEquals(3L, chunked.write(ORJRS_CHUNKED, new byte[0]));
+        Assert.assertEquals(0, chunked.read(ORJRS_CHUNKED).length);
+    }
+
+    @Test
+    public void testNoMixedVersion() throws Exception {
+        // 每个版本的所有字节相同，读到混合版本时字节不一致
+        chunked.chunkSize(64 * 1024);
+        chunked.write(ORJRS_CHUNKED, filled(0));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            ZkChunkedValue reading = new ZkChunkedValue(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+            try {
+                for (int i = 0; i < 50; i++) {
+                    byte[] data = reading.read(ORJRS_CHUNKED);
+                    Assert.assertArrayEquals(filled(data[0]), data);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 1; i <= 20; i++) {
+            chunked.write(ORJRS_CHUNKED, filled(i));
+        }
+        reader.join();
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+    }
+
+    @Test
+    public void testConcurrentWriterAfterStaleChunks() throws Exception {
+        chunked.chunkSize(4);
+        chunked.write(ORJRS_CHUNKED, "aaaabbbb".getBytes());
+        // 旧分块被部分清理，替换清单的 multi 以 NoNode 失败
+        zk.delete(ORJRS_CHUNKED + "/" + zk.getChildren(ORJRS_CHUNKED, false).get(0), -1);
+
+        AtomicBoolean raced = new AtomicBoolean();
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper racing = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }) {
+            @Override
+            public List<OpResult> multi(Iterable<Op> ops) throws InterruptedException, KeeperException {
+                try {
+                    return super.multi(ops);
+                } catch (KeeperException.NoNodeException e) {
+                    // 重试之前另一个写入者完成替换
+                    if (raced.compareAndSet(false, true)) {
+                        chunked.write(ORJRS_CHUNKED, "other".getBytes());
+                    }
+                    throw e;
+                }
+            }
+        };
+        try {
+            connected.await();
+            new ZkChunkedValue(racing, ZooDefs.Ids.OPEN_ACL_UNSAFE).chunkSize(4).write(ORJRS_CHUNKED, "racer-data".getBytes());
+            Assert.fail();
+        } catch (KeeperException.BadVersionException e) {
+            // 并发写入失败
+        } finally {
+            racing.close();
+        }
+        Assert.assertTrue(raced.get());
+        Assert.assertArrayEquals("other".getBytes(), chunked.read(ORJRS_CHUNKED));
+        // 只剩胜出版本的 2 个分块：残留的旧分块和失败写入的分块都已删除
+        Assert.assertEquals(2, zk.getChildren(ORJRS_CHUNKED, false).size());
+    }
+
+    private static byte[] filled(int value) {
+        byte[] data = new byte[512 * 1024];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+}
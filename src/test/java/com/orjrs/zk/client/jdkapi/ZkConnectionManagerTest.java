@@ -0,0 +1,104 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接管理测试
+ *
+ * @author orjrs
+ * @create 2020-09-26 15:30
+ * @since 1.0.0
+ */
+public class ZkConnectionManagerTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    /** 不可用的地址 */
+    public static final String DOWN_ADDR = "127.0.0.1:1";
+    public static final String ORJRS_CHROOT = "/orjrs_chroot";
+
+    @Test
+    public void testConnect() throws Exception {
+        try (ZkConnectionManager manager = new ZkConnectionManager(SERVER_ADDR, 10000, null)) {
+            Assert.assertEquals(ZkConnectionManager.State.LATENT, manager.getState());
+            ZkConnectionManager.Session session = manager.connect(10, TimeUnit.SECONDS).get();
+            Assert.assertEquals(ZkConnectionManager.State.CONNECTED, manager.getState());
+            Assert.assertEquals(1, session.getGeneration());
+            // 再次调用返回同一会话
+            Assert.assertSame(session, manager.connect(10, TimeUnit.SECONDS).get());
+        }
+    }
+
+    @Test
+    public void testChroot() throws Exception {
+        try (ZkConnectionManager root = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+             ZkConnectionManager chroot = new ZkConnectionManager(SERVER_ADDR, ORJRS_CHROOT, 10000, null)) {
+            ZooKeeper rootZk = root.connect(10, TimeUnit.SECONDS).get().getZooKeeper();
+            rootZk.create(ORJRS_CHROOT, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            try {
+                ZooKeeper zk = chroot.connect(10, TimeUnit.SECONDS).get().getZooKeeper();
+                zk.create("/child", "v".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                Assert.assertArrayEquals("v".getBytes(), rootZk.getData(ORJRS_CHROOT + "/child", false, null));
+            } finally {
+                new ZkTreeDeleter(rootZk).deleteRecursive(ORJRS_CHROOT);
+            }
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        try (ZkConnectionManager manager = new ZkConnectionManager(DOWN_ADDR, 10000, null)) {
+            long start = System.currentTimeMillis();
+            try {
+                manager.connect(500, TimeUnit.MILLISECONDS).get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof KeeperException.ConnectionLossException);
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+            Assert.assertEquals(ZkConnectionManager.State.CONNECTING, manager.getState());
+        }
+    }
+
+    @Test
+    public void testOneMemberDown() throws Exception {
+        try (ZkConnectionManager manager = new ZkConnectionManager(DOWN_ADDR + "," + SERVER_ADDR, 10000, null)) {
+            manager.connect(5, TimeUnit.SECONDS).get();
+            Assert.assertEquals(ZkConnectionManager.State.CONNECTED, manager.getState());
+        }
+    }
+
+    @Test
+    public void testRebuildOnExpired() throws Exception {
+        try (ZkConnectionManager manager = new ZkConnectionManager(SERVER_ADDR, 10000, null)) {
+            ZkConnectionManager.Session first = manager.connect(10, TimeUnit.SECONDS).get();
+            // 用同一会话 ID 建立连接后关闭，使原会话过期
+            ZooKeeper zk = first.getZooKeeper();
+            CountDownLatch connected = new CountDownLatch(1);
+            ZooKeeper other = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+                if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                    connected.countDown();
+                }
+            }, zk.getSessionId(), zk.getSessionPasswd());
+            // 连上之前关闭不会使原会话过期
+            connected.await();
+            other.close();
+            for (int i = 0; i < 500 && manager.getSession().isDone(); i++) {
+                Thread.sleep(10);
+            }
+            ZkConnectionManager.Session second = manager.getSession().get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(2, second.getGeneration());
+            Assert.assertNotEquals(first.getSessionId(), second.getSessionId());
+            Assert.assertEquals(ZkConnectionManager.State.CONNECTED, manager.getState());
+        }
+    }
+}
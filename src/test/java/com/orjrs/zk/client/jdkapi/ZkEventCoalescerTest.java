@@ -0,0 +1,57 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 事件合并测试
+ *
+ * @author orjrs
+ * @create 2020-08-15 14:20
+ * @since 1.0.0
+ */
+public class ZkEventCoalescerTest {
+
+    public static final String PARENT_PATH = "/testZkWatch";
+
+    @Test
+    public void testStormIsMerged() throws Exception {
+        List<WatchedEvent> events = new CopyOnWriteArrayList<>();
+        ZkEventCoalescer coalescer = new ZkEventCoalescer(events::add, 50L, 200L);
+        for (int i = 0; i < 100; i++) {
+            coalescer.process(childrenChanged());
+        }
+        coalescer.process(new WatchedEvent(Watcher.Event.EventType.None, Watcher.Event.KeeperState.SyncConnected, null));
+        // 连接状态事件直接转发
+        Assert.assertEquals(1, events.size());
+        Thread.sleep(150L);
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(Watcher.Event.EventType.NodeChildrenChanged, events.get(1).getType());
+        Assert.assertEquals(101, coalescer.getReceived());
+        coalescer.close();
+    }
+
+    @Test
+    public void testMaxDelay() throws Exception {
+        List<WatchedEvent> events = new CopyOnWriteArrayList<>();
+        ZkEventCoalescer coalescer = new ZkEventCoalescer(events::add, 50L, 120L);
+        // 持续不断的事件不会无限推迟回调
+        long end = System.currentTimeMillis() + 300L;
+        while (System.currentTimeMillis() < end) {
+            coalescer.process(childrenChanged());
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue(events.size() >= 2);
+        Assert.assertTrue(events.size() < 10);
+        coalescer.close();
+    }
+
+    private static WatchedEvent childrenChanged() {
+        return new WatchedEvent(Watcher.Event.EventType.NodeChildrenChanged, Watcher.Event.KeeperState.SyncConnected, PARENT_PATH);
+    }
+}
@@ -0,0 +1,82 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事件分发器测试
+ *
+ * @author orjrs
+ * @create 2020-08-08 15:00
+ * @since 1.0.0
+ */
+public class ZkEventDispatcherTest {
+
+    public static final String SLOW_PATH = "/orjrs_slow";
+    public static final String FAST_PATH = "/orjrs_fast";
+
+    @Test
+    public void testSlowPathDoesNotBlockOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fast = new CountDownLatch(1);
+        CountDownLatch connected = new CountDownLatch(1);
+        ZkEventDispatcher dispatcher = new ZkEventDispatcher(event -> {
+            try {
+                if (SLOW_PATH.equals(event.getPath())) {
+                    release.await();
+                } else if (FAST_PATH.equals(event.getPath())) {
+                    fast.countDown();
+                } else {
+                    connected.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 8, 16);
+
+        // 保证两个路径落在不同的工作线程
+        Assert.assertNotEquals(dispatcher.index(SLOW_PATH), dispatcher.index(FAST_PATH));
+        dispatcher.process(nodeEvent(SLOW_PATH));
+        dispatcher.process(nodeEvent(FAST_PATH));
+        dispatcher.process(new WatchedEvent(Watcher.Event.EventType.None, Watcher.Event.KeeperState.SyncConnected, null));
+
+        Assert.assertTrue(fast.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(connected.await(1, TimeUnit.SECONDS));
+        release.countDown();
+        dispatcher.close();
+    }
+
+    @Test
+    public void testSamePathKeepsOrder() throws Exception {
+        List<Watcher.Event.EventType> types = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(300);
+        ZkEventDispatcher dispatcher = new ZkEventDispatcher(event -> {
+            types.add(event.getType());
+            done.countDown();
+        }, 4, 8);
+        for (int i = 0; i < 100; i++) {
+            dispatcher.process(new WatchedEvent(Watcher.Event.EventType.NodeCreated, Watcher.Event.KeeperState.SyncConnected, FAST_PATH));
+            dispatcher.process(new WatchedEvent(Watcher.Event.EventType.NodeDataChanged, Watcher.Event.KeeperState.SyncConnected, FAST_PATH));
+            dispatcher.process(new WatchedEvent(Watcher.Event.EventType.NodeDeleted, Watcher.Event.KeeperState.SyncConnected, FAST_PATH));
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < types.size(); i += 3) {
+            Assert.assertEquals(Watcher.Event.EventType.NodeCreated, types.get(i));
+            Assert.assertEquals(Watcher.Event.EventType.NodeDataChanged, types.get(i + 1));
+            Assert.assertEquals(Watcher.Event.EventType.NodeDeleted, types.get(i + 2));
+        }
+        Assert.assertEquals(300, dispatcher.getDispatched());
+        dispatcher.close();
+    }
+
+    private static WatchedEvent nodeEvent(String path) {
+        return new WatchedEvent(Watcher.Event.EventType.NodeDataChanged, Watcher.Event.KeeperState.SyncConnected, path);
+    }
+}
@@ -0,0 +1,80 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线性一致读测试
+ *
+ * @author orjrs
+ * @create 2020-11-01 14:30
+ * @since 1.0.0
+ */
+public class ZkLinearizableReaderTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_SYNC = "/orjrs_sync";
+
+    private ZkConnectionManager reader;
+
+    private ZkConnectionManager writer;
+
+    @Before
+    public void setUp() throws Exception {
+        reader = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        writer = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        reader.connect(10, TimeUnit.SECONDS).get();
+        writer.connect(10, TimeUnit.SECONDS).get().getZooKeeper()
+                .create(ORJRS_SYNC, "v0".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new ZkTreeDeleter(writer.getZooKeeper()).deleteRecursive(ORJRS_SYNC);
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testReadSeesOtherSessionWrite() throws Exception {
+        ZkLinearizableReader linearizable = new ZkLinearizableReader(reader);
+        ZooKeeper zk = writer.getZooKeeper();
+        for (int i = 1; i <= 20; i++) {
+            zk.setData(ORJRS_SYNC, ("v" + i).getBytes(), -1);
+            Assert.assertArrayEquals(("v" + i).getBytes(), linearizable.read(ORJRS_SYNC));
+        }
+        Assert.assertEquals(20L, linearizable.getSyncs());
+        try {
+            linearizable.read(ORJRS_SYNC + "/missing");
+            Assert.fail();
+        } catch (KeeperException.NoNodeException e) {
+            // 节点不存在
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersShareSync() throws Exception {
+        ZkLinearizableReader linearizable = new ZkLinearizableReader(reader);
+        List<CompletableFuture<byte[]>> reads = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            reads.add(linearizable.readAsync(ORJRS_SYNC));
+        }
+        for (CompletableFuture<byte[]> read : reads) {
+            Assert.assertArrayEquals("v0".getBytes(), read.get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(200L, linearizable.getCallers());
+        // 第一个调用方立即发出，其余合并到下一个
+        Assert.assertEquals(2L, linearizable.getSyncs());
+    }
+}
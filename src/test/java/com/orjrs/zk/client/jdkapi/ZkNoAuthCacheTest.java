@@ -0,0 +1,49 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.ZooDefs;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 无权限结果缓存测试
+ *
+ * @author orjrs
+ * @create 2020-10-18 17:00
+ * @since 1.0.0
+ */
+public class ZkNoAuthCacheTest {
+
+    public static final String PATH = "/orjrs_auth";
+
+    @Test
+    public void testTtl() throws Exception {
+        ZkNoAuthCache cache = new ZkNoAuthCache(100L, 16);
+        Assert.assertFalse(cache.isDenied("654321", PATH, ZooDefs.Perms.READ));
+        cache.deny("654321", PATH, ZooDefs.Perms.READ);
+        Assert.assertTrue(cache.isDenied("654321", PATH, ZooDefs.Perms.READ));
+        // 按密钥和路径区分
+        Assert.assertFalse(cache.isDenied("123456", PATH, ZooDefs.Perms.READ));
+        Assert.assertFalse(cache.isDenied("654321", PATH + "/child", ZooDefs.Perms.READ));
+        Assert.assertFalse(cache.isDenied("654321", PATH, ZooDefs.Perms.WRITE));
+        Assert.assertEquals(1L, cache.getHits());
+        Thread.sleep(150L);
+        Assert.assertFalse(cache.isDenied("654321", PATH, ZooDefs.Perms.READ));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidateAndBound() {
+        ZkNoAuthCache cache = new ZkNoAuthCache(60000L, 4);
+        cache.deny("a", PATH, ZooDefs.Perms.READ);
+        cache.deny("b", PATH, ZooDefs.Perms.READ);
+        cache.deny("a", PATH + "/child", ZooDefs.Perms.READ);
+        cache.invalidate(PATH);
+        Assert.assertFalse(cache.isDenied("a", PATH, ZooDefs.Perms.READ));
+        Assert.assertFalse(cache.isDenied("b", PATH, ZooDefs.Perms.READ));
+        Assert.assertTrue(cache.isDenied("a", PATH + "/child", ZooDefs.Perms.READ));
+        for (int i = 0; i < 10; i++) {
+            cache.deny("k" + i, PATH, ZooDefs.Perms.READ);
+        }
+        Assert.assertTrue(cache.size() <= 4);
+    }
+}
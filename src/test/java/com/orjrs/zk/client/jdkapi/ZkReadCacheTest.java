@@ -0,0 +1,148 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 读缓存测试
+ *
+ * @author orjrs
+ * @create 2020-07-25 15:30
+ * @since 1.0.0
+ */
+public class ZkReadCacheTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_CACHE = "/orjrs_cache";
+
+    private ZooKeeper zk;
+
+    @Before
+    public void setUp() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        zk = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        zk.create(ORJRS_CACHE, "v1".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (String child : zk.getChildren(ORJRS_CACHE, false)) {
+            zk.delete(ORJRS_CACHE + "/" + child, -1);
+        }
+        zk.delete(ORJRS_CACHE, -1);
+        zk.close();
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ZkReadCache cache = new ZkReadCache(zk, 100);
+        Assert.assertEquals("v1", new String(cache.getData(ORJRS_CACHE)));
+        Assert.assertEquals("v1", new String(cache.getData(ORJRS_CACHE)));
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+
+        zk.setData(ORJRS_CACHE, "v2".getBytes(), -1);
+        // 等待 NodeDataChanged 使缓存失效
+        for (int i = 0; i < 100 && cache.getInvalidations() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("v2", new String(cache.getData(ORJRS_CACHE)));
+        Assert.assertEquals(2, cache.getMisses());
+
+        // 不存在的节点同样缓存，创建后失效
+        String child = ORJRS_CACHE + "/child";
+        Assert.assertNull(cache.exists(child));
+        Assert.assertNull(cache.exists(child));
+        zk.create(child, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        for (int i = 0; i < 100 && cache.getInvalidations() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertNotNull(cache.exists(child));
+    }
+
+    @Test
+    public void testInvalidateDuringFill() throws Exception {
+        String other = ORJRS_CACHE + "/other";
+        zk.create(other, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        AtomicReference<String> invalidating = new AtomicReference<>();
+        AtomicReference<ZkReadCache> holder = new AtomicReference<>();
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper hooked = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }) {
+            @Override
+            public byte[] getData(String path, Watcher watcher, Stat stat) throws KeeperException, InterruptedException {
+                byte[] data = super.getData(path, watcher, stat);
+                // 读取期间发生失效
+                String target = invalidating.getAndSet(null);
+                if (null != target) {
+                    holder.get().invalidate(target);
+                }
+                return data;
+            }
+        };
+        try {
+            connected.await();
+            ZkReadCache cache = new ZkReadCache(hooked, 100);
+            holder.set(cache);
+
+            // 其他路径失效不影响本次结果写入
+            invalidating.set(other);
+            cache.getData(ORJRS_CACHE);
+            cache.getData(ORJRS_CACHE);
+            Assert.assertEquals(1, cache.getHits());
+
+            // 本路径失效时结果不写入
+            cache.invalidate(ORJRS_CACHE);
+            invalidating.set(ORJRS_CACHE);
+            cache.getData(ORJRS_CACHE);
+            cache.getData(ORJRS_CACHE);
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(3, cache.getMisses());
+        } finally {
+            hooked.close();
+        }
+    }
+
+    @Test
+    public void testGetDataAfterExists() throws Exception {
+        ZkReadCache cache = new ZkReadCache(zk, 100);
+        Assert.assertNotNull(cache.exists(ORJRS_CACHE));
+        Assert.assertEquals("v1", new String(cache.getData(ORJRS_CACHE)));
+        // 只有状态的缓存被数据替换，第二次读取命中
+        Assert.assertEquals("v1", new String(cache.getData(ORJRS_CACHE)));
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertNotNull(cache.exists(ORJRS_CACHE));
+        Assert.assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+        ZkReadCache cache = new ZkReadCache(zk, 2);
+        for (int i = 0; i < 3; i++) {
+            zk.create(ORJRS_CACHE + "/n" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            cache.getData(ORJRS_CACHE + "/n" + i);
+        }
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+}
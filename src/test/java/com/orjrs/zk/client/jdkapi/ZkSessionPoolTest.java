@@ -0,0 +1,97 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 授权会话池测试
+ *
+ * @author orjrs
+ * @create 2020-08-01 16:30
+ * @since 1.0.0
+ */
+public class ZkSessionPoolTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+
+    private ZkSessionPool pool;
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        pool = new ZkSessionPool(SERVER_ADDR, 10000, 4, 60000);
+        ZooKeeper first = pool.withSession("digest", "orjrs:123", zk -> zk);
+        ZooKeeper second = pool.withSession("digest", "orjrs:123", zk -> zk);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(ZooKeeper.States.CONNECTED, first.getState());
+        Assert.assertNotSame(first, pool.withSession("digest", "other:456", zk -> zk));
+        Assert.assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        pool = new ZkSessionPool(SERVER_ADDR, 10000, 4, 200);
+        ZooKeeper zk = pool.withSession("digest", "orjrs:123", session -> session);
+        Assert.assertEquals(1, pool.size());
+        for (int i = 0; i < 100 && 0 < pool.size(); i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, pool.size());
+        Assert.assertFalse(zk.getState().isAlive());
+        Assert.assertNotSame(zk, pool.withSession("digest", "orjrs:123", session -> session));
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        pool = new ZkSessionPool(SERVER_ADDR, 10000, 2, 60000);
+        ZooKeeper eldest = pool.withSession("digest", "a:1", zk -> zk);
+        Thread.sleep(10);
+        // 使用中的会话不会被淘汰，暂时允许超出
+        ZooKeeper inUse = pool.withSession("digest", "b:2", zk -> {
+            pool.withSession("digest", "c:3", other -> other);
+            Assert.assertEquals(2, pool.size());
+            return zk;
+        });
+        Assert.assertFalse(eldest.getState().isAlive());
+        Assert.assertTrue(inUse.getState().isAlive());
+        pool.withSession("digest", "d:4", zk -> zk);
+        Assert.assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testExpiryRemoval() throws Exception {
+        pool = new ZkSessionPool(SERVER_ADDR, 10000, 4, 60000);
+        ZooKeeper zk = pool.withSession("digest", "orjrs:123", session -> session);
+        expire(zk);
+        for (int i = 0; i < 500 && 0 < pool.size(); i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, pool.size());
+        ZooKeeper renewed = pool.withSession("digest", "orjrs:123", session -> session);
+        Assert.assertNotSame(zk, renewed);
+        Assert.assertEquals(ZooKeeper.States.CONNECTED, renewed.getState());
+    }
+
+    /**
+     * 用同一会话 ID 连上后关闭，使原会话过期
+     */
+    private static void expire(ZooKeeper zk) throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper other = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }, zk.getSessionId(), zk.getSessionPasswd());
+        connected.await();
+        other.close();
+    }
+}
@@ -0,0 +1,127 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话过期恢复测试
+ *
+ * @author orjrs
+ * @create 2020-10-31 15:00
+ * @since 1.0.0
+ */
+public class ZkSessionRecoveryTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_RECOVERY = "/orjrs_recovery";
+
+    private ZkConnectionManager manager;
+
+    private ZkSessionRecovery recovery;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        ZooKeeper zk = manager.connect(10, TimeUnit.SECONDS).get().getZooKeeper();
+        zk.create(ORJRS_RECOVERY, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        recovery = new ZkSessionRecovery(manager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recovery.close();
+        new ZkTreeDeleter(manager.getSession().get(10, TimeUnit.SECONDS).getZooKeeper()).deleteRecursive(ORJRS_RECOVERY);
+        manager.close();
+    }
+
+    @Test
+    public void testReplayAfterExpiry() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            recovery.createEphemeral(ORJRS_RECOVERY + "/node-" + i, ("v" + i).getBytes(), CreateMode.EPHEMERAL);
+        }
+        String sequential = recovery.createEphemeral(ORJRS_RECOVERY + "/seq-", new byte[0], CreateMode.EPHEMERAL_SEQUENTIAL);
+        recovery.setData(ORJRS_RECOVERY + "/node-0", "changed".getBytes());
+        Assert.assertEquals(51, recovery.getEphemerals());
+
+        expire(manager.getZooKeeper());
+        awaitRecovery();
+        ZooKeeper zk = manager.getZooKeeper();
+        for (int i = 1; i < 50; i++) {
+            Stat stat = new Stat();
+            Assert.assertArrayEquals(("v" + i).getBytes(), zk.getData(ORJRS_RECOVERY + "/node-" + i, false, stat));
+            Assert.assertEquals(zk.getSessionId(), stat.getEphemeralOwner());
+        }
+        // 重建时使用修改后的数据，顺序节点名称不变
+        Assert.assertArrayEquals("changed".getBytes(), zk.getData(ORJRS_RECOVERY + "/node-0", false, null));
+        Assert.assertNotNull(zk.exists(sequential, false));
+        Assert.assertEquals(51L, recovery.getReplayed());
+        Assert.assertTrue(recovery.getLastRecoveryMillis() >= recovery.getLastReplayMillis());
+    }
+
+    @Test
+    public void testDeleteAndConflict() throws Exception {
+        String deleted = recovery.createEphemeral(ORJRS_RECOVERY + "/deleted", new byte[0], CreateMode.EPHEMERAL);
+        String taken = recovery.createEphemeral(ORJRS_RECOVERY + "/taken", new byte[0], CreateMode.EPHEMERAL);
+        String kept = recovery.createEphemeral(ORJRS_RECOVERY + "/kept", new byte[0], CreateMode.EPHEMERAL);
+        recovery.deleteEphemeral(deleted);
+        Assert.assertEquals(2, recovery.getEphemerals());
+
+        ZooKeeper other = connect();
+        try {
+            expire(manager.getZooKeeper());
+            // 重建会话之前被其他会话抢先创建
+            other.create(taken, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            awaitRecovery();
+            ZooKeeper zk = manager.getZooKeeper();
+            Assert.assertNull(zk.exists(deleted, false));
+            Assert.assertEquals(other.getSessionId(), zk.exists(taken, false).getEphemeralOwner());
+            Assert.assertEquals(zk.getSessionId(), zk.exists(kept, false).getEphemeralOwner());
+            Assert.assertEquals(1L, recovery.getConflicts());
+            Assert.assertEquals(1L, recovery.getReplayed());
+        } finally {
+            other.close();
+        }
+    }
+
+    private void awaitRecovery() throws InterruptedException {
+        for (int i = 0; i < 3000 && 0L == recovery.getRecoveries(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1L, recovery.getRecoveries());
+    }
+
+    private static ZooKeeper connect() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper zk = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        return zk;
+    }
+
+    /**
+     * 用同一会话 ID 连上后关闭，使原会话过期
+     */
+    private static void expire(ZooKeeper zk) throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper other = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }, zk.getSessionId(), zk.getSessionPasswd());
+        connected.await();
+        other.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多会话客户端测试
+ *
+ * @author orjrs
+ * @create 2020-10-03 15:10
+ * @since 1.0.0
+ */
+public class ZkShardedClientTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_SHARDED = "/orjrs_sharded";
+    public static final int SESSIONS = 4;
+
+    @Test
+    public void testRoute() {
+        try (ZkShardedClient client = new ZkShardedClient(SERVER_ADDR, 10000, SESSIONS)) {
+            int[] counts = new int[SESSIONS];
+            for (int i = 0; i < 10000; i++) {
+                String path = ORJRS_SHARDED + "/n" + i;
+                int shard = client.shardOf(path);
+                Assert.assertEquals(shard, client.shardOf(path));
+                counts[shard]++;
+            }
+            for (int count : counts) {
+                Assert.assertTrue(String.valueOf(count), count > 10000 / SESSIONS / 2);
+            }
+        }
+    }
+
+    @Test
+    public void testOperations() throws Exception {
+        try (ZkShardedClient client = new ZkShardedClient(SERVER_ADDR, 10000, SESSIONS)) {
+            client.connect(10, TimeUnit.SECONDS).get();
+            client.create(ORJRS_SHARDED, new byte[0], CreateMode.PERSISTENT);
+            try {
+                for (int i = 0; i < 20; i++) {
+                    client.create(ORJRS_SHARDED + "/n" + i, ("v" + i).getBytes(), CreateMode.PERSISTENT);
+                }
+                for (int i = 0; i < 20; i++) {
+                    client.setDataAsync(ORJRS_SHARDED + "/n" + i, ("w" + i).getBytes(), -1).get();
+                    Assert.assertArrayEquals(("w" + i).getBytes(), client.getDataAsync(ORJRS_SHARDED + "/n" + i).get());
+                }
+                Assert.assertEquals(20, client.getChildren(ORJRS_SHARDED).size());
+
+                // 临时节点固定在指定会话
+                client.setPinned(2);
+                String ephemeral = ORJRS_SHARDED + "/ephemeral";
+                client.create(ephemeral, new byte[0], CreateMode.EPHEMERAL);
+                Stat stat = client.exists(ephemeral);
+                Assert.assertEquals(client.pinned().getSessionId(), stat.getEphemeralOwner());
+            } finally {
+                new ZkTreeDeleter(client.pinned()).deleteRecursive(ORJRS_SHARDED);
+            }
+        }
+    }
+
+    @Test
+    public void testPinnedPathStaysOnPinnedSession() throws Exception {
+        try (ZkShardedClient client = new ZkShardedClient(SERVER_ADDR, 10000, SESSIONS)) {
+            client.connect(10, TimeUnit.SECONDS).get();
+            client.create(ORJRS_SHARDED, new byte[0], CreateMode.PERSISTENT);
+            try {
+                // 哈希到其他会话的路径
+                String path = ORJRS_SHARDED + "/watched";
+                for (int i = 0; 0 == client.shardOf(path); i++) {
+                    path = ORJRS_SHARDED + "/watched" + i;
+                }
+                client.create(path, "v0".getBytes(), CreateMode.PERSISTENT);
+                client.setData(path, "v1".getBytes(), -1);
+                Assert.assertFalse(client.isPinned(path));
+
+                // 注册监听后固定，之前在其他会话上的写入可见
+                CountDownLatch changed = new CountDownLatch(1);
+                Assert.assertArrayEquals("v1".getBytes(), client.getData(path, event -> changed.countDown(), null));
+                Assert.assertTrue(client.isPinned(path));
+                Assert.assertSame(client.pinned(), client.forPath(path));
+                // 修改和删除也走固定会话
+                client.setData(path, "v2".getBytes(), -1);
+                Assert.assertTrue(changed.await(10, TimeUnit.SECONDS));
+                Assert.assertArrayEquals("v2".getBytes(), client.getData(path, null));
+                try {
+                    client.setPinned(1);
+                    Assert.fail();
+                } catch (IllegalStateException e) {
+                    // 已有固定路径
+                }
+
+                String sequential = client.create(ORJRS_SHARDED + "/seq-", new byte[0], CreateMode.EPHEMERAL_SEQUENTIAL);
+                Assert.assertSame(client.pinned(), client.forPath(sequential));
+                client.delete(sequential, -1);
+                Assert.assertNull(client.exists(sequential));
+            } finally {
+                new ZkTreeDeleter(client.pinned()).deleteRecursive(ORJRS_SHARDED);
+            }
+        }
+    }
+
+    @Test
+    public void testUnpin() throws Exception {
+        try (ZkShardedClient client = new ZkShardedClient(SERVER_ADDR, 10000, SESSIONS)) {
+            client.connect(10, TimeUnit.SECONDS).get();
+            client.create(ORJRS_SHARDED, new byte[0], CreateMode.PERSISTENT);
+            try {
+                // 删除后取消固定
+                String deleted = client.create(ORJRS_SHARDED + "/seq-", new byte[0], CreateMode.EPHEMERAL_SEQUENTIAL);
+                Assert.assertTrue(client.isPinned(deleted));
+                client.delete(deleted, -1);
+                Assert.assertFalse(client.isPinned(deleted));
+
+                // 固定会话过期后顺序临时节点取消固定，带监听的路径仍固定
+                String sequential = client.create(ORJRS_SHARDED + "/seq-", new byte[0], CreateMode.EPHEMERAL_SEQUENTIAL);
+                client.exists(ORJRS_SHARDED, event -> {
+                });
+                expire(client.pinned());
+                for (int i = 0; i < 500 && client.isPinned(sequential); i++) {
+                    Thread.sleep(20);
+                }
+                Assert.assertFalse(client.isPinned(sequential));
+                Assert.assertTrue(client.isPinned(ORJRS_SHARDED));
+            } finally {
+                client.connect(10, TimeUnit.SECONDS).get();
+                new ZkTreeDeleter(client.pinned()).deleteRecursive(ORJRS_SHARDED);
+            }
+        }
+    }
+
+    /**
+     * 用同一会话 ID 连上后关闭，使原会话过期
+     */
+    private static void expire(ZooKeeper zk) throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper other = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }, zk.getSessionId(), zk.getSessionPasswd());
+        connected.await();
+        other.close();
+    }
+}
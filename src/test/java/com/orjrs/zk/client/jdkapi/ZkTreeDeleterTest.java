@@ -0,0 +1,87 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 并行递归删除测试
+ *
+ * @author orjrs
+ * @create 2020-09-12 15:40
+ * @since 1.0.0
+ */
+public class ZkTreeDeleterTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_TREE = "/orjrs_tree";
+    public static final int FANOUT = 10;
+
+    private ZooKeeper zk;
+
+    @Before
+    public void setUp() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        zk = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        // 3 层，共 1 + 10 + 100 + 1000 个节点
+        ZkBatch batch = new ZkBatch(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+        batch.create(ORJRS_TREE, "");
+        for (int i = 0; i < FANOUT; i++) {
+            batch.create(ORJRS_TREE + "/a" + i, "");
+            for (int j = 0; j < FANOUT; j++) {
+                batch.create(ORJRS_TREE + "/a" + i + "/b" + j, "");
+                for (int k = 0; k < FANOUT; k++) {
+                    batch.create(ORJRS_TREE + "/a" + i + "/b" + j + "/c" + k, "");
+                }
+            }
+        }
+        batch.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        zk.close();
+    }
+
+    @Test
+    public void testDeleteRecursive() throws Exception {
+        int deleted = new ZkTreeDeleter(zk, 100, 50).deleteRecursive(ORJRS_TREE);
+        Assert.assertEquals(1 + FANOUT + FANOUT * FANOUT + FANOUT * FANOUT * FANOUT, deleted);
+        Assert.assertNull(zk.exists(ORJRS_TREE, false));
+        // 不存在的节点直接返回
+        Assert.assertEquals(0, new ZkTreeDeleter(zk).deleteRecursive(ORJRS_TREE));
+    }
+
+    @Test
+    public void testConcurrentCreate() throws Exception {
+        // 删除期间不断在子树中新增节点，NotEmpty 时重新遍历后删除
+        Thread writer = new Thread(() -> {
+            for (int n = 0; n < 200; n++) {
+                try {
+                    zk.create(ORJRS_TREE + "/a" + (n % FANOUT) + "/new" + n, new byte[0],
+                            ZooDefs.Ids.OPEN_ACL_UNSAFE, org.apache.zookeeper.CreateMode.PERSISTENT);
+                } catch (KeeperException e) {
+                    // 父节点已被删除
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        writer.start();
+        new ZkTreeDeleter(zk, 100, 50).deleteRecursive(ORJRS_TREE);
+        writer.join();
+        Assert.assertNull(zk.exists(ORJRS_TREE, false));
+    }
+}
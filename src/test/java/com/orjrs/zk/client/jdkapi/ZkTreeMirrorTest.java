@@ -0,0 +1,144 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 子树镜像测试
+ *
+ * @author orjrs
+ * @create 2020-09-19 16:10
+ * @since 1.0.0
+ */
+public class ZkTreeMirrorTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_MIRROR = "/orjrs_mirror";
+    public static final int FANOUT = 10;
+
+    private ZooKeeper zk;
+
+    @Before
+    public void setUp() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        zk = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        ZkBatch batch = new ZkBatch(zk, ZooDefs.Ids.OPEN_ACL_UNSAFE);
+        batch.create(ORJRS_MIRROR, "root");
+        for (int i = 0; i < FANOUT; i++) {
+            batch.create(ORJRS_MIRROR + "/a" + i, "a" + i);
+            for (int j = 0; j < FANOUT; j++) {
+                batch.create(ORJRS_MIRROR + "/a" + i + "/b" + j, "b" + j);
+            }
+        }
+        batch.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new ZkTreeDeleter(zk).deleteRecursive(ORJRS_MIRROR);
+        zk.close();
+    }
+
+    @Test
+    public void testMirror() throws Exception {
+        ZkTreeMirror mirror = new ZkTreeMirror(zk, ORJRS_MIRROR);
+        List<String> events = new CopyOnWriteArrayList<>();
+        mirror.addListener((type, node) -> events.add(type + " " + node.getPath()));
+        mirror.start();
+        Assert.assertEquals(1 + FANOUT + FANOUT * FANOUT, mirror.size());
+        Assert.assertEquals("b3", new String(mirror.getData(ORJRS_MIRROR + "/a2/b3")));
+        Assert.assertEquals(FANOUT, mirror.getChildren(ORJRS_MIRROR + "/a2").size());
+        Assert.assertTrue(events.isEmpty());
+
+        zk.setData(ORJRS_MIRROR + "/a2/b3", "v2".getBytes(), -1);
+        waitFor(events, 1);
+        Assert.assertEquals("UPDATED " + ORJRS_MIRROR + "/a2/b3", events.get(0));
+        Assert.assertEquals("v2", new String(mirror.getData(ORJRS_MIRROR + "/a2/b3")));
+
+        zk.create(ORJRS_MIRROR + "/a2/new", "n".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        waitFor(events, 2);
+        Assert.assertEquals("ADDED " + ORJRS_MIRROR + "/a2/new", events.get(1));
+        Assert.assertEquals("n", new String(mirror.getData(ORJRS_MIRROR + "/a2/new")));
+
+        new ZkTreeDeleter(zk).deleteRecursive(ORJRS_MIRROR + "/a5");
+        waitFor(events, 3 + FANOUT);
+        Assert.assertNull(mirror.getNode(ORJRS_MIRROR + "/a5"));
+        Assert.assertNull(mirror.getNode(ORJRS_MIRROR + "/a5/b0"));
+        Assert.assertFalse(mirror.getChildren(ORJRS_MIRROR).contains("a5"));
+        Assert.assertEquals(1 + FANOUT + FANOUT * FANOUT + 1 - (1 + FANOUT), mirror.getSnapshot().size());
+        mirror.close();
+    }
+
+    @Test
+    public void testRootCreatedLater() throws Exception {
+        String root = ORJRS_MIRROR + "/later";
+        ZkTreeMirror mirror = new ZkTreeMirror(zk, root);
+        mirror.start();
+        Assert.assertEquals(0, mirror.size());
+        zk.create(root, "x".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        for (int i = 0; i < 100 && null == mirror.getNode(root); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertArrayEquals("x".getBytes(), mirror.getData(root));
+        Assert.assertEquals(Arrays.asList(), mirror.getChildren(root));
+        mirror.close();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        ZkTreeMirror mirror = new ZkTreeMirror(zk, ORJRS_MIRROR);
+        List<String> events = new CopyOnWriteArrayList<>();
+        // 通知时镜像已发布本次变更
+        mirror.addListener((type, node) -> events.add(new String(mirror.getData(node.getPath()))));
+        mirror.start();
+        Map<String, ZkTreeMirror.Node> snapshot = mirror.getSnapshot();
+        Assert.assertSame(snapshot, mirror.getSnapshot());
+        zk.setData(ORJRS_MIRROR + "/a1", "v2".getBytes(), -1);
+        waitFor(events, 1);
+        Assert.assertEquals(Arrays.asList("v2"), events);
+        // 已返回的快照不受之后的更新影响
+        Assert.assertEquals("a1", new String(snapshot.get(ORJRS_MIRROR + "/a1").getData()));
+        Assert.assertEquals("v2", new String(mirror.getSnapshot().get(ORJRS_MIRROR + "/a1").getData()));
+        mirror.close();
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        ZkTreeMirror mirror = new ZkTreeMirror(zk, ORJRS_MIRROR);
+        mirror.start();
+        Assert.assertTrue(mirror.isValid());
+        mirror.process(new WatchedEvent(Watcher.Event.EventType.None, Watcher.Event.KeeperState.Expired, null));
+        Assert.assertFalse(mirror.isValid());
+        try {
+            mirror.getData(ORJRS_MIRROR);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 过期后不再返回陈旧数据
+        }
+        mirror.close();
+    }
+
+    private static void waitFor(List<String> events, int count) throws InterruptedException {
+        for (int i = 0; i < 200 && events.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 乐观更新测试
+ *
+ * @author orjrs
+ * @create 2020-10-18 15:30
+ * @since 1.0.0
+ */
+public class ZkUpdaterTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_UPDATE = "/orjrs_update";
+
+    private ZooKeeper first;
+
+    private ZooKeeper second;
+
+    @Before
+    public void setUp() throws Exception {
+        first = connect();
+        second = connect();
+        first.create(ORJRS_UPDATE, "0".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        first.delete(ORJRS_UPDATE, -1);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testNoLostUpdate() throws Exception {
+        ZkUpdater one = new ZkUpdater(first);
+        ZkUpdater other = new ZkUpdater(second);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            ZkUpdater updater = 0 == i % 2 ? one : other;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int n = 0; n < 50; n++) {
+                        updater.update(ORJRS_UPDATE, ZkUpdaterTest::increment);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+        Assert.assertEquals("800", new String(first.getData(ORJRS_UPDATE, false, null), StandardCharsets.UTF_8));
+        Assert.assertEquals(800L, one.getUpdates() + other.getUpdates());
+        // 本地合并的更新不单独写入
+        Assert.assertEquals(800L, one.getWrites() + one.getCombined() + other.getWrites() + other.getCombined());
+        Assert.assertEquals(0L, one.getExhausted() + other.getExhausted());
+    }
+
+    @Test
+    public void testConflict() throws Exception {
+        ZkUpdater updater = new ZkUpdater(first).maxRetries(1);
+        try {
+            // 每次更新前都被其他会话修改
+            updater.update(ORJRS_UPDATE, data -> {
+                try {
+                    second.setData(ORJRS_UPDATE, data, -1);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return increment(data);
+            });
+            Assert.fail();
+        } catch (KeeperException.BadVersionException e) {
+            Assert.assertEquals(2L, updater.getConflicts());
+            Assert.assertEquals(1L, updater.getExhausted());
+        }
+        Assert.assertArrayEquals("1".getBytes(), updater.update(ORJRS_UPDATE, ZkUpdaterTest::increment));
+        // 不修改时不写入
+        Assert.assertArrayEquals("1".getBytes(), updater.update(ORJRS_UPDATE, data -> null));
+        Assert.assertEquals(1L, updater.getWrites());
+        try {
+            updater.update(ORJRS_UPDATE + "/none", ZkUpdaterTest::increment);
+            Assert.fail();
+        } catch (KeeperException.NoNodeException e) {
+            // 节点不存在
+        }
+    }
+
+    @Test
+    public void testInterruptAfterWriteSent() throws Exception {
+        ZkUpdater updater = new ZkUpdater(first);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try {
+                updater.update(ORJRS_UPDATE, data -> {
+                    entered.countDown();
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return increment(data);
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        holder.start();
+        entered.await();
+
+        // 两个更新在持锁期间排队，之后合并为一批；其中一个更新函数中断执行写入的线程，setData 随后发出
+        AtomicBoolean interruptOnce = new AtomicBoolean();
+        List<Object> outcomes = new CopyOnWriteArrayList<>();
+        Thread[] waiters = new Thread[2];
+        for (int i = 0; i < waiters.length; i++) {
+            boolean interrupting = 0 == i;
+            waiters[i] = new Thread(() -> {
+                try {
+                    byte[] result = updater.update(ORJRS_UPDATE, data -> {
+                        if (interrupting && interruptOnce.compareAndSet(false, true)) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return increment(data);
+                    });
+                    outcomes.add(Thread.interrupted() ? "interrupted" : new String(result, StandardCharsets.UTF_8));
+                } catch (Exception e) {
+                    outcomes.add(e);
+                }
+            });
+            waiters[i].start();
+        }
+        Thread.sleep(200);
+        gate.countDown();
+        holder.join();
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+        // 每个更新只执行一次，被中断的写入线程正常返回并保留中断标记
+        Assert.assertArrayEquals("3".getBytes(), first.getData(ORJRS_UPDATE, false, null));
+        Assert.assertEquals(2, outcomes.size());
+        Assert.assertTrue(String.valueOf(outcomes), outcomes.contains("interrupted"));
+        Assert.assertEquals(1L, updater.getCombined());
+    }
+
+    private static byte[] increment(byte[] data) {
+        long value = Long.parseLong(new String(data, StandardCharsets.UTF_8));
+        return String.valueOf(value + 1).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ZooKeeper connect() throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper zk = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        return zk;
+    }
+}
@@ -0,0 +1,170 @@
+package com.orjrs.zk.client.jdkapi;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监听复用测试
+ *
+ * @author orjrs
+ * @create 2020-10-24 15:00
+ * @since 1.0.0
+ */
+public class ZkWatchRegistryTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_WATCH = "/orjrs_watch";
+
+    private ZkConnectionManager manager;
+
+    private ZkWatchRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        manager.connect(10, TimeUnit.SECONDS).get();
+        registry = new ZkWatchRegistry(manager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ZooKeeper zk = manager.getSession().get(10, TimeUnit.SECONDS).getZooKeeper();
+        new ZkTreeDeleter(zk).deleteRecursive(ORJRS_WATCH);
+        manager.close();
+    }
+
+    @Test
+    public void testSharedWatch() throws Exception {
+        ZooKeeper zk = manager.getZooKeeper();
+        zk.create(ORJRS_WATCH, "0".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        CountDownLatch[] latches = {new CountDownLatch(100), new CountDownLatch(100)};
+        List<ZkWatchRegistry.Registration> registrations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            registrations.add(registry.watch(ORJRS_WATCH, ZkWatchRegistry.WatchType.DATA, new Watcher() {
+                private int seen;
+
+                @Override
+                public void process(WatchedEvent event) {
+                    if (Event.EventType.NodeDataChanged == event.getType()) {
+                        latches[seen++].countDown();
+                    }
+                }
+            }));
+        }
+        Assert.assertEquals(1, registry.getServerWatches());
+        Assert.assertEquals(100, registry.getListeners());
+        Assert.assertEquals(100, registry.getListenerCount(ORJRS_WATCH, ZkWatchRegistry.WatchType.DATA));
+
+        // 触发后自动重新注册，同一会话的请求按顺序执行，第二次修改一定能收到
+        zk.setData(ORJRS_WATCH, "1".getBytes(), -1);
+        Assert.assertTrue(latches[0].await(10, TimeUnit.SECONDS));
+        zk.setData(ORJRS_WATCH, "2".getBytes(), -1);
+        Assert.assertTrue(latches[1].await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2L, registry.getEvents());
+        Assert.assertEquals(200L, registry.getDeliveries());
+        Assert.assertEquals(3L, registry.getArms());
+
+        for (ZkWatchRegistry.Registration registration : registrations) {
+            registration.close();
+        }
+        Assert.assertEquals(0, registry.getServerWatches());
+        Assert.assertEquals(0, registry.getListeners());
+        Assert.assertEquals(1, registry.getTrieNodes());
+    }
+
+    @Test
+    public void testTrie() throws Exception {
+        Watcher listener = event -> {
+        };
+        ZkWatchRegistry.Registration a = registry.watch(ORJRS_WATCH + "/app/a", ZkWatchRegistry.WatchType.DATA, listener);
+        ZkWatchRegistry.Registration b = registry.watch(ORJRS_WATCH + "/app/b", ZkWatchRegistry.WatchType.DATA, listener);
+        ZkWatchRegistry.Registration children = registry.watch(ORJRS_WATCH + "/app", ZkWatchRegistry.WatchType.CHILDREN, listener);
+        // 根、orjrs_watch、app、a、b
+        Assert.assertEquals(5, registry.getTrieNodes());
+        Assert.assertEquals(3, registry.getServerWatches());
+        Assert.assertEquals(0, registry.getListenerCount(ORJRS_WATCH + "/app", ZkWatchRegistry.WatchType.DATA));
+
+        a.close();
+        Assert.assertEquals(4, registry.getTrieNodes());
+        children.close();
+        Assert.assertEquals(4, registry.getTrieNodes());
+        b.close();
+        Assert.assertEquals(1, registry.getTrieNodes());
+        Assert.assertEquals(0, registry.getServerWatches());
+    }
+
+    @Test
+    public void testChildrenOfMissingNode() throws Exception {
+        LinkedBlockingQueue<Watcher.Event.EventType> events = new LinkedBlockingQueue<>();
+        registry.watch(ORJRS_WATCH, ZkWatchRegistry.WatchType.CHILDREN, event -> {
+            if (Watcher.Event.EventType.None != event.getType()) {
+                events.add(event.getType());
+            }
+        });
+        // 节点不存在时改用 exists 等待创建，NodeCreated 后再注册子节点监听
+        for (int i = 0; i < 500 && registry.getArms() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2L, registry.getArms());
+        ZooKeeper zk = manager.getZooKeeper();
+        zk.create(ORJRS_WATCH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        Assert.assertEquals(Watcher.Event.EventType.NodeCreated, events.poll(10, TimeUnit.SECONDS));
+        zk.create(ORJRS_WATCH + "/child", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        Assert.assertEquals(Watcher.Event.EventType.NodeChildrenChanged, events.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRearmOnNewSession() throws Exception {
+        ZooKeeper zk = manager.getZooKeeper();
+        zk.create(ORJRS_WATCH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        LinkedBlockingQueue<Watcher.Event.EventType> events = new LinkedBlockingQueue<>();
+        registry.watch(ORJRS_WATCH, ZkWatchRegistry.WatchType.DATA, event -> {
+            if (Watcher.Event.EventType.None != event.getType()) {
+                events.add(event.getType());
+            }
+        });
+        long arms = registry.getArms();
+        ZkConnectionManager.Session first = manager.getSession().get();
+        expire(zk);
+        for (int i = 0; i < 3000 && manager.getSession().get(10, TimeUnit.SECONDS) == first; i++) {
+            Thread.sleep(10);
+        }
+        ZooKeeper rebuilt = manager.getSession().get(10, TimeUnit.SECONDS).getZooKeeper();
+        Assert.assertNotSame(zk, rebuilt);
+        // 连上后在状态监听器中重新注册
+        for (int i = 0; i < 500 && registry.getArms() == arms; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(arms + 1, registry.getArms());
+        // 同一会话的请求按顺序执行，修改排在重新注册之后
+        rebuilt.setData(ORJRS_WATCH, "1".getBytes(), -1);
+        Assert.assertEquals(Watcher.Event.EventType.NodeDataChanged, events.poll(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 用同一会话 ID 连上后关闭，使原会话过期
+     */
+    private static void expire(ZooKeeper zk) throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper other = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }, zk.getSessionId(), zk.getSessionPasswd());
+        connected.await();
+        other.close();
+    }
+}
@@ -0,0 +1,199 @@
+package com.orjrs.zk.client.limiter;
+
+import com.orjrs.zk.client.metrics.ZkMetrics;
+import org.apache.zookeeper.KeeperException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端并发限制测试
+ *
+ * @author orjrs
+ * @create 2020-11-02 15:00
+ * @since 1.0.0
+ */
+public class ZkLimiterTest {
+
+    private static final long FAST = TimeUnit.MICROSECONDS.toNanos(500);
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private ZkLimiter limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new ZkLimiter();
+        limiter.setLimit(4, 1, 100);
+    }
+
+    @Test
+    public void testLaneOfOp() {
+        Assert.assertEquals(ZkLimiter.Lane.WRITE, ZkLimiter.Lane.of("create"));
+        Assert.assertEquals(ZkLimiter.Lane.WRITE, ZkLimiter.Lane.of("multi"));
+        Assert.assertEquals(ZkLimiter.Lane.READ, ZkLimiter.Lane.of("getChildren"));
+        Assert.assertEquals(ZkLimiter.Lane.READ, ZkLimiter.Lane.of("getData"));
+    }
+
+    @Test
+    public void testShedWhenQueueFull() throws Exception {
+        limiter.setQueue(ZkLimiter.Lane.READ, 0, 1, TimeUnit.SECONDS);
+        List<ZkLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(limiter.acquire(ZkLimiter.Lane.READ));
+        }
+        long start = System.nanoTime();
+        try {
+            limiter.acquire(ZkLimiter.Lane.READ);
+            Assert.fail();
+        } catch (ZkOverloadException e) {
+            Assert.assertEquals(ZkLimiter.Lane.READ, e.getLane());
+            Assert.assertEquals(KeeperException.Code.OPERATIONTIMEOUT, e.code());
+        }
+        // 立即丢弃，不等待
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        // 会话关键通道不受上限限制
+        limiter.acquire(ZkLimiter.Lane.SESSION).release(KeeperException.Code.OK);
+        Assert.assertEquals(1L, limiter.getShed(ZkLimiter.Lane.READ));
+        permits.forEach(permit -> permit.release(KeeperException.Code.OK));
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testShedAfterMaxWait() throws Exception {
+        limiter.setQueue(ZkLimiter.Lane.WRITE, 16, 50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire(ZkLimiter.Lane.WRITE);
+        }
+        try {
+            limiter.acquire(ZkLimiter.Lane.WRITE);
+            Assert.fail();
+        } catch (ZkOverloadException e) {
+            Assert.assertEquals(ZkLimiter.Lane.WRITE, e.getLane());
+        }
+        Assert.assertEquals(1L, limiter.getQueued(ZkLimiter.Lane.WRITE));
+    }
+
+    @Test
+    public void testWriteBeforeQueuedRead() throws Exception {
+        List<ZkLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(limiter.acquire(ZkLimiter.Lane.READ));
+        }
+        List<ZkLimiter.Lane> order = new CopyOnWriteArrayList<>();
+        Thread reader = waiter(ZkLimiter.Lane.READ, order);
+        awaitQueued(ZkLimiter.Lane.READ);
+        Thread writer = waiter(ZkLimiter.Lane.WRITE, order);
+        awaitQueued(ZkLimiter.Lane.WRITE);
+        // 读先排队，写优先拿到释放的许可
+        permits.get(0).release(KeeperException.Code.OK);
+        writer.join(5000);
+        Assert.assertEquals(1, order.size());
+        Assert.assertEquals(ZkLimiter.Lane.WRITE, order.get(0));
+        permits.get(1).release(KeeperException.Code.OK);
+        reader.join(5000);
+        Assert.assertEquals(ZkLimiter.Lane.READ, order.get(1));
+    }
+
+    @Test
+    public void testAimd() throws Exception {
+        // 受限时延迟正常则每轮加 1
+        for (int i = 0; i < 200; i++) {
+            List<ZkLimiter.Permit> permits = new ArrayList<>();
+            for (int n = 0; n < limiter.getLimit(); n++) {
+                permits.add(limiter.acquire(ZkLimiter.Lane.READ));
+            }
+            for (ZkLimiter.Permit permit : permits) {
+                limiter.complete(permit, KeeperException.Code.OK, FAST);
+            }
+        }
+        int raised = limiter.getLimit();
+        Assert.assertTrue(String.valueOf(raised), raised > 100 / 2);
+
+        // 延迟升高后下调，同一轮在途请求只下调一次
+        List<ZkLimiter.Permit> permits = new ArrayList<>();
+        for (int n = 0; n < raised; n++) {
+            permits.add(limiter.acquire(ZkLimiter.Lane.READ));
+        }
+        for (ZkLimiter.Permit permit : permits) {
+            limiter.complete(permit, KeeperException.Code.OK, SLOW);
+        }
+        Assert.assertEquals(1L, limiter.getDecreases());
+        Assert.assertEquals((int) (raised * 0.9), limiter.getLimit(), 1);
+
+        // 连接断开也下调
+        limiter.complete(limiter.acquire(ZkLimiter.Lane.WRITE), KeeperException.Code.CONNECTIONLOSS, FAST);
+        Assert.assertEquals(2L, limiter.getDecreases());
+    }
+
+    @Test
+    public void testWithLane() throws Exception {
+        limiter.setQueue(ZkLimiter.Lane.WRITE, 0, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire("delete");
+        }
+        ZkLimiter.Permit permit = ZkLimiter.withLane(ZkLimiter.Lane.SESSION, () -> limiter.acquire("delete"));
+        Assert.assertEquals(ZkLimiter.Lane.SESSION, permit.getLane());
+        try {
+            limiter.acquire("delete");
+            Assert.fail();
+        } catch (ZkOverloadException e) {
+            Assert.assertEquals(ZkLimiter.Lane.WRITE, e.getLane());
+        }
+    }
+
+    @Test
+    public void testCallRecordsShed() throws Exception {
+        ZkMetrics metrics = ZkMetrics.get();
+        boolean metricsEnabled = metrics.isEnabled();
+        metrics.setEnabled(true);
+        metrics.reset();
+        try {
+            limiter.setEnabled(true);
+            limiter.setQueue(ZkLimiter.Lane.READ, 0, 0, TimeUnit.MILLISECONDS);
+            Assert.assertEquals("ok", limiter.call(ZkMetrics.GET_DATA, "/orjrs", () -> "ok"));
+            Assert.assertEquals(0, limiter.getInFlight());
+            for (int i = 0; i < 4; i++) {
+                limiter.acquire(ZkLimiter.Lane.READ);
+            }
+            try {
+                limiter.call(ZkMetrics.GET_DATA, "/orjrs", () -> "ok");
+                Assert.fail();
+            } catch (ZkOverloadException e) {
+                Assert.assertEquals(ZkLimiter.Lane.READ, e.getLane());
+            }
+            // 丢弃的请求计入错误数，不计入延迟
+            Assert.assertEquals(1L, metrics.getShed().get(ZkMetrics.GET_DATA).sum());
+            Assert.assertEquals(1L, metrics.getErrors().get(KeeperException.Code.OPERATIONTIMEOUT).sum());
+            Assert.assertEquals(1L, metrics.getOps().get(ZkMetrics.GET_DATA).getCount());
+        } finally {
+            metrics.reset();
+            metrics.setEnabled(metricsEnabled);
+        }
+    }
+
+    private Thread waiter(ZkLimiter.Lane lane, List<ZkLimiter.Lane> order) {
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire(lane);
+                order.add(lane);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void awaitQueued(ZkLimiter.Lane lane) throws InterruptedException {
+        for (int i = 0; i < 500 && 0L == limiter.getQueued(lane); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1L, limiter.getQueued(lane));
+    }
+}
@@ -0,0 +1,92 @@
+package com.orjrs.zk.client.metrics;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用指标测试
+ *
+ * @author orjrs
+ * @create 2020-09-05 16:20
+ * @since 1.0.0
+ */
+public class ZkMetricsTest {
+
+    private final ZkMetrics metrics = ZkMetrics.get();
+
+    @Before
+    public void setUp() {
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.setEnabled(false);
+        metrics.setPrefixDepth(1);
+        metrics.reset();
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMax());
+        // 桶精度约 3%
+        long p50 = histogram.getPercentile(50);
+        Assert.assertTrue(String.valueOf(p50), Math.abs(p50 - 500_000L) < 20_000L);
+        long p99 = histogram.getPercentile(99);
+        Assert.assertTrue(String.valueOf(p99), Math.abs(p99 - 990_000L) < 40_000L);
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void testTimed() throws Exception {
+        metrics.setPrefixDepth(1);
+        Assert.assertEquals("ok", metrics.timed(ZkMetrics.GET_DATA, "/orjrs/a", () -> "ok"));
+        try {
+            metrics.timedVoid(ZkMetrics.DELETE, "/orjrs/b", () -> {
+                throw new KeeperException.NoNodeException("/orjrs/b");
+            });
+            Assert.fail();
+        } catch (KeeperException.NoNodeException e) {
+            // 原样抛出
+        }
+        Assert.assertEquals(1, metrics.getOps().get(ZkMetrics.GET_DATA).getCount());
+        Assert.assertEquals(1, metrics.getOps().get(ZkMetrics.DELETE).getCount());
+        Assert.assertEquals(1, metrics.getPrefixes().get(ZkMetrics.GET_DATA).get("/orjrs").getCount());
+        Assert.assertEquals(1, metrics.getErrors().get(KeeperException.Code.NONODE).sum());
+
+        metrics.recordState(Watcher.Event.KeeperState.Disconnected);
+        Assert.assertEquals(1, metrics.getStates().get(Watcher.Event.KeeperState.Disconnected).sum());
+        Assert.assertTrue(TextMetricsExporter.format(metrics).contains(ZkMetrics.GET_DATA));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        metrics.setEnabled(false);
+        metrics.timed(ZkMetrics.CREATE, "/orjrs", () -> "ok");
+        metrics.record(ZkMetrics.CREATE, "/orjrs", metrics.start(), 0);
+        metrics.recordState(Watcher.Event.KeeperState.Expired);
+        Assert.assertTrue(metrics.getOps().isEmpty());
+        Assert.assertTrue(metrics.getStates().isEmpty());
+    }
+
+    @Test
+    public void testPrefix() {
+        metrics.setPrefixDepth(2);
+        Assert.assertEquals("/a/b", metrics.prefix("/a/b/c"));
+        Assert.assertEquals("/a/b", metrics.prefix("/a/b"));
+        Assert.assertEquals("/a", metrics.prefix("/a"));
+    }
+}
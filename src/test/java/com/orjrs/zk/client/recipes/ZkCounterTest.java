@@ -0,0 +1,71 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkTreeDeleter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 分布式计数器测试
+ *
+ * @author orjrs
+ * @create 2020-10-18 11:30
+ * @since 1.0.0
+ */
+public class ZkCounterTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_COUNTER = "/orjrs_counter/hits";
+
+    private ZkConnectionManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        manager.connect(10, TimeUnit.SECONDS).get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new ZkTreeDeleter(manager.getZooKeeper()).deleteRecursive("/orjrs_counter");
+        manager.close();
+    }
+
+    @Test
+    public void testAddAndGet() throws Exception {
+        ZkCounter counter = new ZkCounter(manager, ORJRS_COUNTER);
+        Assert.assertEquals(0L, counter.get());
+        Assert.assertEquals(5L, counter.addAndGet(5L));
+        Assert.assertEquals(3L, counter.addAndGet(-2L));
+        Assert.assertEquals(3L, counter.get());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            ZkCounter counter = new ZkCounter(manager, ORJRS_COUNTER);
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int n = 0; n < 50; n++) {
+                        counter.addAndGet(1L);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+        Assert.assertEquals(200L, new ZkCounter(manager, ORJRS_COUNTER).get());
+    }
+}
@@ -0,0 +1,95 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkTreeDeleter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 号段 ID 分配器测试
+ *
+ * @author orjrs
+ * @create 2020-10-18 11:50
+ * @since 1.0.0
+ */
+public class ZkIdAllocatorTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_ID = "/orjrs_id/order";
+
+    private ZkConnectionManager first;
+
+    private ZkConnectionManager second;
+
+    @Before
+    public void setUp() throws Exception {
+        first = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        second = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        first.connect(10, TimeUnit.SECONDS).get();
+        second.connect(10, TimeUnit.SECONDS).get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new ZkTreeDeleter(first.getZooKeeper()).deleteRecursive("/orjrs_id");
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        try (ZkIdAllocator allocator = new ZkIdAllocator(first, ORJRS_ID, 100)) {
+            ZkCounter counter = new ZkCounter(first, ORJRS_ID);
+            for (int i = 0; i < 50; i++) {
+                Assert.assertEquals(i, allocator.next());
+            }
+            Assert.assertEquals(100L, counter.get());
+            // 用到一半时预取下一段
+            allocator.next();
+            for (int i = 0; i < 100 && 200L != counter.get(); i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(200L, counter.get());
+            for (int i = 51; i < 150; i++) {
+                Assert.assertEquals(i, allocator.next());
+            }
+        }
+    }
+
+    @Test
+    public void testUnique() throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (ZkIdAllocator one = new ZkIdAllocator(first, ORJRS_ID, 1000);
+             ZkIdAllocator other = new ZkIdAllocator(second, ORJRS_ID, 1000)) {
+            Thread[] threads = new Thread[8];
+            for (int i = 0; i < threads.length; i++) {
+                ZkIdAllocator allocator = 0 == i % 2 ? one : other;
+                threads[i] = new Thread(() -> {
+                    try {
+                        for (int n = 0; n < 20000; n++) {
+                            Assert.assertTrue(ids.add(allocator.next()));
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+        Assert.assertEquals(160000, ids.size());
+        // 160 个号段，加上每个分配器最多预取的一段
+        Assert.assertTrue(new ZkCounter(first, ORJRS_ID).get() <= 162000L);
+    }
+}
@@ -0,0 +1,164 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkTreeDeleter;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 分布式锁测试
+ *
+ * @author orjrs
+ * @create 2020-10-17 17:20
+ * @since 1.0.0
+ */
+public class ZkLockTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_LOCK = "/orjrs_lock/mutex";
+
+    private ZkConnectionManager first;
+
+    private ZkConnectionManager second;
+
+    @Before
+    public void setUp() throws Exception {
+        first = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        second = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        first.connect(10, TimeUnit.SECONDS).get();
+        second.connect(10, TimeUnit.SECONDS).get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new ZkTreeDeleter(first.getSession().get(10, TimeUnit.SECONDS).getZooKeeper()).deleteRecursive("/orjrs_lock");
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testReentrant() throws Exception {
+        ZkLock lock = new ZkLock(first, ORJRS_LOCK);
+        lock.acquire();
+        Assert.assertTrue(lock.acquire(0, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(lock.isHeldByCurrentThread());
+        Assert.assertEquals(1, first.getZooKeeper().getChildren(ORJRS_LOCK, false).size());
+        lock.release();
+        Assert.assertTrue(lock.isHeldByCurrentThread());
+        lock.release();
+        Assert.assertFalse(lock.isHeldByCurrentThread());
+        Assert.assertEquals(0, first.getZooKeeper().getChildren(ORJRS_LOCK, false).size());
+        try {
+            lock.release();
+            Assert.fail();
+        } catch (IllegalMonitorStateException e) {
+            // 未持有
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        ZkLock lock = new ZkLock(first, ORJRS_LOCK);
+        ZkLock other = new ZkLock(second, ORJRS_LOCK);
+        lock.acquire();
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(other.acquire(300, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+        // 超时后删除自己的节点
+        Assert.assertEquals(1, first.getZooKeeper().getChildren(ORJRS_LOCK, false).size());
+        lock.release();
+        Assert.assertTrue(other.acquire(1, TimeUnit.SECONDS));
+        other.release();
+    }
+
+    @Test
+    public void testMutualExclusion() throws Exception {
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            ZkLock lock = new ZkLock(0 == i % 2 ? first : second, ORJRS_LOCK);
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int n = 0; n < 10; n++) {
+                        lock.acquire();
+                        try {
+                            Assert.assertEquals(1, holders.incrementAndGet());
+                            Thread.sleep(1);
+                            holders.decrementAndGet();
+                            acquired.incrementAndGet();
+                        } finally {
+                            lock.release();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+        Assert.assertEquals(80, acquired.get());
+    }
+
+    @Test
+    public void testSessionExpired() throws Exception {
+        ZkLock lock = new ZkLock(first, ORJRS_LOCK);
+        ZkLock other = new ZkLock(second, ORJRS_LOCK);
+        lock.acquire();
+        AtomicReference<Throwable> waiting = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                other.acquire();
+            } catch (Throwable e) {
+                waiting.set(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(200);
+        // 等待者所在会话过期
+        expire(second.getZooKeeper());
+        // 客户端最迟在下次心跳超时后发现会话过期
+        waiter.join(30000);
+        Assert.assertTrue(String.valueOf(waiting.get()), waiting.get() instanceof KeeperException.SessionExpiredException);
+
+        // 持有者所在会话过期，锁被释放
+        expire(first.getZooKeeper());
+        for (int i = 0; i < 3000 && lock.isHeldByCurrentThread(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(lock.isHeldByCurrentThread());
+        lock.release();
+        second.getSession().get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(other.acquire(5, TimeUnit.SECONDS));
+        other.release();
+    }
+
+    /**
+     * 用同一会话 ID 连上后关闭，使原会话过期
+     */
+    private static void expire(ZooKeeper zk) throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper other = new ZooKeeper(SERVER_ADDR, 10000, event -> {
+            if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
+                connected.countDown();
+            }
+        }, zk.getSessionId(), zk.getSessionPasswd());
+        connected.await();
+        other.close();
+    }
+}
@@ -0,0 +1,147 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkTreeDeleter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 分布式队列测试
+ *
+ * @author orjrs
+ * @create 2020-10-25 14:30
+ * @since 1.0.0
+ */
+public class ZkQueueTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_QUEUE = "/orjrs_queue/jobs";
+
+    private ZkConnectionManager first;
+
+    private ZkConnectionManager second;
+
+    @Before
+    public void setUp() throws Exception {
+        first = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        second = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        first.connect(10, TimeUnit.SECONDS).get();
+        second.connect(10, TimeUnit.SECONDS).get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new ZkTreeDeleter(first.getZooKeeper()).deleteRecursive("/orjrs_queue");
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testFifo() throws Exception {
+        ZkQueue queue = new ZkQueue(first, ORJRS_QUEUE);
+        Assert.assertNull(queue.poll());
+        queue.offer(bytes("a"));
+        queue.offer(bytes("b"));
+        Assert.assertEquals(3, queue.offerAll(Arrays.asList(bytes("c"), bytes("d"), bytes("e"))).size());
+        Assert.assertEquals("a", string(queue.poll()));
+        Assert.assertEquals("b", string(queue.poll()));
+        List<byte[]> batch = queue.poll(2);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals("c", string(batch.get(0)));
+        Assert.assertEquals("d", string(batch.get(1)));
+        Assert.assertEquals("e", string(queue.take()));
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0L, queue.getConflicts());
+    }
+
+    @Test
+    public void testConcurrentConsumers() throws Exception {
+        ZkQueue producer = new ZkQueue(first, ORJRS_QUEUE);
+        List<byte[]> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(bytes(String.valueOf(i)));
+        }
+        producer.offerAll(items);
+
+        Set<String> taken = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] consumers = new Thread[8];
+        for (int i = 0; i < consumers.length; i++) {
+            // 每个消费者单独的实例，模拟多个进程
+            ZkQueue queue = new ZkQueue(0 == i % 2 ? first : second, ORJRS_QUEUE);
+            consumers[i] = new Thread(() -> {
+                try {
+                    List<byte[]> batch;
+                    while (!(batch = queue.poll(32)).isEmpty()) {
+                        for (byte[] item : batch) {
+                            if (!taken.add(string(item))) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            consumers[i].start();
+        }
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+        Assert.assertEquals(0, duplicates.get());
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(String.valueOf(i));
+        }
+        Assert.assertEquals(expected, taken);
+    }
+
+    @Test
+    public void testTakeWaitsForWatch() throws Exception {
+        ZkQueue producer = new ZkQueue(first, ORJRS_QUEUE);
+        ZkQueue consumer = new ZkQueue(second, ORJRS_QUEUE);
+        producer.offer(bytes("warm"));
+        Assert.assertEquals("warm", string(consumer.poll()));
+        Assert.assertTrue(consumer.take(1, 200, TimeUnit.MILLISECONDS).isEmpty());
+        AtomicReference<Object> result = new AtomicReference<>();
+        Thread taker = new Thread(() -> {
+            try {
+                result.set(string(consumer.take()));
+            } catch (Exception e) {
+                result.set(e);
+            }
+        });
+        taker.start();
+        Thread.sleep(500);
+        Assert.assertNull(result.get());
+        long listings = consumer.getListings();
+        producer.offer(bytes("job"));
+        taker.join(10000);
+        Assert.assertEquals("job", result.get());
+        // 等待期间不轮询，收到子节点通知后只列出一次
+        Assert.assertEquals(listings + 1, consumer.getListings());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package com.orjrs.zk.client.recipes;
+
+import com.orjrs.zk.client.jdkapi.ZkConnectionManager;
+import com.orjrs.zk.client.jdkapi.ZkTreeDeleter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式读写锁测试
+ *
+ * @author orjrs
+ * @create 2020-10-17 17:40
+ * @since 1.0.0
+ */
+public class ZkReadWriteLockTest {
+
+    public static final String SERVER_ADDR = "192.168.135.132";
+    public static final String ORJRS_RW_LOCK = "/orjrs_rw_lock";
+
+    private ZkConnectionManager first;
+
+    private ZkConnectionManager second;
+
+    @Before
+    public void setUp() throws Exception {
+        first = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        second = new ZkConnectionManager(SERVER_ADDR, 10000, null);
+        first.connect(10, TimeUnit.SECONDS).get();
+        second.connect(10, TimeUnit.SECONDS).get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new ZkTreeDeleter(first.getZooKeeper()).deleteRecursive(ORJRS_RW_LOCK);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testSharedRead() throws Exception {
+        ZkReadWriteLock lock = new ZkReadWriteLock(first, ORJRS_RW_LOCK);
+        ZkReadWriteLock other = new ZkReadWriteLock(second, ORJRS_RW_LOCK);
+        lock.readLock().acquire();
+        Assert.assertTrue(other.readLock().acquire(1, TimeUnit.SECONDS));
+        // 有读锁时不能加写锁
+        Assert.assertFalse(other.writeLock().acquire(200, TimeUnit.MILLISECONDS));
+        lock.readLock().release();
+        other.readLock().release();
+        Assert.assertTrue(other.writeLock().acquire(1, TimeUnit.SECONDS));
+        // 有写锁时不能加读锁
+        Assert.assertFalse(lock.readLock().acquire(200, TimeUnit.MILLISECONDS));
+        other.writeLock().release();
+    }
+
+    @Test
+    public void testWriteThenRead() throws Exception {
+        ZkReadWriteLock lock = new ZkReadWriteLock(first, ORJRS_RW_LOCK);
+        lock.writeLock().acquire();
+        // 持有写锁的线程可以加读锁
+        Assert.assertTrue(lock.readLock().acquire(1, TimeUnit.SECONDS));
+        lock.writeLock().release();
+        Assert.assertTrue(lock.readLock().isHeldByCurrentThread());
+        ZkReadWriteLock other = new ZkReadWriteLock(second, ORJRS_RW_LOCK);
+        Assert.assertTrue(other.readLock().acquire(1, TimeUnit.SECONDS));
+        other.readLock().release();
+        lock.readLock().release();
+    }
+}
@@ -0,0 +1,55 @@
+package com.orjrs.zk.client.serializer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内置序列化测试
+ *
+ * @author orjrs
+ * @create 2020-08-22 15:00
+ * @since 1.0.0
+ */
+public class SerializersTest {
+
+    public static final String DATA = "我是自定义监控测试节点 abc 😀";
+
+    @Test
+    public void testUtf8() {
+        byte[] data = Serializers.UTF8.serialize(DATA);
+        Assert.assertArrayEquals(DATA.getBytes(StandardCharsets.UTF_8), data);
+        Assert.assertEquals(DATA, Serializers.UTF8.deserialize(data));
+        // 编码缓冲区复用，结果数组不能被后续编码覆盖
+        byte[] other = Serializers.UTF8.serialize("x");
+        Assert.assertEquals(DATA, Serializers.UTF8.deserialize(data));
+        Assert.assertArrayEquals(new byte[]{'x'}, other);
+        Assert.assertNull(Serializers.UTF8.deserialize(null));
+    }
+
+    @Test
+    public void testCompactMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("host", "192.168.135.132");
+        map.put("desc", DATA);
+        map.put("empty", "");
+        map.put("none", null);
+        byte[] data = Serializers.COMPACT_MAP.serialize(map);
+        Assert.assertEquals(map, Serializers.COMPACT_MAP.deserialize(data));
+    }
+
+    @Test
+    public void testToBytes() {
+        byte[] data = {1, 2, 3, 4};
+        Assert.assertSame(data, Serializers.toBytes(ByteBuffer.wrap(data)));
+        Assert.assertArrayEquals(new byte[]{2, 3}, Serializers.toBytes(ByteBuffer.wrap(data, 1, 2)));
+        ByteBuffer direct = ByteBuffer.allocateDirect(2).put((byte) 5).put((byte) 6);
+        direct.flip();
+        Assert.assertArrayEquals(new byte[]{5, 6}, Serializers.toBytes(direct));
+        Assert.assertSame(data, Serializers.BYTES.serialize(data));
+    }
+}